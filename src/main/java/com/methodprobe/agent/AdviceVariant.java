@@ -0,0 +1,63 @@
+package com.methodprobe.agent;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+/**
+ * The advice woven into a method, chosen per method from configuration so
+ * a method only pays for what it can actually use.
+ *
+ * Building the argument array boxes primitives and allocates on every call,
+ * so only methods that can take a snapshot get {@link #SNAPSHOT}. Methods
+ * outside any call tree scope also skip the tree bookkeeping.
+ */
+public enum AdviceVariant {
+
+    /** Clock reads and flat-mode logging only */
+    TIMING(TimingAdvice.class),
+
+    /** Adds call tree tracking */
+    TREE(TreeAdvice.class),
+
+    /** Adds the argument array for snapshots */
+    SNAPSHOT(ProbeAdvice.class),
+
+    /** No advice: shed by the {@link OverheadGovernor} */
+    NONE(null);
+
+    /** Method name standing for any method not configured by name */
+    public static final String ANY_METHOD = "*";
+
+    private final Class<?> adviceClass;
+
+    AdviceVariant(Class<?> adviceClass) {
+        this.adviceClass = adviceClass;
+    }
+
+    public Class<?> getAdviceClass() {
+        return adviceClass;
+    }
+
+    /**
+     * The variant a method needs under the current configuration.
+     *
+     * @param methodName the method name, or {@link #ANY_METHOD} for methods
+     *                   covered only by class or package config
+     */
+    public static AdviceVariant select(String className, String methodName) {
+        if (AgentConfig.isShedMethod(className, methodName)) {
+            return NONE;
+        }
+        boolean treeEnabled = AgentConfig.isTreeEnabled();
+        boolean entry = treeEnabled && AgentConfig.isTreeEntryMethod(className, methodName);
+        boolean inTree = treeEnabled && (entry || AgentConfig.shouldIncludeInTree(className));
+        boolean flat = AgentConfig.shouldLogFlatMethod(className, methodName);
+
+        // Mirrors where ProbeDispatcher and CallTreeContext read the arguments
+        boolean treeArgs = AgentConfig.treeCaptureArgs && (entry || (inTree && AgentConfig.treeSnapshotProbeAll));
+        boolean snapshot = AgentConfig.snapshotEnabled && (flat || treeArgs);
+        if (snapshot) {
+            return SNAPSHOT;
+        }
+        return inTree ? TREE : TIMING;
+    }
+}
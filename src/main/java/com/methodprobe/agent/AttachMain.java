@@ -0,0 +1,43 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.agent.ByteBuddyAgent;
+
+import java.io.File;
+
+/**
+ * Command line entry point that loads the agent into a running JVM, so
+ * profiling can start without a restart.
+ *
+ * <pre>
+ * java -jar methodprobe-agent.jar &lt;pid&gt; [agentArgs]
+ * </pre>
+ *
+ * {@code agentArgs} are the usual agent arguments ({@code config=...},
+ * {@code port=...}) plus inline {@code probe.*} values, with ';' between
+ * list items, e.g.
+ * {@code 12345 port=9877,probe.flat.classes=com.example.OrderService;com.example.PayService}.
+ * Only classes matching that configuration are retransformed; with none the
+ * agent just starts its HTTP server and waits to be configured.
+ */
+public class AttachMain {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java -jar methodprobe-agent.jar <pid> [agentArgs]");
+            System.err.println("  agentArgs: config=/path/agent.properties,port=9876,probe.flat.classes=a.B;a.C");
+            System.exit(1);
+        }
+
+        String pid = args[0];
+        String agentArgs = args.length > 1 ? args[1] : "";
+        File agentJar = new File(AttachMain.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (!agentJar.isFile()) {
+            System.err.println("[MethodProbe] Attach must run from the agent jar, not " + agentJar);
+            System.exit(1);
+        }
+
+        System.out.println("[MethodProbe] Attaching " + agentJar.getName() + " to " + pid + "...");
+        ByteBuddyAgent.attach(agentJar, pid, agentArgs);
+        System.out.println("[MethodProbe] Attached. The agent's output goes to the target JVM's console.");
+    }
+}
@@ -0,0 +1,213 @@
+package com.methodprobe.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.ref.WeakReference;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of loaded classes by package, so a config change can find the few
+ * classes it affects without walking every loaded class.
+ *
+ * Seeded once from {@code Instrumentation.getAllLoadedClasses()} and kept
+ * current by {@link #transformer()}, which records each newly loaded class
+ * (name and defining loader) and never changes bytecode. Entries hold class
+ * loaders and classes weakly, so the index doesn't keep anything from being
+ * unloaded; stale entries are dropped on lookup.
+ */
+public class LoadedClassIndex {
+
+    private final Map<String, Set<Entry>> byPackage = new ConcurrentHashMap<>();
+
+    /**
+     * One loaded class: name plus defining loader, resolved to the Class on
+     * demand. Equal by name and loader identity.
+     */
+    static final class Entry {
+        final String className;
+        private final WeakReference<ClassLoader> loader;
+        private final boolean bootstrap;
+        private volatile WeakReference<Class<?>> type;
+        /** Advice currently woven into the class, null if none */
+        volatile Map<String, AdviceVariant> instrumentedPlan;
+        /** Number of methods carrying that advice */
+        volatile int instrumentedMethodCount;
+
+        Entry(String className, ClassLoader loader) {
+            this.className = className;
+            this.loader = new WeakReference<>(loader);
+            this.bootstrap = loader == null;
+        }
+
+        /**
+         * The loaded class, or null once its loader has been collected.
+         */
+        Class<?> resolve() {
+            WeakReference<Class<?>> ref = type;
+            Class<?> resolved = ref != null ? ref.get() : null;
+            if (resolved != null) {
+                return resolved;
+            }
+            ClassLoader classLoader = loader.get();
+            if (classLoader == null && !bootstrap) {
+                return null;
+            }
+            try {
+                // Already loaded, so this only looks it up
+                resolved = Class.forName(className, false, classLoader);
+            } catch (Throwable e) {
+                return null;
+            }
+            type = new WeakReference<>(resolved);
+            return resolved;
+        }
+
+        boolean isLoadedBy(ClassLoader classLoader) {
+            return classLoader == null ? bootstrap : loader.get() == classLoader;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) o;
+            return className.equals(other.className) && bootstrap == other.bootstrap
+                    && loader.get() == other.loader.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return className.hashCode();
+        }
+    }
+
+    /**
+     * A transformer that only records class loads; register it with
+     * {@code canRetransform=false} so retransformations skip it.
+     */
+    public ClassFileTransformer transformer() {
+        return new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                    ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+                if (classBeingRedefined == null && className != null) {
+                    add(className.replace('/', '.'), loader);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Record already loaded classes, e.g. all classes at agent start.
+     */
+    public void addAll(Class<?>[] classes) {
+        for (Class<?> type : classes) {
+            if (!type.isArray() && !type.isPrimitive()) {
+                Entry entry = add(type.getName(), type.getClassLoader());
+                entry.type = new WeakReference<Class<?>>(type);
+            }
+        }
+    }
+
+    Entry add(String className, ClassLoader loader) {
+        Entry entry = new Entry(className, loader);
+        Set<Entry> entries = byPackage.computeIfAbsent(packageOf(className), k -> ConcurrentHashMap.newKeySet());
+        if (!entries.add(entry)) {
+            for (Entry existing : entries) {
+                if (existing.equals(entry)) {
+                    return existing;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Record which advice the methods of a class currently carry.
+     *
+     * @param plan        as returned by ProbeMethodMatcher.planFor, null if none
+     * @param methodCount number of methods carrying advice
+     */
+    public void setInstrumented(String className, ClassLoader loader, Map<String, AdviceVariant> plan,
+            int methodCount) {
+        Set<Entry> entries = byPackage.get(packageOf(className));
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (entry.className.equals(className) && entry.isLoadedBy(loader)) {
+                    entry.instrumentedPlan = plan;
+                    entry.instrumentedMethodCount = methodCount;
+                    return;
+                }
+            }
+        }
+        if (plan != null) {
+            Entry entry = add(className, loader);
+            entry.instrumentedPlan = plan;
+            entry.instrumentedMethodCount = methodCount;
+        }
+    }
+
+    /**
+     * Methods carrying advice in live classes under any of the prefixes,
+     * each class counted once.
+     */
+    public int countInstrumentedMethods(Collection<String> prefixes) {
+        Set<Entry> seen = new HashSet<>();
+        int count = 0;
+        for (String prefix : prefixes) {
+            for (Entry entry : find(prefix)) {
+                if (seen.add(entry)) {
+                    count += entry.instrumentedMethodCount;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Live classes whose name starts with {@code prefix} (a package, class
+     * name or any name prefix; "" for all). Only packages that can contain
+     * such a class are visited.
+     */
+    List<Entry> find(String prefix) {
+        List<Entry> result = new ArrayList<>();
+        for (Map.Entry<String, Set<Entry>> pkg : byPackage.entrySet()) {
+            String name = pkg.getKey();
+            if (!name.startsWith(prefix) && !prefix.startsWith(name)) {
+                continue;
+            }
+            for (Entry entry : pkg.getValue()) {
+                if (!entry.className.startsWith(prefix)) {
+                    continue;
+                }
+                if (entry.resolve() == null) {
+                    pkg.getValue().remove(entry);
+                } else {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Set<Entry> entries : byPackage.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    static String packageOf(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot > 0 ? className.substring(0, lastDot) : "";
+    }
+}
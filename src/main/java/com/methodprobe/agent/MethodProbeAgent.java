@@ -1,20 +1,29 @@
 package com.methodprobe.agent;
 
 import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.dynamic.DynamicType;
-import net.bytebuddy.matcher.ElementMatchers;
 import net.bytebuddy.utility.JavaModule;
 
+import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import com.methodprobe.agent.config.AgentConfig;
 import com.methodprobe.agent.http.HttpConfigServer;
 import com.methodprobe.agent.log.LogOutputFactory;
 import com.methodprobe.agent.tree.AsyncTreePrinter;
 
+import static net.bytebuddy.matcher.ElementMatchers.isSynthetic;
+
 /**
  * JVM Agent entry point for method probe instrumentation.
  * Uses ByteBuddy Advice mechanism for direct bytecode enhancement.
@@ -22,6 +31,19 @@ import com.methodprobe.agent.tree.AsyncTreePrinter;
 public class MethodProbeAgent {
 
     private static Instrumentation instrumentation;
+    private static ClassFileTransformer indexTransformer;
+    private static ResettableClassFileTransformer probeTransformer;
+    private static final LoadedClassIndex classIndex = new LoadedClassIndex();
+    private static final StartupReport startupReport = new StartupReport();
+    private static final SessionManager sessionManager = new SessionManager(classIndex);
+
+    /**
+     * Plan each type was woven with, by type name, from transform() to the
+     * listener on the same thread. Keyed by name because transforming one
+     * type can load (and transform) another in between.
+     */
+    private static final ThreadLocal<Map<String, Map<String, AdviceVariant>>> wovenPlans =
+            ThreadLocal.withInitial(HashMap::new);
 
     /**
      * Agent premain entry point - called before main method.
@@ -30,6 +52,32 @@ public class MethodProbeAgent {
      * @param inst      instrumentation instance
      */
     public static void premain(String agentArgs, Instrumentation inst) {
+        start(agentArgs, inst);
+    }
+
+    /**
+     * Agent entry point for dynamic attach to a running JVM (see
+     * {@link AttachMain}).
+     *
+     * Starts the same way as {@link #premain}; classes that are already
+     * loaded and match the configuration are retransformed on install, and
+     * nothing else is touched, so with no flat or tree config the application
+     * runs unmodified until something is added over HTTP.
+     *
+     * @param agentArgs agent arguments (config file path, port, inline probe.* values)
+     * @param inst      instrumentation instance
+     */
+    public static void agentmain(String agentArgs, Instrumentation inst) {
+        start(agentArgs, inst);
+    }
+
+    private static synchronized void start(String agentArgs, Instrumentation inst) {
+        if (instrumentation != null) {
+            // Attached again, or attached to a JVM started with -javaagent
+            System.out.println("[MethodProbe] Agent already running; configure it on HTTP port "
+                    + AgentConfig.getHttpPort());
+            return;
+        }
         instrumentation = inst;
         System.out.println("[MethodProbe] Agent starting...");
 
@@ -39,8 +87,11 @@ public class MethodProbeAgent {
         // Start HTTP server for dynamic configuration
         HttpConfigServer.start(AgentConfig.getHttpPort());
 
-        // Install ByteBuddy agent builder
-        installAgent(inst);
+        // Count transformed classes instead of printing each one while the application boots
+        startupReport.start(AgentConfig.getStartupQuietWindow());
+
+        // Index loaded classes and install the ByteBuddy agent builder
+        install(inst);
 
         // Initialize log output (console or async file)
         LogOutputFactory.init();
@@ -65,16 +116,52 @@ public class MethodProbeAgent {
         // Start stats reporter
         StatsReporter.start();
 
+        // Keep the probes' own cost under budget
+        OverheadGovernor.start();
+
         System.out.println("[MethodProbe] Agent started successfully.");
     }
 
+    /**
+     * Register the class index and the probe transformer, without the HTTP
+     * server or log outputs {@link #start} adds; tests install the agent this
+     * way.
+     */
+    static synchronized void install(Instrumentation inst) {
+        instrumentation = inst;
+        // Index loaded classes so config changes only retransform what they affect
+        indexTransformer = classIndex.transformer();
+        inst.addTransformer(indexTransformer, false);
+        classIndex.addAll(inst.getAllLoadedClasses());
+        probeTransformer = installAgent(inst);
+    }
+
+    /**
+     * Remove the transformers {@link #install} registered, so a test leaves
+     * the JVM's other tests unaffected. Classes woven so far keep their advice.
+     */
+    static synchronized void uninstall() {
+        if (instrumentation == null) {
+            return;
+        }
+        instrumentation.removeTransformer(probeTransformer);
+        instrumentation.removeTransformer(indexTransformer);
+        instrumentation = null;
+    }
+
     /**
      * Install ByteBuddy agent with type matching and advice.
      */
-    private static void installAgent(Instrumentation inst) {
-        new AgentBuilder.Default()
+    private static ResettableClassFileTransformer installAgent(Instrumentation inst) {
+        return new AgentBuilder.Default()
+                // Advice only rewrites method bodies; anything more (such as the type
+                // initializer ByteBuddy adds by default) is rejected on retransformation.
+                // This also sets the type strategy to REDEFINE_FROZEN in place of REDEFINE
+                .disableClassFormatChanges()
                 .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
-                .with(AgentBuilder.TypeStrategy.Default.REDEFINE)
+                // Name checks first, so most classes are rejected before their class file is parsed
+                .ignore(new ProbeIgnoreMatcher(startupReport))
+                .or(isSynthetic())
                 .type(MethodProbeAgent::shouldInstrument)
                 .transform(new AgentBuilder.Transformer() {
                     @Override
@@ -85,12 +172,21 @@ public class MethodProbeAgent {
                             JavaModule module,
                             ProtectionDomain protectionDomain) {
 
-                        return builder.visit(
-                                Advice.to(ProbeAdvice.class)
-                                        .on(ElementMatchers.isMethod()
-                                                .and(ElementMatchers.not(ElementMatchers.isConstructor()))
-                                                .and(ElementMatchers.not(ElementMatchers.isAbstract()))
-                                                .and(ElementMatchers.not(ElementMatchers.isNative()))));
+                        // Only the configured methods (or all, for whole-class config) get
+                        // advice, each the lightest variant that covers what it can log
+                        Map<String, AdviceVariant> plan = ProbeMethodMatcher.planFor(typeDescription.getName());
+                        // The index must record this plan, even if the config changes before the listener runs
+                        wovenPlans.get().put(typeDescription.getName(), plan);
+                        if (plan == null) {
+                            return builder;
+                        }
+                        EnumSet<AdviceVariant> variants = EnumSet.copyOf(plan.values());
+                        variants.remove(AdviceVariant.NONE);
+                        for (AdviceVariant variant : variants) {
+                            builder = builder.visit(Advice.to(variant.getAdviceClass())
+                                    .on(ProbeMethodMatcher.forVariant(plan, variant)));
+                        }
+                        return builder;
                     }
                 })
                 .with(new AgentBuilder.Listener.Adapter() {
@@ -100,7 +196,24 @@ public class MethodProbeAgent {
                             JavaModule module,
                             boolean loaded,
                             DynamicType dynamicType) {
-                        System.out.println("[MethodProbe] Transformed: " + typeDescription.getName());
+                        Map<String, AdviceVariant> plan = wovenPlans.get().remove(typeDescription.getName());
+                        classIndex.setInstrumented(typeDescription.getName(), classLoader, plan,
+                                ProbeMethodMatcher.countMethods(typeDescription, plan));
+                        startupReport.recordTransformation();
+                        if (!startupReport.isQuiet()) {
+                            System.out.println("[MethodProbe] Transformed: " + typeDescription.getName());
+                        }
+                    }
+
+                    @Override
+                    public void onIgnored(TypeDescription typeDescription,
+                            ClassLoader classLoader,
+                            JavaModule module,
+                            boolean loaded) {
+                        // A retransformed class that no longer matches is back to its original bytecode
+                        if (loaded) {
+                            classIndex.setInstrumented(typeDescription.getName(), classLoader, null, 0);
+                        }
                     }
 
                     @Override
@@ -109,6 +222,8 @@ public class MethodProbeAgent {
                             JavaModule module,
                             boolean loaded,
                             Throwable throwable) {
+                        wovenPlans.get().remove(typeName);
+                        startupReport.recordError();
                         System.err.println("[MethodProbe] Error transforming: " + typeName);
                         throwable.printStackTrace();
                     }
@@ -121,7 +236,31 @@ public class MethodProbeAgent {
      */
     private static boolean shouldInstrument(TypeDescription typeDescription) {
         String className = typeDescription.getName();
-        return AgentConfig.shouldInstrumentClass(className);
+        long start = System.nanoTime();
+        boolean matched = AgentConfig.shouldInstrumentClass(className);
+        startupReport.recordMatch(System.nanoTime() - start, matched);
+        return matched;
+    }
+
+    /**
+     * Counters of the agent's class matching and transformation.
+     */
+    public static StartupReport getStartupReport() {
+        return startupReport;
+    }
+
+    /**
+     * Loaded classes and the advice each one carries.
+     */
+    static LoadedClassIndex getClassIndex() {
+        return classIndex;
+    }
+
+    /**
+     * Time-boxed profiling sessions started over HTTP.
+     */
+    public static SessionManager getSessionManager() {
+        return sessionManager;
     }
 
     /**
@@ -135,22 +274,62 @@ public class MethodProbeAgent {
      * Retransform classes after configuration change.
      */
     public static void retransformClasses() {
+        retransformClasses("");
+    }
+
+    /**
+     * Retransform the classes under a changed config entry.
+     *
+     * Only loaded classes whose name starts with {@code scope} (a package,
+     * class name, or "" for all) are considered, found through the class
+     * index; of those, only the ones whose advised methods or advice variants
+     * changed are retransformed, in one batched call. That includes classes that no
+     * longer match after a removal: the agent ignores them on
+     * retransformation, so the JVM restores their original bytecode and they
+     * stop paying for the advice entirely.
+     *
+     * @return number of classes retransformed
+     */
+    public static int retransformClasses(String scope) {
         if (instrumentation == null) {
-            return;
+            return 0;
+        }
+
+        List<Class<?>> delta = new ArrayList<>();
+        for (LoadedClassIndex.Entry entry : classIndex.find(scope)) {
+            Class<?> loadedClass = entry.resolve();
+            if (loadedClass != null
+                    && !Objects.equals(ProbeMethodMatcher.planFor(entry.className), entry.instrumentedPlan)
+                    && instrumentation.isModifiableClass(loadedClass)) {
+                delta.add(loadedClass);
+            }
+        }
+        if (delta.isEmpty()) {
+            return 0;
         }
 
-        for (Class<?> loadedClass : instrumentation.getAllLoadedClasses()) {
-            String className = loadedClass.getName();
-            if (AgentConfig.shouldInstrumentClass(className) &&
-                    instrumentation.isModifiableClass(loadedClass)) {
+        try {
+            instrumentation.retransformClasses(delta.toArray(new Class<?>[0]));
+            System.out.println("[MethodProbe] Retransformed " + delta.size() + " classes under '" + scope + "'");
+        } catch (Throwable e) {
+            // One bad class fails the whole batch; retry individually to isolate it
+            for (Class<?> loadedClass : delta) {
                 try {
                     instrumentation.retransformClasses(loadedClass);
-                    System.out.println("[MethodProbe] Retransformed: " + className);
-                } catch (Exception e) {
-                    System.err.println("[MethodProbe] Failed to retransform: " + className);
-                    e.printStackTrace();
+                } catch (Throwable single) {
+                    System.err.println("[MethodProbe] Failed to retransform: " + loadedClass.getName());
+                    single.printStackTrace();
                 }
             }
         }
+        return delta.size();
+    }
+
+    /**
+     * Class part of a "Class.method" config entry.
+     */
+    public static String classOf(String method) {
+        int lastDot = method.lastIndexOf('.');
+        return lastDot > 0 ? method.substring(0, lastDot) : method;
     }
 }
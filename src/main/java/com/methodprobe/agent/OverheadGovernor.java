@@ -0,0 +1,405 @@
+package com.methodprobe.agent;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+/**
+ * Keeps the probes' own cost under {@code probe.overhead.max.percent} of the
+ * process's CPU time.
+ *
+ * One in {@value #SAMPLE_RATE} calls times the out-of-line part of the
+ * advice in {@link ProbeDispatcher}; the clock reads inlined into every
+ * instrumented method are calibrated on each check. From these the
+ * governor estimates what the probes cost since the last check. A window
+ * with fewer than {@value #MIN_WINDOW_SAMPLES} samples is too noisy to judge
+ * (one slow cold-JIT sample is multiplied by the sample rate), so the
+ * governor only acts after {@value #OVER_BUDGET_CHECKS} checks in a row over
+ * budget, each with enough samples, and then takes the next step that still
+ * applies:
+ * <ol>
+ * <li>check only one in {@code probe.overhead.sample.interval} flat calls
+ * for logging,</li>
+ * <li>stop capturing call tree arguments,</li>
+ * <li>turn snapshots off,</li>
+ * <li>take the advice off the most called methods that are too fast to
+ * reach the flat threshold, {@code probe.overhead.shed.batch} per
+ * check.</li>
+ * </ol>
+ * Steps are never undone automatically; every step is listed in /stats and
+ * {@link #reset()} (POST /overhead/reset) restores what the governor changed.
+ */
+public final class OverheadGovernor {
+
+    /**
+     * Escalation steps, in the order they are taken.
+     */
+    public enum Step {
+        NONE, SAMPLING, NO_TREE_ARGS, NO_SNAPSHOTS, SHED_METHODS
+    }
+
+    /** One in this many calls is timed */
+    static final int SAMPLE_RATE = 64;
+    private static final int CALIBRATION_READS = 10_000;
+    private static final int MAX_HISTORY = 50;
+    /** Fewest timed calls in a window for its estimate to count */
+    static final int MIN_WINDOW_SAMPLES = 50;
+    /** Consecutive checks over budget before a step is taken */
+    static final int OVER_BUDGET_CHECKS = 2;
+
+    private static volatile boolean enabled;
+    private static volatile int flatSampleInterval = 1;
+    private static volatile Map<String, MethodCost> window = new ConcurrentHashMap<>();
+    private static final AtomicLong enterNanos = new AtomicLong();
+
+    private static volatile Step step = Step.NONE;
+    private static int overBudgetChecks;
+    private static boolean disabledSnapshots;
+    private static final Deque<String> history = new ArrayDeque<>();
+    private static volatile double lastPercent;
+    private static volatile long lastCalls;
+    private static volatile double lastPerCallNanos;
+    private static volatile double clockNanos;
+    private static long windowStartNanos;
+    private static long windowStartCpuNanos;
+    private static ScheduledExecutorService checker;
+
+    /**
+     * Sampled cost of one method in the current window.
+     */
+    static final class MethodCost {
+        final String className;
+        final String methodName;
+        final AtomicLong samples = new AtomicLong();
+        final AtomicLong durationNanos = new AtomicLong();
+        final AtomicLong dispatchNanos = new AtomicLong();
+
+        MethodCost(String className, String methodName) {
+            this.className = className;
+            this.methodName = methodName;
+        }
+
+        void record(long duration, long dispatch) {
+            samples.incrementAndGet();
+            durationNanos.addAndGet(duration);
+            dispatchNanos.addAndGet(dispatch);
+        }
+
+        long meanDurationNanos() {
+            long n = samples.get();
+            return n == 0 ? 0 : durationNanos.get() / n;
+        }
+    }
+
+    private OverheadGovernor() {
+    }
+
+    /**
+     * Start sampling and the periodic check, if a budget is configured.
+     */
+    public static synchronized void start() {
+        if (AgentConfig.getOverheadMaxPercent() <= 0 || checker != null) {
+            return;
+        }
+        windowStartNanos = System.nanoTime();
+        windowStartCpuNanos = processCpuNanos();
+        enabled = true;
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "MethodProbe-OverheadGovernor");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = AgentConfig.getOverheadCheckInterval();
+        checker.scheduleWithFixedDelay(() -> {
+            try {
+                check();
+            } catch (Throwable e) {
+                System.err.println("[MethodProbe] Overhead check failed: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        System.out.println("[MethodProbe] Overhead governor started, budget "
+                + AgentConfig.getOverheadMaxPercent() + "% of process CPU");
+    }
+
+    // ==================== Hot Path ====================
+
+    /**
+     * Whether this call is one of the timed samples.
+     */
+    static boolean isSampled() {
+        return enabled && ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+    }
+
+    /**
+     * Whether flat logging is checked for this call.
+     */
+    static boolean sampleFlat() {
+        int interval = flatSampleInterval;
+        return interval <= 1 || ThreadLocalRandom.current().nextInt(interval) == 0;
+    }
+
+    static void recordEnter(long nanos) {
+        enterNanos.addAndGet(nanos);
+    }
+
+    static void recordExit(String className, String methodName, long durationNanos, long dispatchNanos) {
+        Map<String, MethodCost> costs = window;
+        String key = className + "." + methodName;
+        MethodCost cost = costs.get(key);
+        if (cost == null) {
+            MethodCost created = new MethodCost(className, methodName);
+            cost = costs.putIfAbsent(key, created);
+            if (cost == null) {
+                cost = created;
+            }
+        }
+        cost.record(durationNanos, dispatchNanos);
+    }
+
+    // ==================== Check and Escalation ====================
+
+    /**
+     * Estimate the probes' share of CPU since the last check and escalate if
+     * it is over budget.
+     */
+    static synchronized void check() {
+        Map<String, MethodCost> costs = window;
+        window = new ConcurrentHashMap<>();
+        long enter = enterNanos.getAndSet(0);
+        long now = System.nanoTime();
+        long cpu = processCpuNanos();
+        long cpuDelta = cpu >= 0 && windowStartCpuNanos >= 0 ? cpu - windowStartCpuNanos
+                : (now - windowStartNanos) * Runtime.getRuntime().availableProcessors();
+        windowStartNanos = now;
+        windowStartCpuNanos = cpu;
+
+        clockNanos = calibrateClock();
+        long samples = 0;
+        long dispatch = 0;
+        for (MethodCost cost : costs.values()) {
+            samples += cost.samples.get();
+            dispatch += cost.dispatchNanos.get();
+        }
+        // Each call reads the clock on entry and exit, outside the timed part
+        double overheadNanos = (samples * 2 * clockNanos + dispatch + enter) * SAMPLE_RATE;
+        lastCalls = samples * SAMPLE_RATE;
+        lastPerCallNanos = samples > 0 ? overheadNanos / lastCalls : 0;
+        lastPercent = cpuDelta > 0 ? overheadNanos * 100 / cpuDelta : 0;
+
+        judge(lastPercent, samples, costs.values());
+    }
+
+    /**
+     * Escalate once enough consecutive windows, each with enough samples,
+     * were over budget; a window under budget or with too few samples
+     * starts the count again.
+     *
+     * @return the step now in effect
+     */
+    static synchronized Step judge(double percent, long samples, Collection<MethodCost> costs) {
+        if (samples < MIN_WINDOW_SAMPLES || percent <= AgentConfig.getOverheadMaxPercent()) {
+            overBudgetChecks = 0;
+            return step;
+        }
+        if (++overBudgetChecks < OVER_BUDGET_CHECKS) {
+            return step;
+        }
+        overBudgetChecks = 0;
+        return escalate(percent, costs);
+    }
+
+    /**
+     * Take the next step that still applies; at the last step, shed another
+     * batch of methods.
+     *
+     * @return the step now in effect
+     */
+    static synchronized Step escalate(double percent, Collection<MethodCost> costs) {
+        Step next = step;
+        while (true) {
+            if (next != Step.SHED_METHODS) {
+                next = Step.values()[next.ordinal() + 1];
+            }
+            step = next;
+            String detail = apply(next, costs);
+            if (detail != null) {
+                record(next, percent, detail);
+                return next;
+            }
+            if (next == Step.SHED_METHODS) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return what the step did, or null if there was nothing to do
+     */
+    private static String apply(Step next, Collection<MethodCost> costs) {
+        switch (next) {
+            case SAMPLING:
+                int interval = AgentConfig.getOverheadSampleInterval();
+                if (interval <= 1) {
+                    return null;
+                }
+                flatSampleInterval = interval;
+                return "flat calls checked 1 in " + interval;
+            case NO_TREE_ARGS:
+                if (!AgentConfig.snapshotEnabled || !AgentConfig.treeCaptureArgs) {
+                    return null;
+                }
+                AgentConfig.treeCaptureArgs = false;
+                return "tree argument capture off, retransformed " + MethodProbeAgent.retransformClasses("")
+                        + " classes";
+            case NO_SNAPSHOTS:
+                if (!AgentConfig.snapshotEnabled) {
+                    return null;
+                }
+                AgentConfig.snapshotEnabled = false;
+                disabledSnapshots = true;
+                return "snapshots off, retransformed " + MethodProbeAgent.retransformClasses("") + " classes";
+            case SHED_METHODS:
+                List<String> shed = shedHottestCheapMethods(costs);
+                return shed.isEmpty() ? null : "advice removed from " + shed;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Take the advice off the most called methods whose mean duration is
+     * below the flat threshold (at least 1 ms), so they would rarely be
+     * logged anyway. Tree entry methods are kept so call trees still start.
+     */
+    private static List<String> shedHottestCheapMethods(Collection<MethodCost> costs) {
+        long cheapNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(AgentConfig.getFlatThresholdMs(), 1));
+        List<MethodCost> candidates = new ArrayList<>();
+        for (MethodCost cost : costs) {
+            if (cost.meanDurationNanos() < cheapNanos
+                    && !AgentConfig.isShedMethod(cost.className, cost.methodName)
+                    && !AgentConfig.isTreeEntryMethod(cost.className, cost.methodName)) {
+                candidates.add(cost);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b.samples.get(), a.samples.get()));
+
+        List<String> shed = new ArrayList<>();
+        Set<String> classes = new LinkedHashSet<>();
+        int batch = Math.min(AgentConfig.getOverheadShedBatch(), candidates.size());
+        for (MethodCost cost : candidates.subList(0, batch)) {
+            AgentConfig.shedMethod(cost.className + "." + cost.methodName);
+            shed.add(cost.className + "." + cost.methodName);
+            classes.add(cost.className);
+        }
+        for (String className : classes) {
+            MethodProbeAgent.retransformClasses(className);
+        }
+        return shed;
+    }
+
+    /**
+     * Undo every step: flat logging for every call, tree arguments and
+     * snapshots back on if the governor turned them off, shed methods
+     * advised again.
+     *
+     * @return number of classes retransformed
+     */
+    public static synchronized int reset() {
+        flatSampleInterval = 1;
+        AgentConfig.treeCaptureArgs = true;
+        if (disabledSnapshots) {
+            AgentConfig.snapshotEnabled = true;
+            disabledSnapshots = false;
+        }
+        AgentConfig.clearShedMethods();
+        step = Step.NONE;
+        overBudgetChecks = 0;
+        int retransformed = MethodProbeAgent.retransformClasses("");
+        record(Step.NONE, lastPercent, "reset, retransformed " + retransformed + " classes");
+        return retransformed;
+    }
+
+    private static void record(Step taken, double percent, String detail) {
+        System.out.println(String.format(Locale.ROOT, "[MethodProbe] Overhead %.2f%% (budget %.2f%%): %s - %s",
+                percent, AgentConfig.getOverheadMaxPercent(), taken, detail));
+        history.addLast(String.format(Locale.ROOT,
+                "{\"step\":\"%s\",\"at\":%d,\"percent\":%.3f,\"detail\":\"%s\"}", taken,
+                System.currentTimeMillis(), percent, detail.replace("\\", "\\\\").replace("\"", "\\\"")));
+        if (history.size() > MAX_HISTORY) {
+            history.removeFirst();
+        }
+    }
+
+    /**
+     * Cost of one {@link System#nanoTime()} read; the lowest of a few
+     * batches, so a preempted batch doesn't count.
+     */
+    private static double calibrateClock() {
+        double best = Double.MAX_VALUE;
+        for (int batch = 0; batch < 3; batch++) {
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < CALIBRATION_READS; i++) {
+                sink += System.nanoTime();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (sink != 0) {
+                best = Math.min(best, elapsed / (double) CALIBRATION_READS);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * CPU time used by the process, or -1 if the JVM doesn't report it.
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    public static Step getStep() {
+        return step;
+    }
+
+    public static synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"enabled\":").append(enabled).append(",");
+        json.append(String.format(Locale.ROOT, "\"maxPercent\":%.3f,\"percent\":%.3f,\"calls\":%d,"
+                + "\"perCallNanos\":%.1f,\"clockNanos\":%.1f,", AgentConfig.getOverheadMaxPercent(), lastPercent,
+                lastCalls, lastPerCallNanos, clockNanos));
+        json.append("\"step\":\"").append(step).append("\",");
+        json.append("\"flatSampleInterval\":").append(flatSampleInterval).append(",");
+        json.append("\"treeCaptureArgs\":").append(AgentConfig.treeCaptureArgs).append(",");
+        json.append("\"shedMethods\":[");
+        boolean first = true;
+        for (String method : AgentConfig.getShedMethods()) {
+            if (!first)
+                json.append(",");
+            first = false;
+            json.append("\"").append(method.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+        }
+        json.append("],\"steps\":[").append(String.join(",", history)).append("]");
+        json.append("}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.methodprobe.agent;
+
+import com.methodprobe.agent.config.AgentConfig;
+import com.methodprobe.agent.log.LogOutputFactory;
+import com.methodprobe.agent.log.MethodEvent;
+import com.methodprobe.agent.snapshot.SnapshotHelper;
+import com.methodprobe.agent.snapshot.SnapshotIdGenerator;
+import com.methodprobe.agent.snapshot.SnapshotRateLimiter;
+import com.methodprobe.agent.tree.CallTreeContext;
+
+/**
+ * Out-of-line part of the probe advice.
+ *
+ * {@link ProbeAdvice} is inlined into every instrumented method, so it only
+ * reads the clock and calls into here. Keeping the tree bookkeeping, config
+ * checks and flat-mode logging in ordinary methods keeps the woven methods
+ * small enough for the JIT to inline (MaxInlineSize / FreqInlineSize), and
+ * this code is compiled once instead of once per instrumented method.
+ *
+ * A sample of calls also times itself here for the {@link OverheadGovernor},
+ * which may have flat logging checked for only some calls.
+ */
+public final class ProbeDispatcher {
+
+    private ProbeDispatcher() {
+    }
+
+    /**
+     * Method entry: tree tracking.
+     */
+    public static void enter(String className, String methodName, Object[] args) {
+        if (OverheadGovernor.isSampled()) {
+            long start = System.nanoTime();
+            CallTreeContext.onMethodEnter(className, methodName, args);
+            OverheadGovernor.recordEnter(System.nanoTime() - start);
+        } else {
+            CallTreeContext.onMethodEnter(className, methodName, args);
+        }
+    }
+
+    /**
+     * Method exit: tree tracking, then flat-mode logging and snapshot if the
+     * trigger conditions are met.
+     *
+     * @param startTime  {@link System#nanoTime()} read at method entry
+     * @param className  the declaring class name
+     * @param methodName the method name
+     * @param args       all method arguments (captured for snapshot), null if
+     *                   the advice variant doesn't capture them
+     * @param thrown     any exception thrown (null if none)
+     */
+    public static void exit(long startTime, String className, String methodName, Object[] args,
+            Throwable thrown) {
+
+        // Calculate duration first
+        long exitTime = System.nanoTime();
+        long durationNanos = exitTime - startTime;
+
+        // Handle tree tracking exit
+        CallTreeContext.onMethodExit(className, methodName, thrown);
+
+        if (OverheadGovernor.sampleFlat()) {
+            logFlat(durationNanos, className, methodName, args, thrown);
+        }
+        if (OverheadGovernor.isSampled()) {
+            OverheadGovernor.recordExit(className, methodName, durationNanos, System.nanoTime() - exitTime);
+        }
+    }
+
+    /**
+     * Method exit for methods outside any call tree scope: flat-mode logging
+     * only, without arguments.
+     */
+    public static void exitFlat(long startTime, String className, String methodName, Throwable thrown) {
+        long exitTime = System.nanoTime();
+        if (OverheadGovernor.sampleFlat()) {
+            logFlat(exitTime - startTime, className, methodName, null, thrown);
+        }
+        if (OverheadGovernor.isSampled()) {
+            OverheadGovernor.recordExit(className, methodName, exitTime - startTime, System.nanoTime() - exitTime);
+        }
+    }
+
+    private static void logFlat(long durationNanos, String className, String methodName, Object[] args,
+            Throwable thrown) {
+        double durationMs = durationNanos / 1_000_000.0;
+        boolean isException = thrown != null;
+
+        // Check if exception should be captured (based on include/exclude filters)
+        boolean captureException = isException && AgentConfig.shouldCaptureException(thrown);
+
+        // Flat mode probe logic
+        if (AgentConfig.isFlatEnabled()
+                && !CallTreeContext.isInTree()
+                && AgentConfig.shouldLogFlatMethod(className, methodName)) {
+
+            // Get trigger configuration
+            boolean triggerOnTimeout = AgentConfig.flatTriggerOnTimeout;
+            boolean triggerOnException = AgentConfig.flatTriggerOnException;
+            long thresholdMs = AgentConfig.getFlatThresholdMs();
+
+            // Determine if should log (based on flat trigger config)
+            boolean shouldLog = false;
+            if (triggerOnTimeout && durationMs >= thresholdMs) {
+                shouldLog = true;
+            }
+            // Only log exception if matches filter
+            if (triggerOnException && captureException) {
+                shouldLog = true;
+            }
+
+            if (shouldLog) {
+                // Generate snapshot if enabled (follows flat trigger decision)
+                // and the method is within its snapshot rate limit; no args
+                // means this method was woven before snapshots were enabled
+                long snapshotId = 0;
+                if (args != null && AgentConfig.snapshotEnabled
+                        && SnapshotRateLimiter.tryAcquire(className, methodName)) {
+                    snapshotId = SnapshotIdGenerator.next();
+                    SnapshotHelper.createSnapshot(snapshotId, className, methodName, durationMs, args, thrown);
+                }
+
+                // Hand the raw event to the output; formatting (if any) is
+                // up to the configured output mode
+                Thread thread = Thread.currentThread();
+                long startMillis = System.currentTimeMillis() - durationNanos / 1_000_000;
+                LogOutputFactory.writeEvent(new MethodEvent(className + "." + methodName,
+                        startMillis, durationNanos, thread.getId(), thread.getName(),
+                        captureException ? thrown.getClass().getName() : null, snapshotId));
+            }
+        }
+    }
+}
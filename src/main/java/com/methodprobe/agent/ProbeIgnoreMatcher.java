@@ -0,0 +1,54 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.utility.JavaModule;
+
+import java.security.ProtectionDomain;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+/**
+ * Ignore matcher that rejects classes by loader and name only.
+ *
+ * ByteBuddy describes every loaded class lazily, so as long as only the name
+ * is read here the class file is never parsed for classes that can't match.
+ * That covers the JDK and bootstrap classes, excluded packages and every
+ * package no flat or tree config reaches, which on a large application is
+ * almost every class.
+ */
+public class ProbeIgnoreMatcher implements AgentBuilder.RawMatcher {
+
+    private static final ClassLoader PLATFORM_LOADER = ClassLoader.getSystemClassLoader().getParent();
+
+    private final StartupReport report;
+
+    public ProbeIgnoreMatcher(StartupReport report) {
+        this.report = report;
+    }
+
+    @Override
+    public boolean matches(TypeDescription typeDescription, ClassLoader classLoader, JavaModule module,
+            Class<?> classBeingRedefined, ProtectionDomain protectionDomain) {
+        boolean ignored = isIgnored(typeDescription.getName(), classLoader);
+        if (ignored && report != null) {
+            report.recordIgnored();
+        }
+        return ignored;
+    }
+
+    /**
+     * Bootstrap and platform (extension) classes, classes of loaders
+     * {@link AgentConfig#isIgnoredClassLoader ignored} as a whole, and classes
+     * {@link AgentConfig#isIgnored} by name.
+     */
+    static boolean isIgnored(String className, ClassLoader classLoader) {
+        if (classLoader == null || classLoader == PLATFORM_LOADER) {
+            return true;
+        }
+        if (AgentConfig.isIgnoredClassLoader(classLoader)) {
+            return true;
+        }
+        return AgentConfig.isIgnored(className);
+    }
+}
@@ -0,0 +1,179 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.matcher.ElementMatchers;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.isBridge;
+import static net.bytebuddy.matcher.ElementMatchers.isConstructor;
+import static net.bytebuddy.matcher.ElementMatchers.isMethod;
+import static net.bytebuddy.matcher.ElementMatchers.isNative;
+import static net.bytebuddy.matcher.ElementMatchers.isSynthetic;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+
+/**
+ * Builds the method matcher for one instrumented class from configuration,
+ * so advice only goes where it can log something.
+ */
+public class ProbeMethodMatcher {
+
+    private ProbeMethodMatcher() {
+    }
+
+    /**
+     * Matcher for the methods of a class.
+     *
+     * @param methods       {@link AgentConfig#ALL_METHODS} or the method names
+     *                      configured for this class
+     * @param skipAccessors with all methods: skip getters, setters, toString,
+     *                      hashCode and equals
+     * @param skipSynthetic with all methods: skip synthetic and bridge methods
+     */
+    public static ElementMatcher.Junction<MethodDescription> forMethods(Set<String> methods, boolean skipAccessors,
+            boolean skipSynthetic) {
+        ElementMatcher.Junction<MethodDescription> matcher = isMethod()
+                .and(not(isConstructor()))
+                .and(not(isAbstract()))
+                .and(not(isNative()));
+
+        if (!AgentConfig.ALL_METHODS.equals(methods)) {
+            // Explicitly configured methods are advised whatever their shape
+            return matcher.and(ElementMatchers.<MethodDescription>namedOneOf(methods.toArray(new String[0])));
+        }
+        if (skipSynthetic) {
+            matcher = matcher.and(not(isSynthetic())).and(not(isBridge()));
+        }
+        if (skipAccessors) {
+            matcher = matcher.and(not(new AccessorMatcher()));
+        }
+        return matcher;
+    }
+
+    /**
+     * Advice plan for a class under the current configuration: the advised
+     * methods and the {@link AdviceVariant} each one gets.
+     *
+     * With whole-class config the plan holds {@link AdviceVariant#ANY_METHOD}
+     * for the default variant, plus any method configured by name that needs
+     * a different one (e.g. a tree entry method taking snapshots, or
+     * {@link AdviceVariant#NONE} for a method the overhead governor shed).
+     *
+     * @return unmodifiable sorted plan, or null if the class should not be
+     *         instrumented
+     */
+    public static Map<String, AdviceVariant> planFor(String className) {
+        Set<String> methods = AgentConfig.getMethodsToInstrument(className);
+        if (methods == null) {
+            return null;
+        }
+
+        Map<String, AdviceVariant> plan = new TreeMap<>();
+        if (AgentConfig.ALL_METHODS.equals(methods)) {
+            AdviceVariant defaultVariant = AdviceVariant.select(className, AdviceVariant.ANY_METHOD);
+            plan.put(AdviceVariant.ANY_METHOD, defaultVariant);
+            Set<String> named = AgentConfig.getConfiguredMethods(className);
+            named.addAll(AgentConfig.getShedMethods(className));
+            for (String method : named) {
+                AdviceVariant variant = AdviceVariant.select(className, method);
+                if (variant != defaultVariant) {
+                    plan.put(method, variant);
+                }
+            }
+        } else {
+            for (String method : methods) {
+                AdviceVariant variant = AdviceVariant.select(className, method);
+                if (variant != AdviceVariant.NONE) {
+                    plan.put(method, variant);
+                }
+            }
+            if (plan.isEmpty()) {
+                return null;
+            }
+        }
+        return Collections.unmodifiableMap(plan);
+    }
+
+    /**
+     * Matcher for the methods that get one advice variant in a plan.
+     */
+    public static ElementMatcher.Junction<MethodDescription> forVariant(Map<String, AdviceVariant> plan,
+            AdviceVariant variant) {
+        Set<String> methods = plan.containsKey(AdviceVariant.ANY_METHOD) ? AgentConfig.ALL_METHODS : plan.keySet();
+        return forMethods(methods, AgentConfig.isInstrumentSkipAccessors(), AgentConfig.isInstrumentSkipSynthetic())
+                .and(new VariantMatcher(plan, variant));
+    }
+
+    /**
+     * Number of methods of a type that get advice under a plan.
+     */
+    public static int countMethods(TypeDescription type, Map<String, AdviceVariant> plan) {
+        if (plan == null) {
+            return 0;
+        }
+        Set<String> methods = plan.containsKey(AdviceVariant.ANY_METHOD) ? AgentConfig.ALL_METHODS : plan.keySet();
+        return type.getDeclaredMethods().filter(forMethods(methods, AgentConfig.isInstrumentSkipAccessors(),
+                AgentConfig.isInstrumentSkipSynthetic())
+                .and(not(new VariantMatcher(plan, AdviceVariant.NONE)))).size();
+    }
+
+    /**
+     * Matches methods whose planned variant is the given one.
+     */
+    static final class VariantMatcher extends ElementMatcher.Junction.AbstractBase<MethodDescription> {
+
+        private final Map<String, AdviceVariant> plan;
+        private final AdviceVariant variant;
+
+        VariantMatcher(Map<String, AdviceVariant> plan, AdviceVariant variant) {
+            this.plan = plan;
+            this.variant = variant;
+        }
+
+        @Override
+        public boolean matches(MethodDescription method) {
+            AdviceVariant planned = plan.get(method.getName());
+            if (planned == null) {
+                planned = plan.get(AdviceVariant.ANY_METHOD);
+            }
+            return planned == variant;
+        }
+    }
+
+    /**
+     * Matches by signature: getX()/isX() returning a value, void setX(x),
+     * and the Object methods toString, hashCode and equals.
+     */
+    static final class AccessorMatcher extends ElementMatcher.Junction.AbstractBase<MethodDescription> {
+
+        @Override
+        public boolean matches(MethodDescription method) {
+            String name = method.getName();
+            int params = method.getParameters().size();
+            boolean returnsVoid = method.getReturnType().represents(void.class);
+
+            if (params == 0 && !returnsVoid) {
+                return isProperty(name, "get") || isProperty(name, "is")
+                        || name.equals("toString") || name.equals("hashCode");
+            }
+            if (params == 1) {
+                return (returnsVoid && isProperty(name, "set"))
+                        || (name.equals("equals") && method.getParameters().get(0).getType().represents(Object.class));
+            }
+            return false;
+        }
+
+        private static boolean isProperty(String name, String prefix) {
+            return name.length() > prefix.length() && name.startsWith(prefix)
+                    && Character.isUpperCase(name.charAt(prefix.length()));
+        }
+    }
+}
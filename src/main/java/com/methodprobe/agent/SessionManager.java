@@ -0,0 +1,419 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.description.type.TypeDescription;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.methodprobe.agent.config.AgentConfig;
+import com.methodprobe.agent.snapshot.SnapshotWriter;
+
+/**
+ * Time-boxed profiling sessions.
+ *
+ * A session adds flat and tree config (and optionally turns snapshots on)
+ * for a limited time. When it expires, is stopped, or its classes end up
+ * carrying more advice than its method cap allows, everything it added is
+ * removed again and the affected classes are retransformed back, so
+ * instrumentation added during an incident can't linger.
+ *
+ * Entries that were already configured before the session are left alone;
+ * entries that another live session also asked for stay until that one ends.
+ */
+public class SessionManager {
+
+    private final LoadedClassIndex classIndex;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private ScheduledExecutorService reaper;
+
+    /**
+     * One session: what it asked for, what it actually added, and its limits.
+     */
+    public static final class Session {
+        private static final int FLAT_PACKAGE = 0;
+        private static final int FLAT_CLASS = 1;
+        private static final int FLAT_METHOD = 2;
+        private static final int TREE_ENTRY = 3;
+        private static final int TREE_PACKAGE = 4;
+        private static final String[] KIND_NAMES = { "flatPackages", "flatClasses", "flatMethods", "treeEntries",
+                "treePackages" };
+
+        private final long ttlMillis;
+        private int maxMethods;
+        private final boolean snapshot;
+        private final List<Set<String>> requested = new ArrayList<>();
+        private final List<Set<String>> added = new ArrayList<>();
+        private String id;
+        private long expiresAt;
+        private boolean enabledSnapshot;
+
+        /**
+         * @param ttlSeconds time until the session is rolled back
+         * @param maxMethods cap on advised methods under the session's
+         *                   classes, 0 for the configured maximum
+         * @param snapshot   whether snapshots are on for the session
+         */
+        public Session(long ttlSeconds, int maxMethods, boolean snapshot) {
+            this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+            this.maxMethods = maxMethods;
+            this.snapshot = snapshot;
+            for (int i = 0; i < KIND_NAMES.length; i++) {
+                requested.add(new LinkedHashSet<>());
+                added.add(new LinkedHashSet<>());
+            }
+        }
+
+        public Session flatPackages(Collection<String> names) {
+            return request(FLAT_PACKAGE, names);
+        }
+
+        public Session flatClasses(Collection<String> names) {
+            return request(FLAT_CLASS, names);
+        }
+
+        public Session flatMethods(Collection<String> names) {
+            return request(FLAT_METHOD, names);
+        }
+
+        public Session treeEntries(Collection<String> names) {
+            return request(TREE_ENTRY, names);
+        }
+
+        public Session treePackages(Collection<String> names) {
+            return request(TREE_PACKAGE, names);
+        }
+
+        private Session request(int kind, Collection<String> names) {
+            for (String name : names) {
+                if (!name.trim().isEmpty()) {
+                    requested.get(kind).add(name.trim());
+                }
+            }
+            return this;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public int getMaxMethods() {
+            return maxMethods;
+        }
+
+        /**
+         * Class name prefixes the session's config reaches.
+         */
+        List<String> scopes() {
+            Set<String> scopes = new LinkedHashSet<>();
+            for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+                for (String name : requested.get(kind)) {
+                    scopes.add(kind == FLAT_METHOD || kind == TREE_ENTRY ? MethodProbeAgent.classOf(name) : name);
+                }
+            }
+            return new ArrayList<>(scopes);
+        }
+
+        private boolean isEmpty() {
+            for (Set<String> names : requested) {
+                if (!names.isEmpty()) {
+                    return false;
+                }
+            }
+            return !snapshot;
+        }
+
+        String toJson(int instrumentedMethods) {
+            StringBuilder json = new StringBuilder("{");
+            json.append("\"id\":\"").append(id).append("\",");
+            json.append("\"expiresAt\":").append(expiresAt).append(",");
+            json.append("\"maxMethods\":").append(maxMethods).append(",");
+            json.append("\"instrumentedMethods\":").append(instrumentedMethods).append(",");
+            json.append("\"snapshot\":").append(snapshot);
+            for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+                json.append(",\"").append(KIND_NAMES[kind]).append("\":[");
+                boolean first = true;
+                for (String name : requested.get(kind)) {
+                    if (!first)
+                        json.append(",");
+                    first = false;
+                    json.append("\"").append(name.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+                }
+                json.append("]");
+            }
+            json.append("}");
+            return json.toString();
+        }
+    }
+
+    public SessionManager(LoadedClassIndex classIndex) {
+        this.classIndex = classIndex;
+    }
+
+    /**
+     * Apply a session's config and retransform the classes it reaches.
+     *
+     * @return number of classes retransformed
+     * @throws IllegalArgumentException if the session is empty or its TTL or
+     *                                  cap is out of range, or its loaded
+     *                                  classes would exceed the method cap;
+     *                                  nothing is applied then
+     */
+    public synchronized int start(Session session) {
+        long maxTtl = TimeUnit.SECONDS.toMillis(AgentConfig.getSessionMaxTtl());
+        if (session.isEmpty()) {
+            throw new IllegalArgumentException("Session adds nothing");
+        }
+        if (session.ttlMillis <= 0 || session.ttlMillis > maxTtl) {
+            throw new IllegalArgumentException("ttl must be between 1 and " + AgentConfig.getSessionMaxTtl() + "s");
+        }
+        if (session.maxMethods < 0 || session.maxMethods > AgentConfig.getSessionMaxMethods()) {
+            throw new IllegalArgumentException("maxMethods must be at most " + AgentConfig.getSessionMaxMethods());
+        }
+        if (session.id != null) {
+            throw new IllegalArgumentException("Session already started");
+        }
+        if (session.maxMethods == 0) {
+            session.maxMethods = AgentConfig.getSessionMaxMethods();
+        }
+
+        apply(session);
+        int methods = countPlannedMethods(session.scopes());
+        if (methods > session.maxMethods) {
+            // Classes loaded while counting were woven with the session's config
+            revert(session);
+            retransform(session);
+            session.added.forEach(Set::clear);
+            session.enabledSnapshot = false;
+            throw new IllegalArgumentException("Session would instrument " + methods + " methods, cap is "
+                    + session.maxMethods);
+        }
+
+        session.id = "session-" + nextId.incrementAndGet();
+        session.expiresAt = System.currentTimeMillis() + session.ttlMillis;
+        sessions.put(session.id, session);
+        startReaper();
+
+        int retransformed = retransform(session);
+        System.out.println("[MethodProbe] Session " + session.id + " started: " + methods + " methods, expires in "
+                + session.ttlMillis / 1000 + "s");
+        return retransformed;
+    }
+
+    /**
+     * End a session now and roll back what it added.
+     *
+     * @return number of classes retransformed, or -1 if there is no such session
+     */
+    public int stop(String id) {
+        return end(id, "stopped");
+    }
+
+    /**
+     * End expired sessions and sessions over their method cap.
+     */
+    public void check(long now) {
+        for (Session session : sessions.values()) {
+            if (now >= session.expiresAt) {
+                end(session.id, "expired");
+            } else if (classIndex.countInstrumentedMethods(session.scopes()) > session.maxMethods) {
+                end(session.id, "method cap of " + session.maxMethods + " exceeded");
+            }
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("[");
+        boolean first = true;
+        for (Session session : sessions.values()) {
+            if (!first)
+                json.append(",");
+            first = false;
+            json.append(session.toJson(classIndex.countInstrumentedMethods(session.scopes())));
+        }
+        json.append("]");
+        return json.toString();
+    }
+
+    public String toJson(String id) {
+        Session session = sessions.get(id);
+        return session == null ? null : session.toJson(classIndex.countInstrumentedMethods(session.scopes()));
+    }
+
+    private synchronized int end(String id, String reason) {
+        Session session = sessions.remove(id);
+        if (session == null) {
+            return -1;
+        }
+        revert(session);
+        int retransformed = retransform(session);
+        System.out.println("[MethodProbe] Session " + id + " ended (" + reason + "), retransformed " + retransformed
+                + " classes");
+        return retransformed;
+    }
+
+    private void apply(Session session) {
+        for (int kind = 0; kind < Session.KIND_NAMES.length; kind++) {
+            for (String name : session.requested.get(kind)) {
+                if (!isConfigured(kind, name)) {
+                    add(kind, name);
+                    session.added.get(kind).add(name);
+                }
+            }
+        }
+        if (session.snapshot && !AgentConfig.snapshotEnabled) {
+            AgentConfig.snapshotEnabled = true;
+            SnapshotWriter.init(AgentConfig.snapshotDir);
+            session.enabledSnapshot = true;
+        }
+    }
+
+    /**
+     * Remove what the session added, handing entries another live session
+     * also asked for over to that session instead.
+     */
+    private void revert(Session session) {
+        for (int kind = 0; kind < Session.KIND_NAMES.length; kind++) {
+            for (String name : session.added.get(kind)) {
+                Session heir = findRequesting(kind, name);
+                if (heir != null) {
+                    heir.added.get(kind).add(name);
+                } else {
+                    remove(kind, name);
+                }
+            }
+        }
+        if (session.enabledSnapshot) {
+            Session heir = findRequesting(-1, null);
+            if (heir != null) {
+                heir.enabledSnapshot = true;
+            } else {
+                AgentConfig.snapshotEnabled = false;
+            }
+        }
+    }
+
+    private Session findRequesting(int kind, String name) {
+        for (Session other : sessions.values()) {
+            if (kind < 0 ? other.snapshot : other.requested.get(kind).contains(name)) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    private int retransform(Session session) {
+        if (session.snapshot) {
+            // Snapshot on or off changes the advice variant of every instrumented class
+            return MethodProbeAgent.retransformClasses("");
+        }
+        int retransformed = 0;
+        for (String scope : session.scopes()) {
+            retransformed += MethodProbeAgent.retransformClasses(scope);
+        }
+        return retransformed;
+    }
+
+    /**
+     * Methods of loaded classes under the scopes that would get advice under
+     * the current config.
+     */
+    private int countPlannedMethods(List<String> scopes) {
+        Set<LoadedClassIndex.Entry> seen = new LinkedHashSet<>();
+        int count = 0;
+        for (String scope : scopes) {
+            for (LoadedClassIndex.Entry entry : classIndex.find(scope)) {
+                Class<?> type = entry.resolve();
+                if (type != null && seen.add(entry)) {
+                    count += ProbeMethodMatcher.countMethods(TypeDescription.ForLoadedType.of(type),
+                            ProbeMethodMatcher.planFor(entry.className));
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isConfigured(int kind, String name) {
+        switch (kind) {
+            case Session.FLAT_PACKAGE:
+                return AgentConfig.getFlatPackages().contains(name);
+            case Session.FLAT_CLASS:
+                return AgentConfig.getFlatClasses().contains(name);
+            case Session.FLAT_METHOD:
+                return AgentConfig.getFlatMethods().contains(name);
+            case Session.TREE_ENTRY:
+                return AgentConfig.getTreeEntryMethods().contains(name);
+            default:
+                return AgentConfig.getTreePackages().contains(name);
+        }
+    }
+
+    private static void add(int kind, String name) {
+        switch (kind) {
+            case Session.FLAT_PACKAGE:
+                AgentConfig.addFlatPackage(name);
+                break;
+            case Session.FLAT_CLASS:
+                AgentConfig.addFlatClass(name);
+                break;
+            case Session.FLAT_METHOD:
+                AgentConfig.addFlatMethod(name);
+                break;
+            case Session.TREE_ENTRY:
+                AgentConfig.addTreeEntryMethod(name);
+                break;
+            default:
+                AgentConfig.addTreePackage(name);
+        }
+    }
+
+    private static void remove(int kind, String name) {
+        switch (kind) {
+            case Session.FLAT_PACKAGE:
+                AgentConfig.removeFlatPackage(name);
+                break;
+            case Session.FLAT_CLASS:
+                AgentConfig.removeFlatClass(name);
+                break;
+            case Session.FLAT_METHOD:
+                AgentConfig.removeFlatMethod(name);
+                break;
+            case Session.TREE_ENTRY:
+                AgentConfig.removeTreeEntryMethod(name);
+                break;
+            default:
+                AgentConfig.removeTreePackage(name);
+        }
+    }
+
+    private void startReaper() {
+        if (reaper != null) {
+            return;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "MethodProbe-SessionReaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(() -> {
+            try {
+                check(System.currentTimeMillis());
+            } catch (Throwable e) {
+                System.err.println("[MethodProbe] Session check failed: " + e.getMessage());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,101 @@
+package com.methodprobe.agent;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts what the agent does while the application boots.
+ *
+ * Printing a line per transformed class is a noticeable part of the agent's
+ * startup cost on large applications, so for a quiet window after agent
+ * start classes are only counted; when the window closes a single summary
+ * is printed. Counters keep running afterwards and are reported in /stats.
+ */
+public class StartupReport {
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong typesIgnored = new AtomicLong();
+    private final AtomicLong typesChecked = new AtomicLong();
+    private final AtomicLong typesMatched = new AtomicLong();
+    private final AtomicLong matchNanos = new AtomicLong();
+    private final AtomicLong transformed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicBoolean reported = new AtomicBoolean();
+    private volatile boolean quiet;
+    private volatile long startupMs = -1;
+
+    /**
+     * Start the quiet window; the summary is printed when it closes.
+     *
+     * @param quietWindowMs window length, 0 to print every class right away
+     */
+    public void start(long quietWindowMs) {
+        if (quietWindowMs <= 0) {
+            return;
+        }
+        quiet = true;
+        Thread timer = new Thread(() -> {
+            try {
+                Thread.sleep(quietWindowMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            report();
+        }, "MethodProbe-StartupReport");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * True while per-class output should be suppressed.
+     */
+    public boolean isQuiet() {
+        return quiet;
+    }
+
+    public void recordIgnored() {
+        typesIgnored.incrementAndGet();
+    }
+
+    public void recordMatch(long nanos, boolean matched) {
+        typesChecked.incrementAndGet();
+        matchNanos.addAndGet(nanos);
+        if (matched) {
+            typesMatched.incrementAndGet();
+        }
+    }
+
+    public void recordTransformation() {
+        transformed.incrementAndGet();
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * End the quiet window and print the summary, once.
+     */
+    public void report() {
+        if (!reported.compareAndSet(false, true)) {
+            return;
+        }
+        quiet = false;
+        startupMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        System.out.println(String.format(Locale.ROOT,
+                "[MethodProbe] Startup: %d classes transformed, %d of %d checked matched, %d ignored by name,"
+                        + " %d errors in the first %d ms; matching took %.1f ms",
+                transformed.get(), typesMatched.get(), typesChecked.get(), typesIgnored.get(), errors.get(),
+                startupMs, matchNanos.get() / 1_000_000.0));
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"quiet\":%b,\"startupMs\":%d,\"typesIgnored\":%d,\"typesChecked\":%d,\"typesMatched\":%d,"
+                        + "\"matchMs\":%.3f,\"transformed\":%d,\"errors\":%d}",
+                quiet, startupMs, typesIgnored.get(), typesChecked.get(), typesMatched.get(),
+                matchNanos.get() / 1_000_000.0, transformed.get(), errors.get());
+    }
+}
@@ -1,6 +1,17 @@
 package com.methodprobe.agent;
 
+import java.util.Locale;
+import java.util.Map;
+
 import com.methodprobe.agent.config.AgentConfig;
+import com.methodprobe.agent.log.LogOutput;
+import com.methodprobe.agent.log.LogOutputFactory;
+import com.methodprobe.agent.log.WebSocketLogManager;
+import com.methodprobe.agent.snapshot.ArgumentCapture;
+import com.methodprobe.agent.snapshot.ArgumentStore;
+import com.methodprobe.agent.snapshot.PipelineStage;
+import com.methodprobe.agent.snapshot.SnapshotRateLimiter;
+import com.methodprobe.agent.snapshot.SnapshotWriter;
 
 /**
  * Simplified reporter - since we now log each method call individually,
@@ -61,7 +72,16 @@ public class StatsReporter {
         json.append("\"mode\":\"").append(escapeJson(AgentConfig.getOutputMode())).append("\",");
         json.append("\"dir\":\"").append(escapeJson(AgentConfig.getOutputDir())).append("\",");
         json.append("\"bufferSize\":").append(AgentConfig.getOutputBufferSize()).append(",");
-        json.append("\"flushInterval\":").append(AgentConfig.getOutputFlushInterval());
+        json.append("\"flushInterval\":").append(AgentConfig.getOutputFlushInterval()).append(",");
+        json.append("\"dropPolicy\":\"").append(AgentConfig.getOutputDropPolicy()).append("\",");
+        json.append("\"maxFileSize\":").append(AgentConfig.getOutputMaxFileSize()).append(",");
+        json.append("\"maxFiles\":").append(AgentConfig.getOutputMaxFiles()).append(",");
+        json.append("\"compress\":").append(AgentConfig.isOutputCompress()).append(",");
+        json.append("\"wsEnabled\":").append(AgentConfig.isOutputWsEnabled()).append(",");
+        json.append("\"wsPort\":").append(AgentConfig.getOutputWsPort()).append(",");
+        json.append("\"wsBatchInterval\":").append(AgentConfig.getOutputWsBatchInterval()).append(",");
+        json.append("\"wsClientBuffer\":").append(AgentConfig.getOutputWsClientBuffer()).append(",");
+        json.append("\"summaryInterval\":").append(AgentConfig.getOutputSummaryInterval());
         json.append("},");
 
         // Snapshot Configuration
@@ -71,6 +91,13 @@ public class StatsReporter {
         json.append("\"maxObjectSize\":").append(AgentConfig.snapshotMaxObjectSize).append(",");
         json.append("\"retentionDays\":").append(AgentConfig.snapshotRetentionDays).append(",");
         json.append("\"serializeSync\":").append(AgentConfig.snapshotSerializeSync).append(",");
+        json.append("\"dedupEnabled\":").append(AgentConfig.snapshotDedupEnabled).append(",");
+        json.append("\"dedupMinSize\":").append(AgentConfig.snapshotDedupMinSize).append(",");
+        json.append("\"ratePerMethod\":").append(AgentConfig.snapshotRatePerMethod).append(",");
+        json.append("\"rateBurst\":").append(AgentConfig.snapshotRateBurst).append(",");
+        json.append("\"rateGlobal\":").append(AgentConfig.snapshotRateGlobal).append(",");
+        json.append("\"asyncCopyMax\":").append(AgentConfig.snapshotAsyncCopyMax).append(",");
+        json.append("\"asyncValueClasses\":").append(toJsonArray(AgentConfig.getSnapshotValueClasses())).append(",");
         json.append("\"treeSnapshotProbeAll\":").append(AgentConfig.treeSnapshotProbeAll);
         json.append("},");
 
@@ -90,6 +117,85 @@ public class StatsReporter {
         return json.toString();
     }
 
+    /**
+     * Get runtime counters as JSON.
+     */
+    public static String getStatsAsJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{");
+
+        // Snapshot Counters
+        json.append("\"snapshot\":{");
+        json.append("\"rejectedByMethodLimit\":").append(SnapshotRateLimiter.getRejectedByMethod()).append(",");
+        json.append("\"rejectedByGlobalLimit\":").append(SnapshotRateLimiter.getRejectedByGlobal()).append(",");
+        json.append("\"rejectedPerMethod\":").append(toJsonObject(SnapshotRateLimiter.getRejectedPerMethod()))
+                .append(",");
+        json.append("\"dedupHits\":").append(ArgumentStore.getDedupHits()).append(",");
+        json.append("\"dedupBytesSaved\":").append(ArgumentStore.getDedupBytesSaved()).append(",");
+        json.append("\"asyncDeferredArgs\":").append(ArgumentCapture.getDeferredArgs()).append(",");
+        json.append("\"asyncEagerArgs\":").append(ArgumentCapture.getEagerArgs()).append(",");
+        json.append("\"pipeline\":{");
+        json.append("\"serialize\":").append(toJson(SnapshotWriter.getSerializeStage())).append(",");
+        json.append("\"write\":").append(toJson(SnapshotWriter.getWriteStage()));
+        json.append("}");
+        json.append("},");
+
+        // Live Log Stream Counters
+        json.append("\"websocket\":{");
+        json.append("\"clients\":").append(WebSocketLogManager.getClientCount()).append(",");
+        json.append("\"framesSent\":").append(WebSocketLogManager.getFramesSent()).append(",");
+        json.append("\"droppedMessages\":").append(WebSocketLogManager.getDroppedMessages()).append(",");
+        json.append("\"droppedClients\":").append(WebSocketLogManager.getDroppedClients());
+        json.append("},");
+
+        // Class Matching and Transformation
+        json.append("\"startup\":").append(MethodProbeAgent.getStartupReport().toJson()).append(",");
+
+        // Overhead Governor
+        json.append("\"overhead\":").append(OverheadGovernor.toJson()).append(",");
+
+        // Log Output Sinks
+        json.append("\"sinks\":{");
+        boolean firstSink = true;
+        for (Map.Entry<String, LogOutput> sink : LogOutputFactory.getSinks().entrySet()) {
+            if (!firstSink)
+                json.append(",");
+            firstSink = false;
+            json.append("\"").append(escapeJson(sink.getKey())).append("\":{");
+            json.append("\"type\":\"").append(sink.getValue().getClass().getSimpleName()).append("\",");
+            json.append("\"dropped\":").append(sink.getValue().getDroppedCount());
+            json.append("}");
+        }
+        json.append("}");
+
+        json.append("}");
+        return json.toString();
+    }
+
+    private static String toJson(PipelineStage stage) {
+        if (stage == null) {
+            return "null";
+        }
+        return String.format(Locale.ROOT,
+                "{\"threads\":%d,\"queueDepth\":%d,\"submitted\":%d,\"completed\":%d,"
+                        + "\"dropped\":%d,\"avgLatencyMs\":%.3f,\"maxLatencyMs\":%.3f}",
+                stage.getThreads(), stage.getQueueDepth(), stage.getSubmitted(), stage.getCompleted(),
+                stage.getDropped(), stage.getAvgLatencyMs(), stage.getMaxLatencyMs());
+    }
+
+    private static String toJsonObject(Map<String, Long> map) {
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : map.entrySet()) {
+            if (!first)
+                sb.append(",");
+            first = false;
+            sb.append("\"").append(escapeJson(entry.getKey())).append("\":").append(entry.getValue());
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
     private static String toJsonArray(java.util.Set<String> set) {
         StringBuilder sb = new StringBuilder("[");
         boolean first = true;
@@ -0,0 +1,37 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.asm.Advice;
+
+/**
+ * Advice for methods that are only timed: flat mode without snapshot and
+ * outside any call tree scope.
+ *
+ * Nothing is called on entry and no argument array is built; see
+ * {@link AdviceVariant} for when this variant is chosen.
+ */
+public class TimingAdvice {
+
+    /**
+     * @return start time in nanoseconds
+     */
+    @Advice.OnMethodEnter
+    public static long onEnter() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param startTime  start time from onEnter
+     * @param className  the declaring class name
+     * @param methodName the method name
+     * @param thrown     any exception thrown (null if none)
+     */
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onExit(
+            @Advice.Enter long startTime,
+            @Advice.Origin("#t") String className,
+            @Advice.Origin("#m") String methodName,
+            @Advice.Thrown Throwable thrown) {
+
+        ProbeDispatcher.exitFlat(startTime, className, methodName, thrown);
+    }
+}
@@ -0,0 +1,43 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.asm.Advice;
+
+/**
+ * Advice for methods in call tree scope that never snapshot their arguments.
+ *
+ * Does the same tree tracking and flat logging as {@link ProbeAdvice} but
+ * passes no argument array; see {@link AdviceVariant} for when this variant
+ * is chosen.
+ */
+public class TreeAdvice {
+
+    /**
+     * @param className  the declaring class name
+     * @param methodName the method name
+     * @return start time in nanoseconds
+     */
+    @Advice.OnMethodEnter
+    public static long onEnter(
+            @Advice.Origin("#t") String className,
+            @Advice.Origin("#m") String methodName) {
+
+        ProbeDispatcher.enter(className, methodName, null);
+        return System.nanoTime();
+    }
+
+    /**
+     * @param startTime  start time from onEnter
+     * @param className  the declaring class name
+     * @param methodName the method name
+     * @param thrown     any exception thrown (null if none)
+     */
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onExit(
+            @Advice.Enter long startTime,
+            @Advice.Origin("#t") String className,
+            @Advice.Origin("#m") String methodName,
+            @Advice.Thrown Throwable thrown) {
+
+        ProbeDispatcher.exit(startTime, className, methodName, null, thrown);
+    }
+}
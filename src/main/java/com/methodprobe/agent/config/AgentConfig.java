@@ -6,8 +6,11 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -19,6 +22,22 @@ public class AgentConfig {
 
     // ==================== Exclude Patterns ====================
     private static final Set<String> excludePatterns = ConcurrentHashMap.newKeySet();
+    private static final Set<String> excludeClassLoaders = ConcurrentHashMap.newKeySet();
+
+    /** Whether classes of a package can match at all, by package name; replaced on every config change */
+    private static volatile Map<String, PackageMatch> packageMatchCache = new ConcurrentHashMap<>();
+
+    /** Whether no class of a loader can match, by loader instance (held weakly); replaced on every config change */
+    private static volatile Map<ClassLoader, Boolean> ignoredLoaderCache = newLoaderCache();
+
+    private enum PackageMatch {
+        /** No class in the package can match */
+        NONE,
+        /** A configured package covers the whole package; only exclusions apply */
+        ALL,
+        /** Depends on the class name */
+        SOME
+    }
 
     // ==================== Flat Mode Configuration ====================
     private static boolean flatEnabled = true;
@@ -36,12 +55,39 @@ public class AgentConfig {
     // ==================== General Configuration ====================
     private static int httpPort = 9876;
     private static long reportIntervalSeconds = 30;
+    private static boolean instrumentSkipAccessors = false;
+    private static boolean instrumentSkipSynthetic = false;
+    private static long startupQuietWindowMs = 30000;
+    private static int sessionMaxMethods = 5000;
+    private static long sessionMaxTtlSeconds = 3600;
+
+    // ==================== Overhead Governor Configuration ====================
+    private static double overheadMaxPercent = 0; // 0 = governor off
+    private static long overheadCheckIntervalSeconds = 5;
+    private static int overheadSampleInterval = 10;
+    private static int overheadShedBatch = 10;
+    // Methods the overhead governor has taken the advice off ("Class.method")
+    private static final Set<String> shedMethods = ConcurrentHashMap.newKeySet();
+
+    /** {@link #getMethodsToInstrument} result for "every method of the class" */
+    public static final Set<String> ALL_METHODS = Collections.singleton("*");
 
     // ==================== Log Output Configuration ====================
     private static String outputMode = "console";
     private static String outputDir = "./probe-logs";
     private static int outputBufferSize = 10000;
     private static long outputFlushInterval = 1000;
+    private static String outputDropPolicy = "oldest";
+    private static long outputMaxFileSize = 100L * 1024 * 1024;
+    private static int outputMaxFiles = 30;
+    private static boolean outputCompress = true;
+    private static boolean outputWsEnabled = false;
+    private static int outputWsPort = 0;
+    private static long outputWsBatchInterval = 100;
+    private static long outputWsClientBuffer = 1024 * 1024;
+    private static long outputSummaryInterval = 60000;
+    // Per-sink overrides of the drop policy: probe.output.<sink>.drop.policy
+    private static final Map<String, String> outputSinkDropPolicies = new ConcurrentHashMap<>();
 
     // ==================== Snapshot Configuration (volatile for high-perf access)
     // ====================
@@ -51,6 +97,19 @@ public class AgentConfig {
     public static volatile int snapshotRetentionDays = 7;
     public static volatile boolean snapshotSerializeSync = true; // true=sync, false=async
     public static volatile boolean treeSnapshotProbeAll = false; // true=all, false=entry_only
+    public static volatile boolean treeCaptureArgs = true; // false while the overhead governor turned it off
+    public static volatile boolean snapshotDedupEnabled = true; // store repeated args once per segment
+    public static volatile int snapshotDedupMinSize = 64; // smaller args are cheaper to inline
+    public static volatile int snapshotRatePerMethod = 10; // snapshots/sec per method, 0 = unlimited
+    public static volatile int snapshotRateBurst = 10; // max snapshots a method may take at once
+    public static volatile int snapshotRateGlobal = 100; // snapshots/sec across all methods, 0 = unlimited
+    public static volatile int snapshotAsyncCopyMax = 1000; // max elements copied per array/collection arg
+    public static volatile int snapshotSerializerThreads = 0; // 0 = auto (half the cores, 1..4)
+    public static volatile int snapshotSerializerQueueSize = 500;
+    public static volatile int snapshotWriterQueueSize = 500;
+    public static volatile int snapshotIdNode = -1; // 0-1023 node bits of snapshot IDs, -1 = derive from pid@host
+    // Extra immutable classes captured by reference in async mode
+    private static final Set<String> snapshotValueClasses = ConcurrentHashMap.newKeySet();
 
     // ==================== Trigger Mode Configuration ====================
     // Flat mode triggers
@@ -80,6 +139,12 @@ public class AgentConfig {
         excludePatterns.add("jdk.");
         excludePatterns.add("net.bytebuddy.");
 
+        // Class loaders that only define generated infrastructure classes
+        excludeClassLoaders.add("jdk.internal.reflect.DelegatingClassLoader");
+        excludeClassLoaders.add("sun.reflect.DelegatingClassLoader");
+        excludeClassLoaders.add("net.bytebuddy.");
+        configChanged();
+
         if (agentArgs == null || agentArgs.isEmpty()) {
             System.out.println("[MethodProbe] No configuration provided, using defaults.");
             return;
@@ -87,6 +152,7 @@ public class AgentConfig {
 
         // Parse agent arguments
         String configPath = null;
+        Properties overrides = new Properties();
         for (String arg : agentArgs.split(",")) {
             String[] kv = arg.split("=", 2);
             if (kv.length == 2) {
@@ -97,25 +163,37 @@ public class AgentConfig {
                     configPath = value;
                 } else if ("port".equals(key)) {
                     httpPort = Integer.parseInt(value);
+                } else if (key.startsWith("probe.")) {
+                    // Inline config, e.g. from the attach CLI; ';' separates list values
+                    overrides.setProperty(key, value.replace(';', ','));
                 }
             }
         }
 
-        // Load config file if specified
-        if (configPath != null) {
-            loadConfigFile(configPath);
+        // Load config file if specified, then the inline values on top
+        if (configPath != null || !overrides.isEmpty()) {
+            loadConfigFile(configPath, overrides);
         }
+        configChanged();
 
         printConfiguration();
     }
 
     /**
      * Load configuration from properties file.
+     *
+     * @param path      config file, or null for inline values only
+     * @param overrides inline values, applied on top of the file
      */
-    private static void loadConfigFile(String path) {
+    private static void loadConfigFile(String path, Properties overrides) {
         Properties props = new Properties();
-        try (InputStream is = new FileInputStream(path)) {
-            props.load(is);
+        try {
+            if (path != null) {
+                try (InputStream is = new FileInputStream(path)) {
+                    props.load(is);
+                }
+            }
+            props.putAll(overrides);
 
             // Flat Mode
             String flatEnabledStr = props.getProperty("probe.flat.enabled", "true");
@@ -172,6 +250,57 @@ public class AgentConfig {
                 addToSet(excludePatterns, exclude);
             }
 
+            String excludeLoaders = props.getProperty("probe.exclude.classloaders", "");
+            if (!excludeLoaders.isEmpty()) {
+                addToSet(excludeClassLoaders, excludeLoaders);
+            }
+
+            String skipAccessors = props.getProperty("probe.instrument.skip.accessors", "");
+            if (!skipAccessors.isEmpty()) {
+                instrumentSkipAccessors = Boolean.parseBoolean(skipAccessors.trim());
+            }
+
+            String skipSynthetic = props.getProperty("probe.instrument.skip.synthetic", "");
+            if (!skipSynthetic.isEmpty()) {
+                instrumentSkipSynthetic = Boolean.parseBoolean(skipSynthetic.trim());
+            }
+
+            String quietWindow = props.getProperty("probe.startup.quiet.window", "");
+            if (!quietWindow.isEmpty()) {
+                startupQuietWindowMs = Long.parseLong(quietWindow.trim());
+            }
+
+            String maxMethods = props.getProperty("probe.session.max.methods", "");
+            if (!maxMethods.isEmpty()) {
+                sessionMaxMethods = Integer.parseInt(maxMethods.trim());
+            }
+
+            String maxTtl = props.getProperty("probe.session.max.ttl", "");
+            if (!maxTtl.isEmpty()) {
+                sessionMaxTtlSeconds = Long.parseLong(maxTtl.trim());
+            }
+
+            // Overhead Governor
+            String overheadMax = props.getProperty("probe.overhead.max.percent", "");
+            if (!overheadMax.isEmpty()) {
+                overheadMaxPercent = Double.parseDouble(overheadMax.trim());
+            }
+
+            String overheadInterval = props.getProperty("probe.overhead.check.interval", "");
+            if (!overheadInterval.isEmpty()) {
+                overheadCheckIntervalSeconds = Long.parseLong(overheadInterval.trim());
+            }
+
+            String overheadSample = props.getProperty("probe.overhead.sample.interval", "");
+            if (!overheadSample.isEmpty()) {
+                overheadSampleInterval = Integer.parseInt(overheadSample.trim());
+            }
+
+            String overheadShed = props.getProperty("probe.overhead.shed.batch", "");
+            if (!overheadShed.isEmpty()) {
+                overheadShedBatch = Integer.parseInt(overheadShed.trim());
+            }
+
             // Log Output
             String mode = props.getProperty("probe.output.mode", "");
             if (!mode.isEmpty()) {
@@ -193,6 +322,62 @@ public class AgentConfig {
                 outputFlushInterval = Long.parseLong(flushInterval);
             }
 
+            String dropPolicy = props.getProperty("probe.output.drop.policy", "");
+            if (!dropPolicy.isEmpty()) {
+                outputDropPolicy = dropPolicy.trim();
+            }
+
+            String maxFileSize = props.getProperty("probe.output.max.file.size", "");
+            if (!maxFileSize.isEmpty()) {
+                outputMaxFileSize = Long.parseLong(maxFileSize.trim());
+            }
+
+            String maxFiles = props.getProperty("probe.output.max.files", "");
+            if (!maxFiles.isEmpty()) {
+                outputMaxFiles = Integer.parseInt(maxFiles.trim());
+            }
+
+            String compress = props.getProperty("probe.output.compress", "");
+            if (!compress.isEmpty()) {
+                outputCompress = Boolean.parseBoolean(compress.trim());
+            }
+
+            String wsEnabled = props.getProperty("probe.output.ws.enabled", "");
+            if (!wsEnabled.isEmpty()) {
+                outputWsEnabled = Boolean.parseBoolean(wsEnabled.trim());
+            }
+
+            String wsPort = props.getProperty("probe.output.ws.port", "");
+            if (!wsPort.isEmpty()) {
+                outputWsPort = Integer.parseInt(wsPort.trim());
+            }
+
+            String wsBatchInterval = props.getProperty("probe.output.ws.batch.interval", "");
+            if (!wsBatchInterval.isEmpty()) {
+                outputWsBatchInterval = Long.parseLong(wsBatchInterval.trim());
+            }
+
+            String wsClientBuffer = props.getProperty("probe.output.ws.client.buffer", "");
+            if (!wsClientBuffer.isEmpty()) {
+                outputWsClientBuffer = Long.parseLong(wsClientBuffer.trim());
+            }
+
+            String summaryInterval = props.getProperty("probe.output.summary.interval", "");
+            if (!summaryInterval.isEmpty()) {
+                outputSummaryInterval = Long.parseLong(summaryInterval.trim());
+            }
+
+            for (String key : props.stringPropertyNames()) {
+                if (key.startsWith("probe.output.") && key.endsWith(".drop.policy")
+                        && key.length() > "probe.output..drop.policy".length()) {
+                    String sink = key.substring("probe.output.".length(), key.length() - ".drop.policy".length());
+                    String sinkPolicy = props.getProperty(key, "").trim();
+                    if (!sinkPolicy.isEmpty()) {
+                        outputSinkDropPolicies.put(sink.toLowerCase(), sinkPolicy);
+                    }
+                }
+            }
+
             // Snapshot Configuration
             String snapEnabled = props.getProperty("probe.snapshot.enabled", "");
             if (!snapEnabled.isEmpty()) {
@@ -219,6 +404,61 @@ public class AgentConfig {
                 snapshotSerializeSync = "sync".equalsIgnoreCase(snapSerializeMode);
             }
 
+            String snapDedup = props.getProperty("probe.snapshot.dedup.enabled", "");
+            if (!snapDedup.isEmpty()) {
+                snapshotDedupEnabled = Boolean.parseBoolean(snapDedup);
+            }
+
+            String snapDedupMin = props.getProperty("probe.snapshot.dedup.min.size", "");
+            if (!snapDedupMin.isEmpty()) {
+                snapshotDedupMinSize = Integer.parseInt(snapDedupMin);
+            }
+
+            String snapRateMethod = props.getProperty("probe.snapshot.rate.per.method", "");
+            if (!snapRateMethod.isEmpty()) {
+                snapshotRatePerMethod = Integer.parseInt(snapRateMethod);
+            }
+
+            String snapRateBurst = props.getProperty("probe.snapshot.rate.burst", "");
+            if (!snapRateBurst.isEmpty()) {
+                snapshotRateBurst = Integer.parseInt(snapRateBurst);
+            }
+
+            String snapRateGlobal = props.getProperty("probe.snapshot.rate.global", "");
+            if (!snapRateGlobal.isEmpty()) {
+                snapshotRateGlobal = Integer.parseInt(snapRateGlobal);
+            }
+
+            String snapCopyMax = props.getProperty("probe.snapshot.async.copy.max", "");
+            if (!snapCopyMax.isEmpty()) {
+                snapshotAsyncCopyMax = Integer.parseInt(snapCopyMax);
+            }
+
+            String snapSerThreads = props.getProperty("probe.snapshot.serializer.threads", "");
+            if (!snapSerThreads.isEmpty()) {
+                snapshotSerializerThreads = Integer.parseInt(snapSerThreads);
+            }
+
+            String snapSerQueue = props.getProperty("probe.snapshot.serializer.queue.size", "");
+            if (!snapSerQueue.isEmpty()) {
+                snapshotSerializerQueueSize = Integer.parseInt(snapSerQueue);
+            }
+
+            String snapWriterQueue = props.getProperty("probe.snapshot.writer.queue.size", "");
+            if (!snapWriterQueue.isEmpty()) {
+                snapshotWriterQueueSize = Integer.parseInt(snapWriterQueue);
+            }
+
+            String snapIdNode = props.getProperty("probe.snapshot.id.node", "");
+            if (!snapIdNode.isEmpty()) {
+                snapshotIdNode = Integer.parseInt(snapIdNode);
+            }
+
+            String snapValueClasses = props.getProperty("probe.snapshot.async.value.classes", "");
+            if (!snapValueClasses.isEmpty()) {
+                addToSet(snapshotValueClasses, snapValueClasses);
+            }
+
             String treeSnapProbe = props.getProperty("probe.tree.snapshot.probe", "");
             if (!treeSnapProbe.isEmpty()) {
                 treeSnapshotProbeAll = "all".equalsIgnoreCase(treeSnapProbe);
@@ -328,6 +568,17 @@ public class AgentConfig {
         return false;
     }
 
+    /**
+     * Classes configured as immutable values for async snapshot capture.
+     */
+    public static Set<String> getSnapshotValueClasses() {
+        return Collections.unmodifiableSet(snapshotValueClasses);
+    }
+
+    public static boolean isSnapshotValueClass(String className) {
+        return snapshotValueClasses.contains(className);
+    }
+
     /**
      * Get the configured stack trace depth limit.
      */
@@ -396,6 +647,8 @@ public class AgentConfig {
         System.out.println("  [Snapshot]");
         System.out.println("    - enabled: " + snapshotEnabled);
         System.out.println("    - dir: " + snapshotDir);
+        System.out.println("    - rate: " + snapshotRatePerMethod + "/s per method (burst " + snapshotRateBurst
+                + "), " + snapshotRateGlobal + "/s global");
         System.out.println("  [Exception Filter]");
         System.out.println("    - include: " + (exceptionInclude.isEmpty() ? "(all)" : exceptionInclude));
         System.out.println("    - exclude: " + (exceptionExclude.isEmpty() ? "(none)" : exceptionExclude));
@@ -421,10 +674,19 @@ public class AgentConfig {
      * Check if a class should be instrumented (for either Flat or Tree mode).
      */
     public static boolean shouldInstrumentClass(String className) {
+        // Most loaded classes are decided by their package alone
+        PackageMatch packageMatch = packageMatch(className);
+        if (packageMatch == PackageMatch.NONE) {
+            return false;
+        }
+
         // Check exclusions first
         if (isExcluded(className)) {
             return false;
         }
+        if (packageMatch == PackageMatch.ALL) {
+            return true;
+        }
 
         // Check if needed for Flat mode
         if (flatEnabled && shouldInstrumentForFlat(className)) {
@@ -439,6 +701,101 @@ public class AgentConfig {
         return false;
     }
 
+    /**
+     * Name-only check that a class can't be instrumented under the current
+     * config: it is excluded, or nothing configured can fall inside its
+     * package. Cheap enough to run before the class file is parsed.
+     */
+    public static boolean isIgnored(String className) {
+        return packageMatch(className) == PackageMatch.NONE || isExcluded(className);
+    }
+
+    /**
+     * Whether classes defined by a class loader of this type are never
+     * instrumented ({@code probe.exclude.classloaders}).
+     */
+    public static boolean isExcludedClassLoader(String classLoaderClassName) {
+        return matchesAny(classLoaderClassName, excludeClassLoaders);
+    }
+
+    /**
+     * Loader-only check that nothing this class loader defines can be
+     * instrumented under the current config, decided once per loader.
+     */
+    public static boolean isIgnoredClassLoader(ClassLoader loader) {
+        Map<ClassLoader, Boolean> cache = ignoredLoaderCache;
+        Boolean ignored = cache.get(loader);
+        if (ignored == null) {
+            ignored = isExcludedClassLoader(loader.getClass().getName());
+            cache.put(loader, ignored);
+        }
+        return ignored;
+    }
+
+    private static Map<ClassLoader, Boolean> newLoaderCache() {
+        return Collections.synchronizedMap(new WeakHashMap<>());
+    }
+
+    /**
+     * Methods of a class that need advice.
+     *
+     * Whole-class config (flat package/class, tree package) needs every
+     * method; otherwise only the configured flat methods and tree entry
+     * methods of this class do.
+     *
+     * @return {@link #ALL_METHODS}, the sorted method names, or null if the
+     *         class should not be instrumented
+     */
+    public static Set<String> getMethodsToInstrument(String className) {
+        if (isExcluded(className)) {
+            return null;
+        }
+
+        Set<String> methods = new TreeSet<>();
+        if (flatEnabled) {
+            if (flatClasses.contains(className) || startsWithAny(className, flatPackages)) {
+                return ALL_METHODS;
+            }
+            addMethodsOf(className, flatMethods, methods);
+        }
+        if (treeEnabled) {
+            if (startsWithAny(className, treePackages)) {
+                return ALL_METHODS;
+            }
+            addMethodsOf(className, treeEntryMethods, methods);
+        }
+        return methods.isEmpty() ? null : Collections.unmodifiableSet(methods);
+    }
+
+    /**
+     * Flat methods and tree entry methods configured by name for a class,
+     * whether or not their mode is enabled.
+     */
+    public static Set<String> getConfiguredMethods(String className) {
+        Set<String> methods = new TreeSet<>();
+        addMethodsOf(className, flatMethods, methods);
+        addMethodsOf(className, treeEntryMethods, methods);
+        return methods;
+    }
+
+    private static boolean startsWithAny(String className, Set<String> packages) {
+        for (String pkg : packages) {
+            if (className.startsWith(pkg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addMethodsOf(String className, Set<String> fullMethods, Set<String> target) {
+        for (String method : fullMethods) {
+            int lastDot = method.lastIndexOf('.');
+            if (lastDot > 0 && lastDot == className.length() && method.startsWith(className)) {
+                target.add(method.substring(lastDot + 1));
+            }
+        }
+    }
+
     /**
      * Check if a class should be instrumented for Flat mode.
      */
@@ -494,8 +851,88 @@ public class AgentConfig {
         return false;
     }
 
-    private static boolean isExcluded(String className) {
+    private static PackageMatch packageMatch(String className) {
+        String pkg = packageOf(className);
+        Map<String, PackageMatch> cache = packageMatchCache;
+        PackageMatch packageMatch = cache.get(pkg);
+        if (packageMatch == null) {
+            packageMatch = matchPackage(pkg);
+            cache.put(pkg, packageMatch);
+        }
+        return packageMatch;
+    }
+
+    /**
+     * What config can match in a package, without looking at class names:
+     * a configured package covering it, a configured package, class or
+     * method that may fall inside it, or nothing.
+     */
+    private static PackageMatch matchPackage(String pkg) {
+        String prefix = pkg.isEmpty() ? "" : pkg + ".";
         for (String pattern : excludePatterns) {
+            if (!pattern.startsWith("*")) {
+                String excluded = pattern.endsWith("*") ? pattern.substring(0, pattern.length() - 1) : pattern;
+                if (prefix.startsWith(excluded)) {
+                    return PackageMatch.NONE;
+                }
+            }
+        }
+
+        boolean some = false;
+        if (flatEnabled) {
+            for (String configured : flatPackages) {
+                if (prefix.startsWith(configured)) {
+                    return PackageMatch.ALL;
+                }
+                some |= configured.startsWith(prefix);
+            }
+            some |= anyInPackage(pkg, flatClasses, false) || anyInPackage(pkg, flatMethods, true);
+        }
+        if (treeEnabled) {
+            for (String configured : treePackages) {
+                if (prefix.startsWith(configured)) {
+                    return PackageMatch.ALL;
+                }
+                some |= configured.startsWith(prefix);
+            }
+            some |= anyInPackage(pkg, treeEntryMethods, true);
+        }
+        return some ? PackageMatch.SOME : PackageMatch.NONE;
+    }
+
+    private static boolean anyInPackage(String pkg, Set<String> names, boolean methods) {
+        for (String name : names) {
+            String className = methods ? name.substring(0, Math.max(name.lastIndexOf('.'), 0)) : name;
+            if (packageOf(className).equals(pkg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String packageOf(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot > 0 ? className.substring(0, lastDot) : "";
+    }
+
+    /**
+     * Drop cached match decisions after a change to what gets instrumented.
+     */
+    private static void configChanged() {
+        packageMatchCache = new ConcurrentHashMap<>();
+        ignoredLoaderCache = newLoaderCache();
+    }
+
+    private static boolean isExcluded(String className) {
+        return matchesAny(className, excludePatterns);
+    }
+
+    /**
+     * Match against exclude-style patterns: "prefix*", "*suffix" or a plain
+     * name prefix.
+     */
+    private static boolean matchesAny(String className, Set<String> patterns) {
+        for (String pattern : patterns) {
             if (pattern.endsWith("*")) {
                 if (className.startsWith(pattern.substring(0, pattern.length() - 1))) {
                     return true;
@@ -519,6 +956,7 @@ public class AgentConfig {
 
     public static void setFlatEnabled(boolean enabled) {
         flatEnabled = enabled;
+        configChanged();
         System.out.println("[MethodProbe] Flat mode " + (enabled ? "enabled" : "disabled"));
     }
 
@@ -576,6 +1014,7 @@ public class AgentConfig {
     public static void addFlatPackage(String pkg) {
         if (pkg != null && !pkg.trim().isEmpty()) {
             flatPackages.add(pkg.trim());
+            configChanged();
             System.out.println("[MethodProbe] Added flat package: " + pkg);
         }
     }
@@ -583,6 +1022,7 @@ public class AgentConfig {
     public static void addFlatClass(String cls) {
         if (cls != null && !cls.trim().isEmpty()) {
             flatClasses.add(cls.trim());
+            configChanged();
             System.out.println("[MethodProbe] Added flat class: " + cls);
         }
     }
@@ -590,12 +1030,14 @@ public class AgentConfig {
     public static void addFlatMethod(String method) {
         if (method != null && !method.trim().isEmpty()) {
             flatMethods.add(method.trim());
+            configChanged();
             System.out.println("[MethodProbe] Added flat method: " + method);
         }
     }
 
     public static boolean removeFlatPackage(String pkg) {
         if (pkg != null && flatPackages.remove(pkg.trim())) {
+            configChanged();
             System.out.println("[MethodProbe] Removed flat package: " + pkg);
             return true;
         }
@@ -604,6 +1046,7 @@ public class AgentConfig {
 
     public static boolean removeFlatClass(String cls) {
         if (cls != null && flatClasses.remove(cls.trim())) {
+            configChanged();
             System.out.println("[MethodProbe] Removed flat class: " + cls);
             return true;
         }
@@ -612,6 +1055,7 @@ public class AgentConfig {
 
     public static boolean removeFlatMethod(String method) {
         if (method != null && flatMethods.remove(method.trim())) {
+            configChanged();
             System.out.println("[MethodProbe] Removed flat method: " + method);
             return true;
         }
@@ -626,6 +1070,7 @@ public class AgentConfig {
 
     public static void setTreeEnabled(boolean enabled) {
         treeEnabled = enabled;
+        configChanged();
         System.out.println("[MethodProbe] Tree mode " + (enabled ? "enabled" : "disabled"));
     }
 
@@ -675,6 +1120,7 @@ public class AgentConfig {
     public static void addTreeEntryMethod(String method) {
         if (method != null && !method.trim().isEmpty()) {
             treeEntryMethods.add(method.trim());
+            configChanged();
             System.out.println("[MethodProbe] Added tree entry method: " + method);
         }
     }
@@ -682,12 +1128,14 @@ public class AgentConfig {
     public static void addTreePackage(String pkg) {
         if (pkg != null && !pkg.trim().isEmpty()) {
             treePackages.add(pkg.trim());
+            configChanged();
             System.out.println("[MethodProbe] Added tree package: " + pkg);
         }
     }
 
     public static boolean removeTreeEntryMethod(String method) {
         if (method != null && treeEntryMethods.remove(method.trim())) {
+            configChanged();
             System.out.println("[MethodProbe] Removed tree entry method: " + method);
             return true;
         }
@@ -696,6 +1144,7 @@ public class AgentConfig {
 
     public static boolean removeTreePackage(String pkg) {
         if (pkg != null && treePackages.remove(pkg.trim())) {
+            configChanged();
             System.out.println("[MethodProbe] Removed tree package: " + pkg);
             return true;
         }
@@ -712,6 +1161,106 @@ public class AgentConfig {
         return reportIntervalSeconds;
     }
 
+    /**
+     * How long after agent start transformed classes are only counted, not
+     * printed one by one; 0 prints every class.
+     */
+    public static long getStartupQuietWindow() {
+        return startupQuietWindowMs;
+    }
+
+    /**
+     * Upper bound on the methods a profiling session may instrument.
+     */
+    public static int getSessionMaxMethods() {
+        return sessionMaxMethods;
+    }
+
+    /**
+     * Longest TTL a profiling session may ask for, in seconds.
+     */
+    public static long getSessionMaxTtl() {
+        return sessionMaxTtlSeconds;
+    }
+
+    // ==================== Overhead Governor Methods ====================
+
+    /**
+     * Share of the process's CPU time the probes may cost, in percent; 0
+     * turns the overhead governor off.
+     */
+    public static double getOverheadMaxPercent() {
+        return overheadMaxPercent;
+    }
+
+    public static long getOverheadCheckInterval() {
+        return overheadCheckIntervalSeconds;
+    }
+
+    /**
+     * One in this many flat calls is checked for logging once the governor
+     * starts sampling.
+     */
+    public static int getOverheadSampleInterval() {
+        return overheadSampleInterval;
+    }
+
+    /**
+     * Methods the governor takes the advice off per check while over budget.
+     */
+    public static int getOverheadShedBatch() {
+        return overheadShedBatch;
+    }
+
+    public static void shedMethod(String method) {
+        shedMethods.add(method);
+    }
+
+    public static void clearShedMethods() {
+        shedMethods.clear();
+    }
+
+    public static Set<String> getShedMethods() {
+        return Collections.unmodifiableSet(shedMethods);
+    }
+
+    /**
+     * Methods of a class the governor has taken the advice off.
+     */
+    public static Set<String> getShedMethods(String className) {
+        Set<String> methods = new TreeSet<>();
+        addMethodsOf(className, shedMethods, methods);
+        return methods;
+    }
+
+    public static boolean isShedMethod(String className, String methodName) {
+        return !shedMethods.isEmpty() && shedMethods.contains(className + "." + methodName);
+    }
+
+    /**
+     * Skip getters, setters, toString, hashCode and equals when whole classes
+     * are instrumented.
+     */
+    public static boolean isInstrumentSkipAccessors() {
+        return instrumentSkipAccessors;
+    }
+
+    public static void setInstrumentSkipAccessors(boolean skip) {
+        instrumentSkipAccessors = skip;
+    }
+
+    /**
+     * Skip compiler-generated synthetic and bridge methods (including lambda
+     * bodies) when whole classes are instrumented.
+     */
+    public static boolean isInstrumentSkipSynthetic() {
+        return instrumentSkipSynthetic;
+    }
+
+    public static void setInstrumentSkipSynthetic(boolean skip) {
+        instrumentSkipSynthetic = skip;
+    }
+
     // ==================== Log Output Getters ====================
 
     public static String getOutputMode() {
@@ -740,6 +1289,53 @@ public class AgentConfig {
         return outputFlushInterval;
     }
 
+    public static String getOutputDropPolicy() {
+        return outputDropPolicy;
+    }
+
+    public static long getOutputMaxFileSize() {
+        return outputMaxFileSize;
+    }
+
+    public static int getOutputMaxFiles() {
+        return outputMaxFiles;
+    }
+
+    public static boolean isOutputCompress() {
+        return outputCompress;
+    }
+
+    public static boolean isOutputWsEnabled() {
+        return outputWsEnabled;
+    }
+
+    /**
+     * WebSocket log stream port; defaults to the HTTP port + 1.
+     */
+    public static int getOutputWsPort() {
+        return outputWsPort > 0 ? outputWsPort : httpPort + 1;
+    }
+
+    public static long getOutputWsBatchInterval() {
+        return outputWsBatchInterval;
+    }
+
+    public static long getOutputWsClientBuffer() {
+        return outputWsClientBuffer;
+    }
+
+    /**
+     * Drop policy of one output sink, falling back to probe.output.drop.policy.
+     */
+    public static String getOutputDropPolicy(String sink) {
+        String policy = outputSinkDropPolicies.get(sink.toLowerCase());
+        return policy != null ? policy : outputDropPolicy;
+    }
+
+    public static long getOutputSummaryInterval() {
+        return outputSummaryInterval;
+    }
+
     // ==================== Backward Compatibility (Deprecated) ====================
 
     @Deprecated
@@ -3,6 +3,8 @@ package com.methodprobe.agent.http;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
 import com.methodprobe.agent.MethodProbeAgent;
+import com.methodprobe.agent.OverheadGovernor;
+import com.methodprobe.agent.SessionManager;
 import com.methodprobe.agent.StatsReporter;
 import com.methodprobe.agent.config.AgentConfig;
 
@@ -12,7 +14,10 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 
@@ -29,7 +34,12 @@ import java.util.concurrent.Executors;
  * /tree/threshold - Set tree threshold (threshold=xxx)
  * /tree/trigger - Set tree trigger (timeout=true/false, exception=true/false)
  * /snapshot/config - Configure snapshot
+ * /session/start - Start a profiling session rolled back after ttl seconds
+ * /session/stop - End a session early (id=xxx)
+ * /session/list - List live sessions
  * /config - Get current configuration
+ * /stats - Get runtime counters
+ * /overhead/reset - Undo the overhead governor's steps
  * /admin - Management page
  */
 public class HttpConfigServer {
@@ -62,6 +72,11 @@ public class HttpConfigServer {
             // Snapshot endpoint
             server.createContext("/snapshot/config", HttpConfigServer::handleSnapshotConfig);
 
+            // Profiling session endpoints
+            server.createContext("/session/start", HttpConfigServer::handleSessionStart);
+            server.createContext("/session/stop", HttpConfigServer::handleSessionStop);
+            server.createContext("/session/list", HttpConfigServer::handleSessionList);
+
             // Exception filter endpoints
             server.createContext("/exception/include/add", HttpConfigServer::handleExceptionIncludeAdd);
             server.createContext("/exception/include/remove", HttpConfigServer::handleExceptionIncludeRemove);
@@ -71,7 +86,10 @@ public class HttpConfigServer {
 
             // General endpoints
             server.createContext("/config", HttpConfigServer::handleGetConfig);
+            server.createContext("/stats", HttpConfigServer::handleGetStats);
+            server.createContext("/overhead/reset", HttpConfigServer::handleOverheadReset);
             server.createContext("/admin", HttpConfigServer::handleAdminPage);
+            server.createContext("/log", HttpConfigServer::handleLogPage);
             server.createContext("/", HttpConfigServer::handleHelp);
 
             server.setExecutor(Executors.newFixedThreadPool(2, r -> {
@@ -80,9 +98,17 @@ public class HttpConfigServer {
                 return t;
             }));
 
-            server.start();
+            // The JDK's dispatcher thread inherits daemon status from the thread
+            // that starts the server; start it from a daemon thread so the agent
+            // never keeps the JVM alive on its own
+            Thread starter = new Thread(server::start, "MethodProbe-HTTP-Start");
+            starter.setDaemon(true);
+            starter.start();
+            starter.join();
             System.out.println("[MethodProbe] HTTP server started on port " + port);
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
             System.err.println("[MethodProbe] Failed to start HTTP server: " + e.getMessage());
             e.printStackTrace();
@@ -112,7 +138,7 @@ public class HttpConfigServer {
             return;
         }
         AgentConfig.addFlatClass(className);
-        MethodProbeAgent.retransformClasses();
+        MethodProbeAgent.retransformClasses(className.trim());
         sendResponse(exchange, 200, "{\"success\":true,\"className\":\"" + className + "\"}");
     }
 
@@ -128,7 +154,7 @@ public class HttpConfigServer {
             return;
         }
         AgentConfig.addFlatPackage(packageName);
-        MethodProbeAgent.retransformClasses();
+        MethodProbeAgent.retransformClasses(packageName.trim());
         sendResponse(exchange, 200, "{\"success\":true,\"packageName\":\"" + packageName + "\"}");
     }
 
@@ -144,7 +170,9 @@ public class HttpConfigServer {
             return;
         }
         boolean removed = AgentConfig.removeFlatClass(className);
-        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"className\":\"" + className + "\"}");
+        int retransformed = removed ? MethodProbeAgent.retransformClasses(className.trim()) : 0;
+        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"className\":\"" + className
+                + "\",\"retransformed\":" + retransformed + "}");
     }
 
     private static void handleFlatPackageRemove(HttpExchange exchange) throws IOException {
@@ -159,8 +187,9 @@ public class HttpConfigServer {
             return;
         }
         boolean removed = AgentConfig.removeFlatPackage(packageName);
-        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"packageName\":\"" + packageName + "\"}");
-        ;
+        int retransformed = removed ? MethodProbeAgent.retransformClasses(packageName.trim()) : 0;
+        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"packageName\":\"" + packageName
+                + "\",\"retransformed\":" + retransformed + "}");
     }
 
     private static void handleFlatThreshold(HttpExchange exchange) throws IOException {
@@ -211,7 +240,7 @@ public class HttpConfigServer {
             return;
         }
         AgentConfig.addTreeEntryMethod(method);
-        MethodProbeAgent.retransformClasses();
+        MethodProbeAgent.retransformClasses(MethodProbeAgent.classOf(method.trim()));
         sendResponse(exchange, 200, "{\"success\":true,\"method\":\"" + method + "\"}");
     }
 
@@ -227,7 +256,7 @@ public class HttpConfigServer {
             return;
         }
         AgentConfig.addTreePackage(packageName);
-        MethodProbeAgent.retransformClasses();
+        MethodProbeAgent.retransformClasses(packageName.trim());
         sendResponse(exchange, 200, "{\"success\":true,\"packageName\":\"" + packageName + "\"}");
     }
 
@@ -243,7 +272,9 @@ public class HttpConfigServer {
             return;
         }
         boolean removed = AgentConfig.removeTreeEntryMethod(method);
-        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"method\":\"" + method + "\"}");
+        int retransformed = removed ? MethodProbeAgent.retransformClasses(MethodProbeAgent.classOf(method.trim())) : 0;
+        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"method\":\"" + method
+                + "\",\"retransformed\":" + retransformed + "}");
     }
 
     private static void handleTreePackageRemove(HttpExchange exchange) throws IOException {
@@ -258,8 +289,9 @@ public class HttpConfigServer {
             return;
         }
         boolean removed = AgentConfig.removeTreePackage(packageName);
-        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"packageName\":\"" + packageName + "\"}");
-        ;
+        int retransformed = removed ? MethodProbeAgent.retransformClasses(packageName.trim()) : 0;
+        sendResponse(exchange, 200, "{\"success\":" + removed + ",\"packageName\":\"" + packageName
+                + "\",\"retransformed\":" + retransformed + "}");
     }
 
     private static void handleTreeThreshold(HttpExchange exchange) throws IOException {
@@ -378,6 +410,68 @@ public class HttpConfigServer {
         sendResponse(exchange, 200, "{\"success\":true,\"trigger\":\"" + response + "\"}");
     }
 
+    // ==================== Session Handlers ====================
+
+    private static void handleSessionStart(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        Map<String, String> params = parseFormData(exchange);
+        String ttl = params.get("ttl");
+        if (ttl == null || ttl.isEmpty()) {
+            sendResponse(exchange, 400, "{\"error\":\"Missing ttl\"}");
+            return;
+        }
+        try {
+            String maxMethods = params.get("maxMethods");
+            SessionManager.Session session = new SessionManager.Session(Long.parseLong(ttl.trim()),
+                    maxMethods != null && !maxMethods.isEmpty() ? Integer.parseInt(maxMethods.trim()) : 0,
+                    Boolean.parseBoolean(params.get("snapshot")))
+                    .flatPackages(splitList(params.get("flatPackages")))
+                    .flatClasses(splitList(params.get("flatClasses")))
+                    .flatMethods(splitList(params.get("flatMethods")))
+                    .treeEntries(splitList(params.get("treeEntries")))
+                    .treePackages(splitList(params.get("treePackages")));
+            int retransformed = MethodProbeAgent.getSessionManager().start(session);
+            sendResponse(exchange, 200, "{\"success\":true,\"session\":"
+                    + MethodProbeAgent.getSessionManager().toJson(session.getId())
+                    + ",\"retransformed\":" + retransformed + "}");
+        } catch (NumberFormatException e) {
+            sendResponse(exchange, 400, "{\"error\":\"Invalid ttl or maxMethods\"}");
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, "{\"error\":\"" + e.getMessage() + "\"}");
+        }
+    }
+
+    private static void handleSessionStop(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        Map<String, String> params = parseFormData(exchange);
+        String id = params.get("id");
+        if (id == null || id.isEmpty()) {
+            sendResponse(exchange, 400, "{\"error\":\"Missing id\"}");
+            return;
+        }
+        int retransformed = MethodProbeAgent.getSessionManager().stop(id);
+        sendResponse(exchange, 200, "{\"success\":" + (retransformed >= 0) + ",\"id\":\"" + id
+                + "\",\"retransformed\":" + Math.max(retransformed, 0) + "}");
+    }
+
+    private static void handleSessionList(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        sendResponse(exchange, 200, "{\"sessions\":" + MethodProbeAgent.getSessionManager().toJson() + "}");
+    }
+
+    private static List<String> splitList(String value) {
+        return value == null || value.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(value.split(","));
+    }
+
     // ==================== General Handlers ====================
 
     private static void handleGetConfig(HttpExchange exchange) throws IOException {
@@ -388,6 +482,23 @@ public class HttpConfigServer {
         sendResponse(exchange, 200, StatsReporter.getConfigAsJson());
     }
 
+    private static void handleGetStats(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        sendResponse(exchange, 200, StatsReporter.getStatsAsJson());
+    }
+
+    private static void handleOverheadReset(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+        int retransformed = OverheadGovernor.reset();
+        sendResponse(exchange, 200, "{\"success\":true,\"retransformed\":" + retransformed + "}");
+    }
+
     private static void handleHelp(HttpExchange exchange) throws IOException {
         String help = "{\n" +
                 "  \"flat\": {\n" +
@@ -402,9 +513,17 @@ public class HttpConfigServer {
                 "    \"/tree/threshold\": \"POST threshold=xxx\",\n" +
                 "    \"/tree/trigger\": \"POST timeout=true/false, exception=true/false\"\n" +
                 "  },\n" +
-                "  \"snapshot\": {\"/snapshot/config\": \"POST enabled,threshold,mode,dir\"},\n" +
+                "  \"snapshot\": {\"/snapshot/config\": \"POST enabled,mode,ratePerMethod,rateBurst,rateGlobal\"},\n" +
+                "  \"session\": {\n" +
+                "    \"/session/start\": \"POST ttl,flatPackages,flatClasses,flatMethods,treeEntries,treePackages,snapshot,maxMethods\",\n" +
+                "    \"/session/stop\": \"POST id=xxx\",\n" +
+                "    \"/session/list\": \"GET live sessions\"\n" +
+                "  },\n" +
                 "  \"GET /config\": \"Get configuration\",\n" +
-                "  \"GET /admin\": \"Management page\"\n" +
+                "  \"GET /stats\": \"Get runtime counters\",\n" +
+                "  \"POST /overhead/reset\": \"Undo the overhead governor's steps\",\n" +
+                "  \"GET /admin\": \"Management page\",\n" +
+                "  \"GET /log\": \"Live log monitor (probe.output.ws.enabled=true)\"\n" +
                 "}";
         sendResponse(exchange, 200, help);
     }
@@ -465,6 +584,24 @@ public class HttpConfigServer {
         sendHtmlResponse(exchange, 200, html);
     }
 
+    /**
+     * Handle live log page: GET /log
+     * Serves the log monitor with the WebSocket port filled in
+     */
+    private static void handleLogPage(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            return;
+        }
+
+        String html = loadResourceAsString("log.html");
+        if (html == null) {
+            sendResponse(exchange, 500, "{\"error\":\"Log page not found\"}");
+            return;
+        }
+        sendHtmlResponse(exchange, 200, html.replace("{{WS_PORT}}", String.valueOf(AgentConfig.getOutputWsPort())));
+    }
+
     private static void sendHtmlResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
         byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
@@ -498,7 +635,7 @@ public class HttpConfigServer {
 
     /**
      * Handle snapshot configuration: /snapshot/config
-     * POST params: enabled, threshold, mode, dir
+     * POST params: enabled, mode, ratePerMethod, rateBurst, rateGlobal
      */
     private static void handleSnapshotConfig(HttpExchange exchange) throws IOException {
         if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
@@ -519,6 +656,9 @@ public class HttpConfigServer {
                 if (AgentConfig.snapshotEnabled) {
                     com.methodprobe.agent.snapshot.SnapshotWriter.init(AgentConfig.snapshotDir);
                 }
+
+                // Switch instrumented methods to the advice that does (or doesn't) capture arguments
+                MethodProbeAgent.retransformClasses();
             }
 
             String mode = params.get("mode");
@@ -528,6 +668,24 @@ public class HttpConfigServer {
                         .append("; ");
             }
 
+            String ratePerMethod = params.get("ratePerMethod");
+            if (ratePerMethod != null) {
+                AgentConfig.snapshotRatePerMethod = Integer.parseInt(ratePerMethod);
+                changes.append("ratePerMethod=").append(AgentConfig.snapshotRatePerMethod).append("; ");
+            }
+
+            String rateBurst = params.get("rateBurst");
+            if (rateBurst != null) {
+                AgentConfig.snapshotRateBurst = Integer.parseInt(rateBurst);
+                changes.append("rateBurst=").append(AgentConfig.snapshotRateBurst).append("; ");
+            }
+
+            String rateGlobal = params.get("rateGlobal");
+            if (rateGlobal != null) {
+                AgentConfig.snapshotRateGlobal = Integer.parseInt(rateGlobal);
+                changes.append("rateGlobal=").append(AgentConfig.snapshotRateGlobal).append("; ");
+            }
+
             System.out.println("[MethodProbe] Snapshot config updated: " + changes);
             sendResponse(exchange, 200, "{\"success\":true,\"changes\":\"" + changes + "\"}");
 
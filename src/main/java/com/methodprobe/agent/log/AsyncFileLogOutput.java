@@ -1,47 +1,79 @@
 package com.methodprobe.agent.log;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Async file log output implementation.
  * 
  * Features:
- * - Uses a blocking queue for async buffering
- * - Background daemon thread for batch writing
+ * - Lock-free ring buffer for async buffering (no allocation per message)
+ * - Drop-oldest or drop-newest when full; drops are reported in the log
+ * - Background daemon thread encoding UTF-8 straight into reusable direct
+ * buffers, written with gathering FileChannel writes
+ * - Writes as soon as the queue goes idle; under load, keeps filling the
+ * buffers so each write is large (flush interval bounds the delay)
  * - Configurable buffer size and flush interval
- * - Date-based log file rolling
+ * - Daily and size-based rolling: the active file is always
+ * method-probe-yyyy-MM-dd.log; files rolled by size become
+ * method-probe-yyyy-MM-dd.N.log and are gzipped in the background
+ * - Max-file-count retention
  * - Graceful shutdown with queue drain
  */
 public class AsyncFileLogOutput implements LogOutput {
 
     private static final String LOG_FILE_PREFIX = "method-probe-";
     private static final String LOG_FILE_SUFFIX = ".log";
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    static final long DEFAULT_MAX_FILE_SIZE = 100L * 1024 * 1024;
+    static final int DEFAULT_MAX_FILES = 30;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final int IO_BUFFER_COUNT = 4;
+    private static final long DROP_REPORT_INTERVAL_MS = 10_000;
 
     private final String logDir;
-    private final long flushIntervalMs;
 
-    private final BlockingQueue<String> messageQueue;
-    private final Thread writerThread;
-    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final QueuedLogWriter messageQueue;
+    private final DropPolicy dropPolicy;
+
+    // Drop reporting, on the writer thread
+    private long reportedDropCount;
+    private long lastDropReportTime;
 
     private volatile String currentDate;
-    private volatile BufferedWriter currentWriter;
+    private volatile FileChannel currentChannel;
     private final Object writerLock = new Object();
 
+    // Rolling state, guarded by writerLock
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private final long maxFileSize;
+    private final RolledLogCompressor compressor;
+    private long nextMidnightMillis;
+    private long currentFileSize;
+    private int nextRollIndex;
+
+    // Encoding state, guarded by writerLock
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer[] buffers = new ByteBuffer[IO_BUFFER_COUNT];
+    private int currentBuffer;
+    private CharBuffer chars = CharBuffer.allocate(1024);
+
     /**
      * Create an async file log output.
      * 
@@ -50,9 +82,43 @@ public class AsyncFileLogOutput implements LogOutput {
      * @param flushIntervalMs interval between flush operations in milliseconds
      */
     public AsyncFileLogOutput(String logDir, int bufferSize, long flushIntervalMs) {
+        this(logDir, bufferSize, flushIntervalMs, DropPolicy.OLDEST);
+    }
+
+    /**
+     * Create an async file log output.
+     * 
+     * @param logDir          directory for log files
+     * @param bufferSize      max size of message queue (rounded up to a power of two)
+     * @param flushIntervalMs interval between flush operations in milliseconds
+     * @param dropPolicy      which message to drop when the queue is full
+     */
+    public AsyncFileLogOutput(String logDir, int bufferSize, long flushIntervalMs, DropPolicy dropPolicy) {
+        this(logDir, bufferSize, flushIntervalMs, dropPolicy, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_FILES, true);
+    }
+
+    /**
+     * Create an async file log output.
+     * 
+     * @param logDir          directory for log files
+     * @param bufferSize      max size of message queue (rounded up to a power of two)
+     * @param flushIntervalMs interval between flush operations in milliseconds
+     * @param dropPolicy      which message to drop when the queue is full
+     * @param maxFileSize     roll the active file once it reaches this many bytes, 0 = daily only
+     * @param maxFiles        max number of log files kept in logDir, 0 = unlimited
+     * @param compress        gzip rolled files in the background
+     */
+    public AsyncFileLogOutput(String logDir, int bufferSize, long flushIntervalMs, DropPolicy dropPolicy,
+            long maxFileSize, int maxFiles, boolean compress) {
         this.logDir = logDir;
-        this.flushIntervalMs = flushIntervalMs;
-        this.messageQueue = new LinkedBlockingQueue<>(bufferSize);
+        this.messageQueue = new QueuedLogWriter(bufferSize, flushIntervalMs, dropPolicy, this::writeBatch);
+        this.dropPolicy = dropPolicy;
+        this.maxFileSize = maxFileSize;
+        this.compressor = new RolledLogCompressor(new File(logDir).toPath(), LOG_FILE_PREFIX, LOG_FILE_SUFFIX,
+                maxFiles, compress);
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+        }
 
         // Ensure log directory exists
         File dir = new File(logDir);
@@ -61,153 +127,254 @@ public class AsyncFileLogOutput implements LogOutput {
         }
 
         // Initialize date and writer
-        this.currentDate = DATE_FORMAT.format(new Date());
+        startDay(System.currentTimeMillis());
         initWriter();
 
         // Start background writer thread
-        this.writerThread = new Thread(this::writerLoop, "MethodProbe-AsyncLogWriter");
-        this.writerThread.setDaemon(true);
-        this.writerThread.start();
+        messageQueue.start("MethodProbe-AsyncLogWriter");
 
         System.out.println("[MethodProbe] AsyncFileLogOutput started. Log dir: " + logDir);
     }
 
     @Override
     public void write(String message) {
-        if (!running.get()) {
-            return;
-        }
-
         // Non-blocking offer to avoid blocking caller
-        if (!messageQueue.offer(message)) {
-            // Queue is full, drop oldest message and try again
-            messageQueue.poll();
-            messageQueue.offer(message);
-        }
+        messageQueue.offer(message);
     }
 
+    /**
+     * Wait until everything written so far is in the file.
+     */
     @Override
     public void flush() {
-        // Drain and write all pending messages
-        drainAndWrite();
+        messageQueue.flush();
     }
 
     @Override
     public void shutdown() {
-        running.set(false);
-
-        // Interrupt the writer thread to wake up from poll
-        writerThread.interrupt();
+        // Stops the writer once it has drained the queue
+        messageQueue.shutdown();
 
-        // Wait for thread to finish with timeout
-        try {
-            writerThread.join(5000);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-
-        // Final drain
-        drainAndWrite();
-
-        // Close writer
         synchronized (writerLock) {
+            if (!messageQueue.isWriterAlive()) {
+                List<Object> rest = new ArrayList<>();
+                messageQueue.drainRemaining(rest);
+                reportDrops(rest, System.currentTimeMillis(), true);
+                encodeBatch(rest);
+            }
+            flushBuffers();
             closeWriter();
         }
+        compressor.shutdown(5000);
 
         System.out.println("[MethodProbe] AsyncFileLogOutput shutdown complete.");
     }
 
     /**
-     * Background writer loop.
+     * Runs on the writer thread for each drained batch.
+     *
+     * Adaptive flush: the queue writer asks for a flush as soon as the queue
+     * goes idle (low latency at low rates); under sustained load the buffers
+     * keep filling so each write is large, bounded by the flush interval.
      */
-    private void writerLoop() {
-        List<String> batch = new ArrayList<>(100);
-        long lastFlushTime = System.currentTimeMillis();
-
-        while (running.get() || !messageQueue.isEmpty()) {
-            try {
-                // Poll with timeout
-                String message = messageQueue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
-
-                if (message != null) {
-                    batch.add(message);
-
-                    // Drain more messages if available (batch processing)
-                    messageQueue.drainTo(batch, 99);
-                }
-
-                long now = System.currentTimeMillis();
-                boolean shouldFlush = !batch.isEmpty()
-                        && (now - lastFlushTime >= flushIntervalMs || batch.size() >= 100);
-
-                if (shouldFlush) {
-                    writeBatch(batch);
-                    batch.clear();
-                    lastFlushTime = now;
-                }
-
-            } catch (InterruptedException e) {
-                // Shutdown signal, drain remaining
-                if (!running.get()) {
-                    break;
-                }
-            }
+    private void writeBatch(List<Object> batch, boolean flush) {
+        reportDrops(batch, System.currentTimeMillis(), false);
+        if (!batch.isEmpty()) {
+            encodeBatch(batch);
         }
+        if (flush) {
+            flushBuffers();
+        }
+    }
 
-        // Final batch write
-        if (!batch.isEmpty()) {
-            writeBatch(batch);
+    /**
+     * Append a line to the batch when messages were dropped since the last
+     * report, at most once per report interval unless forced.
+     */
+    private void reportDrops(List<Object> batch, long now, boolean force) {
+        long dropped = messageQueue.getDroppedCount();
+        if (dropped > reportedDropCount && (force || now - lastDropReportTime >= DROP_REPORT_INTERVAL_MS)) {
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            batch.add(String.format("[%s] [MethodProbe] Dropped %d log messages (queue full, policy=%s, total=%d)%n",
+                    sdf.format(new Date()), dropped - reportedDropCount,
+                    dropPolicy.name().toLowerCase(), dropped));
+            reportedDropCount = dropped;
+            lastDropReportTime = now;
         }
     }
 
     /**
-     * Write a batch of messages to file.
+     * Encode messages into the direct buffers. Buffers are written to the file
+     * as they fill up, so under load every write is a large gathering write.
      */
-    private void writeBatch(List<String> messages) {
+    private void encodeBatch(List<Object> messages) {
         synchronized (writerLock) {
             try {
                 checkDateRolling();
 
-                if (currentWriter == null) {
+                if (currentChannel == null) {
                     initWriter();
                 }
 
-                if (currentWriter != null) {
-                    for (String message : messages) {
-                        currentWriter.write(message);
+                if (currentChannel != null) {
+                    for (Object message : messages) {
+                        encode((String) message);
                     }
-                    currentWriter.flush();
                 }
             } catch (IOException e) {
-                System.err.println("[MethodProbe] Error writing to log file: " + e.getMessage());
-                // Try to reinitialize writer
-                closeWriter();
-                initWriter();
+                handleWriteError(e);
             }
         }
     }
 
     /**
-     * Drain all messages from queue and write immediately.
+     * Write whatever is buffered to the file.
      */
-    private void drainAndWrite() {
-        List<String> messages = new ArrayList<>();
-        messageQueue.drainTo(messages);
-        if (!messages.isEmpty()) {
-            writeBatch(messages);
+    private void flushBuffers() {
+        synchronized (writerLock) {
+            try {
+                writeBuffers();
+            } catch (IOException e) {
+                handleWriteError(e);
+            }
         }
     }
 
+    private void handleWriteError(IOException e) {
+        System.err.println("[MethodProbe] Error writing to log file: " + e.getMessage());
+        // Try to reinitialize writer
+        clearBuffers();
+        closeWriter();
+        initWriter();
+    }
+
     /**
-     * Check and perform date rolling if needed.
+     * Encode one message as UTF-8 into the current buffer, moving on to the
+     * next buffer (and writing all of them once full) on overflow.
      */
-    private void checkDateRolling() {
-        String today = DATE_FORMAT.format(new Date());
-        if (!today.equals(currentDate)) {
-            currentDate = today;
-            closeWriter();
-            initWriter();
+    private void encode(String message) throws IOException {
+        int length = message.length();
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        }
+        chars.clear();
+        message.getChars(0, length, chars.array(), 0);
+        chars.limit(length);
+
+        while (encoder.encode(chars, buffers[currentBuffer], true).isOverflow()) {
+            if (currentBuffer + 1 < buffers.length) {
+                currentBuffer++;
+            } else {
+                writeBuffers();
+            }
+        }
+        encoder.reset();
+    }
+
+    /**
+     * Gathering write of all filled buffers.
+     */
+    private void writeBuffers() throws IOException {
+        int used = buffers[currentBuffer].position() > 0 ? currentBuffer + 1 : currentBuffer;
+        if (used == 0 || currentChannel == null) {
+            clearBuffers();
+            return;
+        }
+        for (int i = 0; i < used; i++) {
+            buffers[i].flip();
         }
+        while (buffers[used - 1].hasRemaining()) {
+            currentFileSize += currentChannel.write(buffers, 0, used);
+        }
+        clearBuffers();
+        checkSizeRolling();
+    }
+
+    private void clearBuffers() {
+        for (ByteBuffer buffer : buffers) {
+            buffer.clear();
+        }
+        currentBuffer = 0;
+    }
+
+    /**
+     * Check and perform date rolling if needed. This runs on every batch, so
+     * it is a single comparison against the precomputed next midnight.
+     */
+    private void checkDateRolling() throws IOException {
+        long now = System.currentTimeMillis();
+        if (now < nextMidnightMillis) {
+            return;
+        }
+        // Pending bytes belong to the previous day's file
+        writeBuffers();
+        Path previous = activeFile();
+        closeWriter();
+        startDay(now);
+        initWriter();
+        compressor.submit(previous, activeFile());
+    }
+
+    /**
+     * Roll the active file once it reaches the max size: rename it to the next
+     * free index for today and start a new active file.
+     */
+    private void checkSizeRolling() throws IOException {
+        if (maxFileSize <= 0 || currentFileSize < maxFileSize) {
+            return;
+        }
+        Path active = activeFile();
+        Path rolled = active.resolveSibling(LOG_FILE_PREFIX + currentDate + "." + nextRollIndex + LOG_FILE_SUFFIX);
+        closeWriter();
+        Files.move(active, rolled);
+        nextRollIndex++;
+        initWriter();
+        compressor.submit(rolled, active);
+    }
+
+    /**
+     * Switch to the day containing the given time.
+     */
+    private void startDay(long now) {
+        currentDate = dateFormat.format(new Date(now));
+        Calendar midnight = Calendar.getInstance();
+        midnight.setTimeInMillis(now);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        midnight.add(Calendar.DAY_OF_MONTH, 1);
+        nextMidnightMillis = midnight.getTimeInMillis();
+        nextRollIndex = findNextRollIndex();
+    }
+
+    /**
+     * First unused index among today's rolled files, so a restart never
+     * overwrites an earlier roll.
+     */
+    private int findNextRollIndex() {
+        String prefix = LOG_FILE_PREFIX + currentDate + ".";
+        int next = 1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(new File(logDir).toPath(), prefix + "*")) {
+            for (Path file : files) {
+                String rest = file.getFileName().toString().substring(prefix.length());
+                int dot = rest.indexOf('.');
+                if (dot > 0) {
+                    try {
+                        next = Math.max(next, Integer.parseInt(rest.substring(0, dot)) + 1);
+                    } catch (NumberFormatException e) {
+                        // not a rolled file (e.g. the active "log" file)
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // directory not readable yet; start from 1
+        }
+        return next;
+    }
+
+    private Path activeFile() {
+        return new File(logDir, LOG_FILE_PREFIX + currentDate + LOG_FILE_SUFFIX).toPath();
     }
 
     /**
@@ -215,17 +382,12 @@ public class AsyncFileLogOutput implements LogOutput {
      */
     private void initWriter() {
         try {
-            String fileName = LOG_FILE_PREFIX + currentDate + LOG_FILE_SUFFIX;
-            File logFile = new File(logDir, fileName);
-            currentWriter = new BufferedWriter(
-                    new OutputStreamWriter(
-                            new FileOutputStream(logFile, true),
-                            StandardCharsets.UTF_8),
-                    8192 // 8KB buffer
-            );
+            currentChannel = FileChannel.open(activeFile(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            currentFileSize = currentChannel.size();
         } catch (IOException e) {
             System.err.println("[MethodProbe] Failed to create log file: " + e.getMessage());
-            currentWriter = null;
+            currentChannel = null;
         }
     }
 
@@ -233,14 +395,13 @@ public class AsyncFileLogOutput implements LogOutput {
      * Close the current writer.
      */
     private void closeWriter() {
-        if (currentWriter != null) {
+        if (currentChannel != null) {
             try {
-                currentWriter.flush();
-                currentWriter.close();
+                currentChannel.close();
             } catch (IOException e) {
                 System.err.println("[MethodProbe] Error closing log file: " + e.getMessage());
             }
-            currentWriter = null;
+            currentChannel = null;
         }
     }
 
@@ -257,4 +418,12 @@ public class AsyncFileLogOutput implements LogOutput {
     public int getQueueSize() {
         return messageQueue.size();
     }
+
+    /**
+     * Get the number of messages dropped because the queue was full.
+     */
+    @Override
+    public long getDroppedCount() {
+        return messageQueue.getDroppedCount();
+    }
 }
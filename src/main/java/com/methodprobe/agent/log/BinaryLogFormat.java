@@ -0,0 +1,43 @@
+package com.methodprobe.agent.log;
+
+/**
+ * Layout of the binary event log (.mpb) shared by {@link BinaryLogOutput}
+ * and {@link LogReader}.
+ *
+ * <pre>
+ * File header: "MPBL" (4 bytes) | version (1 byte)
+ *
+ * Records, each starting with a 1-byte type (all integers big-endian):
+ *   STRING  int id | unsigned short length | UTF-8 bytes
+ *           Adds an entry to the name dictionary (method, thread and
+ *           exception names). IDs start at 1; 0 means "none".
+ *   EVENT   short depth | int methodId | long startMillis | long durationNanos |
+ *           long threadId | int threadNameId | int exceptionId | long snapshotId
+ *           depth is -1 for flat events; call trees are written in pre-order
+ *           with the entry method at depth 0.
+ *   TEXT    int length | UTF-8 bytes (free-form messages)
+ *   RESET   Clears the dictionary; written when appending to an existing file.
+ * </pre>
+ */
+final class BinaryLogFormat {
+
+    static final byte[] MAGIC = { 'M', 'P', 'B', 'L' };
+    static final byte VERSION = 1;
+
+    static final byte TYPE_STRING = 1;
+    static final byte TYPE_EVENT = 2;
+    static final byte TYPE_TEXT = 3;
+    static final byte TYPE_RESET = 4;
+
+    /** Size of an EVENT record including its type byte. */
+    static final int EVENT_RECORD_SIZE = 1 + 2 + 4 + 8 + 8 + 8 + 4 + 4 + 8;
+
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    static final short FLAT_DEPTH = -1;
+
+    static final String FILE_SUFFIX = ".mpb";
+
+    private BinaryLogFormat() {
+    }
+}
@@ -0,0 +1,121 @@
+package com.methodprobe.agent.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary event log output (probe.output.mode=binary).
+ *
+ * Events are encoded by the background writer into fixed-layout records
+ * (see {@link BinaryLogFormat}), so business threads never format text.
+ * Method, thread and exception names are written once per file into a
+ * dictionary and referenced by ID afterwards.
+ *
+ * Files are named method-probe-yyyy-MM-dd.mpb and roll daily. Decode them
+ * with {@link LogReader}.
+ */
+public class BinaryLogOutput extends EventFileLogOutput {
+
+    // Name dictionary of the current file, writer thread only
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    /**
+     * Create a binary log output.
+     *
+     * @param logDir          directory for log files
+     * @param bufferSize      max size of event queue (rounded up to a power of two)
+     * @param flushIntervalMs max delay before buffered records are written under load
+     * @param dropPolicy      which event to drop when the queue is full
+     */
+    public BinaryLogOutput(String logDir, int bufferSize, long flushIntervalMs, DropPolicy dropPolicy) {
+        super(logDir, BinaryLogFormat.FILE_SUFFIX, bufferSize, flushIntervalMs, dropPolicy,
+                "MethodProbe-BinaryLogWriter");
+        start();
+        System.out.println("[MethodProbe] BinaryLogOutput started. Log dir: " + logDir);
+    }
+
+    /**
+     * A new file starts with the header; an existing one gets a RESET record
+     * because its earlier dictionary entries belong to a previous run.
+     */
+    @Override
+    protected void fileOpened(boolean empty) throws IOException {
+        dictionary.clear();
+        ensureRoom(BinaryLogFormat.MAGIC.length + 1);
+        if (empty) {
+            buffer().put(BinaryLogFormat.MAGIC).put(BinaryLogFormat.VERSION);
+        } else {
+            buffer().put(BinaryLogFormat.TYPE_RESET);
+        }
+    }
+
+    @Override
+    protected void encodeEvent(MethodEvent event) throws IOException {
+        putEvent(event, BinaryLogFormat.FLAT_DEPTH);
+    }
+
+    @Override
+    protected void encodeTree(MethodEvent root) throws IOException {
+        putTree(root, 0);
+    }
+
+    private void putTree(MethodEvent node, int depth) throws IOException {
+        putEvent(node, (short) Math.min(depth, Short.MAX_VALUE));
+        for (MethodEvent child : node.getChildren()) {
+            putTree(child, depth + 1);
+        }
+    }
+
+    private void putEvent(MethodEvent event, short depth) throws IOException {
+        int methodId = stringId(event.getMethodName());
+        int threadNameId = stringId(event.getThreadName());
+        int exceptionId = stringId(event.getExceptionClass());
+        ensureRoom(BinaryLogFormat.EVENT_RECORD_SIZE);
+        ByteBuffer buffer = buffer();
+        buffer.put(BinaryLogFormat.TYPE_EVENT);
+        buffer.putShort(depth);
+        buffer.putInt(methodId);
+        buffer.putLong(event.getStartMillis());
+        buffer.putLong(event.getDurationNanos());
+        buffer.putLong(event.getThreadId());
+        buffer.putInt(threadNameId);
+        buffer.putInt(exceptionId);
+        buffer.putLong(event.getSnapshotId());
+    }
+
+    /**
+     * Dictionary ID of a name, emitting a STRING record on first use.
+     */
+    private int stringId(String value) throws IOException {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            return id;
+        }
+        int newId = dictionary.size() + 1;
+        dictionary.put(value, newId);
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, BinaryLogFormat.MAX_STRING_BYTES);
+        ensureRoom(1 + 4 + 2 + length);
+        ByteBuffer buffer = buffer();
+        buffer.put(BinaryLogFormat.TYPE_STRING);
+        buffer.putInt(newId);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+        return newId;
+    }
+
+    @Override
+    protected void encodeText(String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        ensureRoom(1 + 4);
+        buffer().put(BinaryLogFormat.TYPE_TEXT).putInt(bytes.length);
+        putBytes(bytes);
+    }
+}
@@ -0,0 +1,90 @@
+package com.methodprobe.agent.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fans every entry out to several sinks, e.g. file + live stream + summary.
+ *
+ * Each sink owns its queue, thread and drop policy, so writing here only
+ * enqueues the same immutable event object once per sink; a slow sink drops
+ * its own entries instead of stalling the caller or the other sinks. Text
+ * sinks share the event's text, formatted once by whichever sink needs it
+ * first (see {@link TextLogFormatter#flatText}).
+ */
+public class CompositeLogOutput implements LogOutput {
+
+    private final Map<String, LogOutput> sinks;
+    private final LogOutput[] outputs;
+
+    /**
+     * @param sinks sink name to output, in write order; the outputs must not
+     *              block the caller
+     */
+    public CompositeLogOutput(Map<String, LogOutput> sinks) {
+        this.sinks = Collections.unmodifiableMap(new LinkedHashMap<>(sinks));
+        this.outputs = sinks.values().toArray(new LogOutput[0]);
+    }
+
+    @Override
+    public void write(String message) {
+        for (LogOutput output : outputs) {
+            output.write(message);
+        }
+    }
+
+    @Override
+    public void writeEvent(MethodEvent event) {
+        for (LogOutput output : outputs) {
+            output.writeEvent(event);
+        }
+    }
+
+    @Override
+    public void writeTree(MethodEvent root) {
+        for (LogOutput output : outputs) {
+            output.writeTree(root);
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (LogOutput output : outputs) {
+            output.flush();
+        }
+    }
+
+    @Override
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (LogOutput output : outputs) {
+            dropped += output.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    @Override
+    public void shutdown() {
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, LogOutput> sink : sinks.entrySet()) {
+            try {
+                sink.getValue().shutdown();
+            } catch (Exception e) {
+                failed.add(sink.getKey());
+            }
+        }
+        if (!failed.isEmpty()) {
+            System.err.println("[MethodProbe] Error shutting down log sinks: " + failed);
+        }
+    }
+
+    /**
+     * Sink name to output, in write order.
+     */
+    public Map<String, LogOutput> getSinks() {
+        return sinks;
+    }
+}
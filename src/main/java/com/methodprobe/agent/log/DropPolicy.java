@@ -0,0 +1,21 @@
+package com.methodprobe.agent.log;
+
+/**
+ * What a bounded log queue does when it is full.
+ */
+public enum DropPolicy {
+    /** Evict the oldest queued message to make room (keeps the most recent logs) */
+    OLDEST,
+    /** Reject the new message (cheapest; keeps the earliest logs of a burst) */
+    NEWEST;
+
+    /**
+     * Parse a config value ("oldest" / "newest"), defaulting to OLDEST.
+     */
+    public static DropPolicy parse(String value) {
+        if (value != null && "newest".equalsIgnoreCase(value.trim())) {
+            return NEWEST;
+        }
+        return OLDEST;
+    }
+}
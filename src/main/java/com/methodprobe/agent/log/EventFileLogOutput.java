@@ -0,0 +1,265 @@
+package com.methodprobe.agent.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Base for structured file outputs that receive events as objects.
+ *
+ * Business threads only enqueue the event into a lock-free ring buffer; a
+ * background thread encodes it straight into a reusable direct buffer that
+ * is written to method-probe-yyyy-MM-dd.&lt;suffix&gt;, rolling daily.
+ * Subclasses only implement the record encoding.
+ */
+public abstract class EventFileLogOutput implements LogOutput {
+
+    private static final String LOG_FILE_PREFIX = "method-probe-";
+    private static final int IO_BUFFER_SIZE = 256 * 1024;
+
+    private final String logDir;
+    private final String fileSuffix;
+
+    private final QueuedLogWriter queue;
+    private final String threadName;
+
+    // Writer state, guarded by writerLock
+    private final Object writerLock = new Object();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+    private FileChannel channel;
+    private long nextMidnightMillis;
+
+    /**
+     * Subclasses call {@link #start()} at the end of their constructor.
+     *
+     * @param logDir          directory for log files
+     * @param fileSuffix      file extension including the dot, e.g. ".mpb"
+     * @param bufferSize      max size of event queue (rounded up to a power of two)
+     * @param flushIntervalMs max delay before buffered records are written under load
+     * @param dropPolicy      which event to drop when the queue is full
+     * @param threadName      name of the background writer thread
+     */
+    protected EventFileLogOutput(String logDir, String fileSuffix, int bufferSize, long flushIntervalMs,
+            DropPolicy dropPolicy, String threadName) {
+        this.logDir = logDir;
+        this.fileSuffix = fileSuffix;
+        this.queue = new QueuedLogWriter(bufferSize, flushIntervalMs, dropPolicy, this::writeBatch);
+        this.threadName = threadName;
+
+        File dir = new File(logDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+    }
+
+    /**
+     * Open today's file and start the writer thread. Kept out of the base
+     * constructor so {@link #fileOpened(boolean)} sees initialized subclass
+     * fields.
+     */
+    protected final void start() {
+        synchronized (writerLock) {
+            openFile(System.currentTimeMillis());
+        }
+        queue.start(threadName);
+    }
+
+    /**
+     * Called under the writer lock after a file is opened, before any record.
+     *
+     * @param empty true for a new file, false when appending to an existing one
+     */
+    protected abstract void fileOpened(boolean empty) throws IOException;
+
+    /**
+     * Encode a flat probe event.
+     */
+    protected abstract void encodeEvent(MethodEvent event) throws IOException;
+
+    /**
+     * Encode a call tree.
+     */
+    protected abstract void encodeTree(MethodEvent root) throws IOException;
+
+    /**
+     * Encode a free-form text message.
+     */
+    protected abstract void encodeText(String message) throws IOException;
+
+    @Override
+    public void write(String message) {
+        queue.offer(message);
+    }
+
+    @Override
+    public void writeEvent(MethodEvent event) {
+        queue.offer(event);
+    }
+
+    @Override
+    public void writeTree(MethodEvent root) {
+        queue.offer(new QueuedLogWriter.Tree(root));
+    }
+
+    /**
+     * Number of events dropped because the queue was full.
+     */
+    @Override
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    public String getLogDir() {
+        return logDir;
+    }
+
+    /**
+     * Wait until everything queued so far is written to the file.
+     */
+    @Override
+    public void flush() {
+        queue.flush();
+    }
+
+    @Override
+    public void shutdown() {
+        queue.shutdown();
+        if (!queue.isWriterAlive()) {
+            List<Object> batch = new ArrayList<>();
+            queue.drainRemaining(batch);
+            writeBatch(batch, true);
+        }
+        synchronized (writerLock) {
+            closeFile();
+        }
+        System.out.println("[MethodProbe] " + getClass().getSimpleName() + " shutdown complete.");
+    }
+
+    private void writeBatch(List<Object> batch, boolean flush) {
+        synchronized (writerLock) {
+            try {
+                if (System.currentTimeMillis() >= nextMidnightMillis) {
+                    closeFile();
+                    openFile(System.currentTimeMillis());
+                }
+                if (channel == null) {
+                    return;
+                }
+                for (Object item : batch) {
+                    if (item instanceof MethodEvent) {
+                        encodeEvent((MethodEvent) item);
+                    } else if (item instanceof QueuedLogWriter.Tree) {
+                        encodeTree(((QueuedLogWriter.Tree) item).root);
+                    } else {
+                        encodeText((String) item);
+                    }
+                }
+                if (flush) {
+                    writeBuffer();
+                }
+            } catch (IOException e) {
+                System.err.println("[MethodProbe] Error writing log file: " + e.getMessage());
+                buffer.clear();
+                closeFile();
+                openFile(System.currentTimeMillis());
+            }
+        }
+    }
+
+    // ==================== Encoding helpers (under the writer lock) ====================
+
+    /**
+     * The buffer records are encoded into. Call {@link #ensureRoom(int)} before
+     * each put.
+     */
+    protected final ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Make sure the buffer has room for the given number of bytes, writing it
+     * out if needed. Requests larger than the buffer must use
+     * {@link #putBytes(byte[])}.
+     */
+    protected final void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Append bytes of any length, bypassing the buffer when they don't fit.
+     */
+    protected final void putBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.capacity()) {
+            writeBuffer();
+            writeFully(ByteBuffer.wrap(bytes));
+            return;
+        }
+        ensureRoom(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /**
+     * Open the file for the day containing the given time.
+     */
+    private void openFile(long now) {
+        String currentDate = dateFormat.format(new Date(now));
+        Calendar midnight = Calendar.getInstance();
+        midnight.setTimeInMillis(now);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        midnight.add(Calendar.DAY_OF_MONTH, 1);
+        nextMidnightMillis = midnight.getTimeInMillis();
+
+        buffer.clear();
+        File file = new File(logDir, LOG_FILE_PREFIX + currentDate + fileSuffix);
+        try {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            fileOpened(channel.size() == 0);
+        } catch (IOException e) {
+            System.err.println("[MethodProbe] Failed to create log file: " + e.getMessage());
+            channel = null;
+        }
+    }
+
+    private void closeFile() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            writeBuffer();
+        } catch (IOException e) {
+            System.err.println("[MethodProbe] Error writing log file: " + e.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[MethodProbe] Error closing log file: " + e.getMessage());
+        }
+        channel = null;
+    }
+}
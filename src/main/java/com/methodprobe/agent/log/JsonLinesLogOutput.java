@@ -0,0 +1,265 @@
+package com.methodprobe.agent.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.methodprobe.agent.snapshot.SnapshotIdGenerator;
+
+/**
+ * JSON Lines log output (probe.output.mode=json).
+ *
+ * Every flat event, call tree or message becomes one JSON object on its own
+ * line in method-probe-yyyy-MM-dd.jsonl:
+ *
+ * <pre>
+ * {"type":"flat","ts":...,"start":...,"thread":"main","threadId":1,"method":"com.Foo.bar","durationMs":12.345}
+ * {"type":"tree","ts":...,"thread":"http-1","threadId":9,"root":{"method":"...","start":...,"durationMs":20.000,"children":[...]}}
+ * {"type":"message","text":"..."}
+ * </pre>
+ *
+ * The encoder writes UTF-8 straight into the output buffer. Field keys are
+ * constant byte arrays and method, thread and exception names are escaped
+ * once and cached, so a typical event is encoded without allocation.
+ */
+public class JsonLinesLogOutput extends EventFileLogOutput {
+
+    static final String FILE_SUFFIX = ".jsonl";
+
+    /** Cached names are dropped once this many are held (e.g. unbounded thread names). */
+    private static final int MAX_CACHED_NAMES = 10_000;
+
+    private static final byte[] FLAT_PREFIX = ascii("{\"type\":\"flat\",\"ts\":");
+    private static final byte[] TREE_PREFIX = ascii("{\"type\":\"tree\",\"ts\":");
+    private static final byte[] MESSAGE_PREFIX = ascii("{\"type\":\"message\",\"text\":");
+    private static final byte[] START = ascii(",\"start\":");
+    private static final byte[] THREAD = ascii(",\"thread\":");
+    private static final byte[] THREAD_ID = ascii(",\"threadId\":");
+    private static final byte[] METHOD = ascii(",\"method\":");
+    private static final byte[] NODE_METHOD = ascii("{\"method\":");
+    private static final byte[] DURATION = ascii(",\"durationMs\":");
+    private static final byte[] EXCEPTION = ascii(",\"exception\":");
+    private static final byte[] SNAPSHOT_ID = ascii(",\"snapshotId\":\"");
+    private static final byte[] ROOT = ascii(",\"root\":");
+    private static final byte[] CHILDREN = ascii(",\"children\":[");
+    private static final byte[] LINE_END = ascii("}\n");
+    private static final byte[] NULL_LITERAL = ascii("null");
+
+    private static final int MAX_NUMBER_BYTES = 20;
+
+    // Writer thread only
+    private final Map<String, byte[]> nameCache = new HashMap<>();
+    private final byte[] digits = new byte[MAX_NUMBER_BYTES];
+
+    /**
+     * Create a JSON Lines log output.
+     *
+     * @param logDir          directory for log files
+     * @param bufferSize      max size of event queue (rounded up to a power of two)
+     * @param flushIntervalMs max delay before buffered lines are written under load
+     * @param dropPolicy      which event to drop when the queue is full
+     */
+    public JsonLinesLogOutput(String logDir, int bufferSize, long flushIntervalMs, DropPolicy dropPolicy) {
+        super(logDir, FILE_SUFFIX, bufferSize, flushIntervalMs, dropPolicy, "MethodProbe-JsonLogWriter");
+        start();
+        System.out.println("[MethodProbe] JsonLinesLogOutput started. Log dir: " + logDir);
+    }
+
+    @Override
+    protected void fileOpened(boolean empty) {
+        // Every line is self-contained; nothing to write
+    }
+
+    @Override
+    protected void encodeEvent(MethodEvent event) throws IOException {
+        put(FLAT_PREFIX);
+        putLong(TextLogFormatter.endMillis(event));
+        put(START);
+        putLong(event.getStartMillis());
+        putThread(event);
+        put(METHOD);
+        putBytes(name(event.getMethodName()));
+        putEventFields(event);
+        put(LINE_END);
+    }
+
+    @Override
+    protected void encodeTree(MethodEvent root) throws IOException {
+        put(TREE_PREFIX);
+        putLong(TextLogFormatter.endMillis(root));
+        putThread(root);
+        put(ROOT);
+        putNode(root);
+        put(LINE_END);
+    }
+
+    @Override
+    protected void encodeText(String message) throws IOException {
+        put(MESSAGE_PREFIX);
+        putBytes(escape(message));
+        put(LINE_END);
+    }
+
+    private void putNode(MethodEvent node) throws IOException {
+        put(NODE_METHOD);
+        putBytes(name(node.getMethodName()));
+        put(START);
+        putLong(node.getStartMillis());
+        putEventFields(node);
+        List<MethodEvent> children = node.getChildren();
+        if (!children.isEmpty()) {
+            put(CHILDREN);
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    putByte((byte) ',');
+                }
+                putNode(children.get(i));
+            }
+            putByte((byte) ']');
+        }
+        putByte((byte) '}');
+    }
+
+    private void putThread(MethodEvent event) throws IOException {
+        put(THREAD);
+        putBytes(name(event.getThreadName()));
+        put(THREAD_ID);
+        putLong(event.getThreadId());
+    }
+
+    /**
+     * Duration, exception and snapshot ID, shared by flat events and tree nodes.
+     */
+    private void putEventFields(MethodEvent event) throws IOException {
+        put(DURATION);
+        putDurationMs(event.getDurationNanos());
+        if (event.hasException()) {
+            put(EXCEPTION);
+            putBytes(name(event.getExceptionClass()));
+        }
+        if (event.getSnapshotId() != 0) {
+            put(SNAPSHOT_ID);
+            String id = SnapshotIdGenerator.toString(event.getSnapshotId());
+            ensureRoom(id.length() + 1);
+            ByteBuffer buffer = buffer();
+            for (int i = 0; i < id.length(); i++) {
+                buffer.put((byte) id.charAt(i));
+            }
+            buffer.put((byte) '"');
+        }
+    }
+
+    /**
+     * Escaped, quoted UTF-8 bytes of a name, cached across events.
+     */
+    private byte[] name(String value) {
+        if (value == null) {
+            return NULL_LITERAL;
+        }
+        byte[] bytes = nameCache.get(value);
+        if (bytes == null) {
+            if (nameCache.size() >= MAX_CACHED_NAMES) {
+                nameCache.clear();
+            }
+            bytes = escape(value);
+            nameCache.put(value, bytes);
+        }
+        return bytes;
+    }
+
+    private void put(byte[] constant) throws IOException {
+        ensureRoom(constant.length);
+        buffer().put(constant);
+    }
+
+    private void putByte(byte b) throws IOException {
+        ensureRoom(1);
+        buffer().put(b);
+    }
+
+    /**
+     * Write a decimal long without going through a String.
+     */
+    private void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            put(ascii(Long.toString(value)));
+            return;
+        }
+        ensureRoom(MAX_NUMBER_BYTES);
+        ByteBuffer buffer = buffer();
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int pos = MAX_NUMBER_BYTES;
+        do {
+            digits[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, pos, MAX_NUMBER_BYTES - pos);
+    }
+
+    /**
+     * Write nanoseconds as milliseconds with three decimals (microsecond precision).
+     */
+    private void putDurationMs(long nanos) throws IOException {
+        long micros = Math.max(0, nanos) / 1000;
+        putLong(micros / 1000);
+        ensureRoom(4);
+        long fraction = micros % 1000;
+        buffer().put((byte) '.')
+                .put((byte) ('0' + fraction / 100))
+                .put((byte) ('0' + fraction / 10 % 10))
+                .put((byte) ('0' + fraction % 10));
+    }
+
+    /**
+     * Quote and escape a string as a JSON string literal in UTF-8.
+     */
+    static byte[] escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        appendQuoted(sb, value);
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append a string as a quoted, escaped JSON string literal.
+     */
+    static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,261 @@
+package com.methodprobe.agent.log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Server-side filter of one live log subscriber.
+ *
+ * Sent by the client as a JSON object, e.g.
+ * {@code {"type":"filter","methodPrefix":"com.example.order","minDurationMs":50,"exceptionOnly":true,"threadPattern":"http-*"}}.
+ * Omitted fields don't filter. The filter is compiled once when received and
+ * evaluated per entry before the entry is formatted for that client.
+ */
+public final class LogFilter {
+
+    /** Matches everything; used until a client sends a filter. */
+    public static final LogFilter ALL = new LogFilter(null, 0, false, null);
+
+    private final String methodPrefix;
+    private final long minDurationNanos;
+    private final boolean exceptionOnly;
+    private final String threadPattern;
+    private final Pattern threadRegex;
+
+    /**
+     * @param methodPrefix     keep methods starting with this ("Class.method"), null = any
+     * @param minDurationNanos keep events at least this slow
+     * @param exceptionOnly    keep only events with a captured exception
+     * @param threadPattern    glob on the thread name (* and ?), null = any
+     */
+    public LogFilter(String methodPrefix, long minDurationNanos, boolean exceptionOnly, String threadPattern) {
+        this.methodPrefix = emptyToNull(methodPrefix);
+        this.minDurationNanos = Math.max(0, minDurationNanos);
+        this.exceptionOnly = exceptionOnly;
+        this.threadPattern = emptyToNull(threadPattern);
+        this.threadRegex = this.threadPattern != null ? globToRegex(this.threadPattern) : null;
+    }
+
+    /**
+     * Parse a filter message.
+     *
+     * @throws IllegalArgumentException if the message is not a filter object
+     */
+    public static LogFilter parse(String json) {
+        Map<String, String> fields = parseObject(json);
+        if (!"filter".equals(fields.get("type"))) {
+            throw new IllegalArgumentException("Expected {\"type\":\"filter\",...}");
+        }
+        long minDurationNanos = 0;
+        String minDuration = fields.get("minDurationMs");
+        if (minDuration != null && !minDuration.isEmpty()) {
+            try {
+                minDurationNanos = (long) (Double.parseDouble(minDuration) * 1_000_000);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid minDurationMs: " + minDuration);
+            }
+        }
+        return new LogFilter(fields.get("methodPrefix"), minDurationNanos,
+                Boolean.parseBoolean(fields.get("exceptionOnly")), fields.get("threadPattern"));
+    }
+
+    /**
+     * Whether a queued stream entry passes this filter. Plain text messages
+     * carry no fields, so they only pass a filter that matches everything.
+     */
+    boolean matches(Object entry) {
+        if (entry instanceof MethodEvent) {
+            return matchesEvent((MethodEvent) entry);
+        }
+        if (entry instanceof QueuedLogWriter.Tree) {
+            return matchesTree(((QueuedLogWriter.Tree) entry).root);
+        }
+        return isMatchAll();
+    }
+
+    boolean matchesEvent(MethodEvent event) {
+        return event.getDurationNanos() >= minDurationNanos
+                && (!exceptionOnly || event.hasException())
+                && (methodPrefix == null || event.getMethodName().startsWith(methodPrefix))
+                && threadMatches(event);
+    }
+
+    /**
+     * A tree passes when the entry call is slow enough and on a matching
+     * thread, and some call in it has the method prefix / an exception.
+     */
+    boolean matchesTree(MethodEvent root) {
+        if (root.getDurationNanos() < minDurationNanos || !threadMatches(root)) {
+            return false;
+        }
+        return (!exceptionOnly || anyNode(root, true)) && (methodPrefix == null || anyNode(root, false));
+    }
+
+    private boolean anyNode(MethodEvent node, boolean exception) {
+        if (exception ? node.hasException() : node.getMethodName().startsWith(methodPrefix)) {
+            return true;
+        }
+        for (MethodEvent child : node.getChildren()) {
+            if (anyNode(child, exception)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean threadMatches(MethodEvent event) {
+        return threadRegex == null
+                || (event.getThreadName() != null && threadRegex.matcher(event.getThreadName()).matches());
+    }
+
+    public boolean isMatchAll() {
+        return methodPrefix == null && minDurationNanos == 0 && !exceptionOnly && threadRegex == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LogFilter)) {
+            return false;
+        }
+        LogFilter other = (LogFilter) o;
+        return minDurationNanos == other.minDurationNanos && exceptionOnly == other.exceptionOnly
+                && Objects.equals(methodPrefix, other.methodPrefix)
+                && Objects.equals(threadPattern, other.threadPattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(methodPrefix, minDurationNanos, exceptionOnly, threadPattern);
+    }
+
+    @Override
+    public String toString() {
+        return "methodPrefix=" + methodPrefix + ", minDurationMs=" + minDurationNanos / 1_000_000.0
+                + ", exceptionOnly=" + exceptionOnly + ", threadPattern=" + threadPattern;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Parse a flat JSON object whose values are strings, numbers, booleans or
+     * null into strings. Nested objects and arrays are rejected.
+     */
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = { skipWhitespace(json, 0) };
+        expect(json, pos, '{');
+        if (peek(json, pos) == '}') {
+            return fields;
+        }
+        while (true) {
+            String key = readString(json, pos);
+            expect(json, pos, ':');
+            String value;
+            char c = peek(json, pos);
+            if (c == '"') {
+                value = readString(json, pos);
+            } else {
+                int start = pos[0];
+                while (pos[0] < json.length() && ",} \t\r\n".indexOf(json.charAt(pos[0])) < 0) {
+                    pos[0]++;
+                }
+                value = json.substring(start, pos[0]);
+                if (value.isEmpty() || value.charAt(0) == '{' || value.charAt(0) == '[') {
+                    throw new IllegalArgumentException("Unsupported value for " + key);
+                }
+                if ("null".equals(value)) {
+                    value = null;
+                }
+            }
+            fields.put(key, value);
+            char next = peek(json, pos);
+            pos[0]++;
+            if (next == '}') {
+                return fields;
+            }
+            if (next != ',') {
+                throw new IllegalArgumentException("Malformed JSON object");
+            }
+        }
+    }
+
+    private static String readString(String json, int[] pos) {
+        expect(json, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < json.length()) {
+            char c = json.charAt(pos[0]++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\' && pos[0] < json.length()) {
+                char e = json.charAt(pos[0]++);
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'u':
+                        if (pos[0] + 4 > json.length()) {
+                            throw new IllegalArgumentException("Malformed JSON string");
+                        }
+                        sb.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default:
+                        sb.append(e);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    private static void expect(String json, int[] pos, char expected) {
+        if (peek(json, pos) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at " + pos[0]);
+        }
+        pos[0]++;
+    }
+
+    private static char peek(String json, int[] pos) {
+        pos[0] = skipWhitespace(json, pos[0]);
+        if (pos[0] >= json.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return json.charAt(pos[0]);
+    }
+
+    private static int skipWhitespace(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -13,6 +13,24 @@ public interface LogOutput {
      */
     void write(String message);
 
+    /**
+     * Write a flat probe event. Text outputs format it as one line.
+     *
+     * @param event the probed method execution
+     */
+    default void writeEvent(MethodEvent event) {
+        write(TextLogFormatter.flatText(event));
+    }
+
+    /**
+     * Write a whole call tree. Text outputs render it with tree branches.
+     *
+     * @param root the entry method, with nested calls as children
+     */
+    default void writeTree(MethodEvent root) {
+        write(TextLogFormatter.treeText(root));
+    }
+
     /**
      * Flush any buffered content.
      * For synchronous implementations, this may be a no-op.
@@ -21,6 +39,14 @@ public interface LogOutput {
         // Default no-op
     }
 
+    /**
+     * Number of entries dropped because the output could not keep up.
+     * Synchronous implementations never drop.
+     */
+    default long getDroppedCount() {
+        return 0;
+    }
+
     /**
      * Shutdown the log output, releasing any resources.
      * Should ensure all pending messages are written before returning.
@@ -2,6 +2,12 @@ package com.methodprobe.agent.log;
 
 import com.methodprobe.agent.config.AgentConfig;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Factory for creating LogOutput instances based on configuration.
  */
@@ -26,19 +32,102 @@ public class LogOutputFactory {
 
     /**
      * Create a LogOutput based on current configuration.
+     *
+     * The mode may list several sinks, e.g. "file,summary"; the live stream
+     * is added as a "ws" sink when enabled. A single sink is used directly,
+     * several are combined into a {@link CompositeLogOutput}.
      */
     private static LogOutput createLogOutput() {
-        String mode = AgentConfig.getOutputMode();
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : AgentConfig.getOutputMode().split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim().toLowerCase());
+            }
+        }
+        if (AgentConfig.isOutputWsEnabled()) {
+            names.add("ws");
+        }
+        if (names.isEmpty()) {
+            names.add("console");
+        }
+        if (names.size() == 1) {
+            return createSink(names.iterator().next(), false);
+        }
+
+        Map<String, LogOutput> sinks = new LinkedHashMap<>();
+        for (String name : names) {
+            sinks.put(name, createSink(name, true));
+        }
+        return new CompositeLogOutput(sinks);
+    }
 
-        if ("file".equalsIgnoreCase(mode)) {
+    /**
+     * Create the LogOutput for one sink.
+     *
+     * @param shared true when other sinks run alongside, in which case the
+     *               synchronous console gets its own queue and thread
+     */
+    private static LogOutput createSink(String name, boolean shared) {
+        DropPolicy dropPolicy = DropPolicy.parse(AgentConfig.getOutputDropPolicy(name));
+        if ("file".equals(name)) {
             return new AsyncFileLogOutput(
                     AgentConfig.getOutputDir(),
                     AgentConfig.getOutputBufferSize(),
-                    AgentConfig.getOutputFlushInterval());
-        } else {
-            // Default to console
-            return ConsoleLogOutput.getInstance();
+                    AgentConfig.getOutputFlushInterval(),
+                    dropPolicy,
+                    AgentConfig.getOutputMaxFileSize(),
+                    AgentConfig.getOutputMaxFiles(),
+                    AgentConfig.isOutputCompress());
+        } else if ("binary".equals(name)) {
+            return new BinaryLogOutput(
+                    AgentConfig.getOutputDir(),
+                    AgentConfig.getOutputBufferSize(),
+                    AgentConfig.getOutputFlushInterval(),
+                    dropPolicy);
+        } else if ("json".equals(name)) {
+            return new JsonLinesLogOutput(
+                    AgentConfig.getOutputDir(),
+                    AgentConfig.getOutputBufferSize(),
+                    AgentConfig.getOutputFlushInterval(),
+                    dropPolicy);
+        } else if ("ws".equals(name)) {
+            WebSocketLogManager.init(AgentConfig.getOutputWsPort(),
+                    AgentConfig.getOutputWsBatchInterval(),
+                    AgentConfig.getOutputWsClientBuffer());
+            return new WebSocketLogOutput();
+        } else if ("summary".equals(name)) {
+            return new QueuedLogOutput(
+                    new SummaryLogOutput(AgentConfig.getOutputDir(), AgentConfig.getOutputSummaryInterval()),
+                    AgentConfig.getOutputBufferSize(),
+                    AgentConfig.getOutputFlushInterval(),
+                    dropPolicy,
+                    "MethodProbe-SummarySink");
+        }
+        if (!"console".equals(name)) {
+            System.err.println("[MethodProbe] Unknown output sink '" + name + "', using console");
         }
+        if (shared) {
+            return new QueuedLogOutput(ConsoleLogOutput.getInstance(),
+                    AgentConfig.getOutputBufferSize(),
+                    AgentConfig.getOutputFlushInterval(),
+                    dropPolicy,
+                    "MethodProbe-ConsoleSink");
+        }
+        return ConsoleLogOutput.getInstance();
+    }
+
+    /**
+     * Output sinks by name, for monitoring; a single sink is keyed by its mode.
+     */
+    public static Map<String, LogOutput> getSinks() {
+        LogOutput output = instance;
+        if (output == null) {
+            return Collections.emptyMap();
+        }
+        if (output instanceof CompositeLogOutput) {
+            return ((CompositeLogOutput) output).getSinks();
+        }
+        return Collections.singletonMap(AgentConfig.getOutputMode().trim().toLowerCase(), output);
     }
 
     /**
@@ -66,6 +155,20 @@ public class LogOutputFactory {
         getInstance().write(message);
     }
 
+    /**
+     * Write a flat probe event.
+     */
+    public static void writeEvent(MethodEvent event) {
+        getInstance().writeEvent(event);
+    }
+
+    /**
+     * Write a call tree rooted at the entry method.
+     */
+    public static void writeTree(MethodEvent root) {
+        getInstance().writeTree(root);
+    }
+
     /**
      * Flush any pending log messages.
      */
@@ -0,0 +1,233 @@
+package com.methodprobe.agent.log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.methodprobe.agent.snapshot.SnapshotIdGenerator;
+
+/**
+ * Command-line tool to decode binary event logs (.mpb).
+ * Usage: java -cp agent.jar com.methodprobe.agent.log.LogReader
+ * [--format text|csv|json] <file.mpb>...
+ *
+ * Records are decoded as a stream, so files of any size can be read. A
+ * truncated record at the end of a file (e.g. after a crash) is ignored.
+ */
+public class LogReader {
+
+    public static void main(String[] args) {
+        String format = "text";
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--format".equals(args[i]) && i + 1 < args.length) {
+                format = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty() || !Arrays.asList("text", "csv", "json").contains(format)) {
+            System.out.println(
+                    "Usage: java -cp agent.jar com.methodprobe.agent.log.LogReader [--format text|csv|json] <file.mpb>...");
+            System.out.println();
+            System.out.println("Examples:");
+            System.out.println("  Text (same as file mode):  ./probe-logs/method-probe-2026-01-12.mpb");
+            System.out.println("  CSV for spreadsheets:      --format csv ./probe-logs/method-probe-2026-01-12.mpb");
+            System.out.println("  JSON, one event per line:  --format json ./probe-logs/*.mpb");
+            System.exit(1);
+        }
+
+        if ("csv".equals(format)) {
+            System.out.println(CSV_HEADER);
+        }
+        for (String file : files) {
+            Path path = Paths.get(file);
+            try (InputStream in = Files.newInputStream(path)) {
+                read(in, format, System.out);
+            } catch (IOException e) {
+                System.err.println("Failed to read " + file + ": " + e.getMessage());
+            }
+        }
+        System.out.flush();
+    }
+
+    static final String CSV_HEADER = "depth,method,start,durationMs,threadId,thread,exception,snapshotId";
+
+    /**
+     * Decode a binary event log and print it in the given format.
+     *
+     * @param in     the .mpb stream, starting at the file header
+     * @param format text, csv or json
+     * @param out    destination
+     */
+    public static void read(InputStream in, String format, PrintStream out) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        byte[] magic = new byte[BinaryLogFormat.MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, BinaryLogFormat.MAGIC)) {
+            throw new IOException("Not a binary probe log (bad magic)");
+        }
+        int version = data.readUnsignedByte();
+        if (version != BinaryLogFormat.VERSION) {
+            throw new IOException("Unsupported binary log version: " + version);
+        }
+
+        Map<Integer, String> dictionary = new HashMap<>();
+        TreeBuilder tree = new TreeBuilder();
+        try {
+            while (true) {
+                int type = data.read();
+                if (type < 0) {
+                    break;
+                }
+                switch (type) {
+                    case BinaryLogFormat.TYPE_STRING: {
+                        int id = data.readInt();
+                        byte[] bytes = new byte[data.readUnsignedShort()];
+                        data.readFully(bytes);
+                        dictionary.put(id, new String(bytes, StandardCharsets.UTF_8));
+                        break;
+                    }
+                    case BinaryLogFormat.TYPE_EVENT: {
+                        short depth = data.readShort();
+                        String method = dictionary.get(data.readInt());
+                        long start = data.readLong();
+                        long duration = data.readLong();
+                        long threadId = data.readLong();
+                        String thread = dictionary.get(data.readInt());
+                        String exception = dictionary.get(data.readInt());
+                        long snapshotId = data.readLong();
+                        MethodEvent event = new MethodEvent(method, start, duration, threadId, thread,
+                                exception, snapshotId);
+                        if (depth <= 0) {
+                            tree.finish(format, out);
+                        }
+                        if (depth == BinaryLogFormat.FLAT_DEPTH) {
+                            printEvent(event, depth, format, out, false);
+                        } else {
+                            if (!"text".equals(format)) {
+                                printEvent(event, depth, format, out, true);
+                            }
+                            tree.add(event, depth);
+                        }
+                        break;
+                    }
+                    case BinaryLogFormat.TYPE_TEXT: {
+                        byte[] bytes = new byte[data.readInt()];
+                        data.readFully(bytes);
+                        if ("text".equals(format)) {
+                            tree.finish(format, out);
+                            out.print(new String(bytes, StandardCharsets.UTF_8));
+                        }
+                        break;
+                    }
+                    case BinaryLogFormat.TYPE_RESET:
+                        dictionary.clear();
+                        break;
+                    default:
+                        throw new IOException("Corrupt binary log: unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // Truncated tail, e.g. the process died mid-write
+        }
+        tree.finish(format, out);
+    }
+
+    private static void printEvent(MethodEvent event, int depth, String format, PrintStream out, boolean inTree) {
+        if ("csv".equals(format)) {
+            out.println(depth + "," + csv(event.getMethodName()) + "," + formatTime(event.getStartMillis()) + ","
+                    + String.format(Locale.ROOT, "%.3f", event.getDurationMs()) + "," + event.getThreadId() + ","
+                    + csv(event.getThreadName()) + "," + csv(event.getExceptionClass()) + ","
+                    + snapshotText(event));
+        } else if ("json".equals(format)) {
+            StringBuilder sb = new StringBuilder(160);
+            sb.append("{\"type\":\"").append(inTree ? "tree" : "flat").append('"');
+            if (inTree) {
+                sb.append(",\"depth\":").append(depth);
+            }
+            sb.append(",\"method\":").append(json(event.getMethodName()));
+            sb.append(",\"start\":").append(event.getStartMillis());
+            sb.append(",\"durationNanos\":").append(event.getDurationNanos());
+            sb.append(",\"threadId\":").append(event.getThreadId());
+            sb.append(",\"thread\":").append(json(event.getThreadName()));
+            if (event.hasException()) {
+                sb.append(",\"exception\":").append(json(event.getExceptionClass()));
+            }
+            if (event.getSnapshotId() != 0) {
+                sb.append(",\"snapshotId\":\"").append(snapshotText(event)).append('"');
+            }
+            sb.append('}');
+            out.println(sb);
+        } else {
+            out.print(TextLogFormatter.formatFlat(event));
+        }
+    }
+
+    private static String formatTime(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(millis));
+    }
+
+    private static String snapshotText(MethodEvent event) {
+        return event.getSnapshotId() != 0 ? SnapshotIdGenerator.toString(event.getSnapshotId()) : "";
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        JsonLinesLogOutput.appendQuoted(sb, value);
+        return sb.toString();
+    }
+
+    /**
+     * Rebuilds call trees from pre-order records so text output can render
+     * them like file mode does.
+     */
+    private static final class TreeBuilder {
+        private final List<MethodEvent> path = new ArrayList<>();
+
+        void add(MethodEvent event, int depth) {
+            while (path.size() > depth) {
+                path.remove(path.size() - 1);
+            }
+            if (!path.isEmpty()) {
+                path.get(path.size() - 1).addChild(event);
+            }
+            path.add(event);
+        }
+
+        void finish(String format, PrintStream out) {
+            if (!path.isEmpty() && "text".equals(format)) {
+                out.print(TextLogFormatter.formatTree(path.get(0)));
+            }
+            path.clear();
+        }
+    }
+}
@@ -1,17 +1,22 @@
 package com.methodprobe.agent.log;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
 import java.net.InetSocketAddress;
-import java.util.Collections;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LogWebSocketServer extends WebSocketServer {
 
-    private final Set<WebSocket> clients = Collections.synchronizedSet(new HashSet<>());
+    private final Set<WebSocket> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicLong droppedClients = new AtomicLong();
 
     public LogWebSocketServer(int port) {
         super(new InetSocketAddress(port));
@@ -29,9 +34,29 @@ public class LogWebSocketServer extends WebSocketServer {
         System.out.println("[MethodProbe] Log Monitor disconnected: " + conn.getRemoteSocketAddress());
     }
 
+    /**
+     * Clients send their filter as JSON; it is compiled once and kept on the
+     * connection. An empty filter object clears it.
+     */
     @Override
     public void onMessage(WebSocket conn, String message) {
-        // No incoming messages expected
+        try {
+            LogFilter filter = LogFilter.parse(message);
+            conn.setAttachment(filter);
+            System.out.println("[MethodProbe] Log Monitor " + conn.getRemoteSocketAddress() + " filter: " + filter);
+        } catch (IllegalArgumentException e) {
+            StringBuilder frame = new StringBuilder("[");
+            JsonLinesLogOutput.appendQuoted(frame, "System: Invalid filter: " + e.getMessage());
+            conn.send(frame.append(']').toString());
+        }
+    }
+
+    /**
+     * The filter a client asked for, or {@link LogFilter#ALL}.
+     */
+    static LogFilter filterOf(WebSocket client) {
+        LogFilter filter = client.getAttachment();
+        return filter != null ? filter : LogFilter.ALL;
     }
 
     @Override
@@ -47,20 +72,82 @@ public class LogWebSocketServer extends WebSocketServer {
         System.out.println("[MethodProbe] Log WebSocket Server started on port " + getPort());
     }
 
-    public void broadcastLog(String log) {
-        if (clients.isEmpty())
-            return;
+    /**
+     * Queue a frame for one client. The send only queues the frame on the
+     * connection; a client whose unsent backlog would exceed
+     * {@code maxPendingBytes} is disconnected instead, so one slow browser
+     * cannot grow memory or hold up the others.
+     *
+     * @param frameBytes UTF-8 length of the frame, see {@link #utf8Length}
+     * @return true if the frame was queued
+     */
+    boolean send(WebSocket client, String frame, long frameBytes, long maxPendingBytes) {
+        if (pendingBytes(client) + frameBytes > maxPendingBytes) {
+            droppedClients.incrementAndGet();
+            System.err.println("[MethodProbe] Dropping slow Log Monitor: " + client.getRemoteSocketAddress());
+            client.close(CloseFrame.TRY_AGAIN_LATER, "Client too slow");
+            return false;
+        }
+        client.send(frame);
+        return true;
+    }
 
-        synchronized (clients) {
-            for (WebSocket client : clients) {
-                if (client.isOpen()) {
-                    client.send(log);
-                }
+    /**
+     * Length of text once encoded as UTF-8, as it is sent, without encoding
+     * it: log text is often CJK, three bytes per char.
+     */
+    static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
             }
         }
+        return bytes;
+    }
+
+    /**
+     * Bytes queued on the connection but not yet written to the socket.
+     */
+    static long pendingBytes(WebSocket client) {
+        if (!(client instanceof WebSocketImpl)) {
+            return 0;
+        }
+        long pending = 0;
+        for (ByteBuffer buffer : ((WebSocketImpl) client).outQueue) {
+            pending += buffer.remaining();
+        }
+        return pending;
+    }
+
+    /**
+     * Connected clients; safe to iterate while clients come and go.
+     */
+    public Collection<WebSocket> getClients() {
+        return clients;
     }
 
     public boolean hasClients() {
         return !clients.isEmpty();
     }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Number of clients disconnected for falling behind.
+     */
+    public long getDroppedClients() {
+        return droppedClients.get();
+    }
 }
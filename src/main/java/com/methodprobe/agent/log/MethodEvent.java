@@ -0,0 +1,101 @@
+package com.methodprobe.agent.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single probed method execution, as handed to a {@link LogOutput}.
+ *
+ * Flat probes produce one event; a call tree is an event whose children are
+ * the nested calls. Outputs decide how to render it: text, binary records or
+ * JSON.
+ */
+public final class MethodEvent {
+
+    private final String methodName;
+    private final long startMillis;
+    private final long durationNanos;
+    private final long threadId;
+    private final String threadName;
+    private final String exceptionClass;
+    private final long snapshotId;
+    private List<MethodEvent> children = Collections.emptyList();
+    // Rendered text, shared by every text sink that logs this event
+    private volatile String text;
+
+    /**
+     * @param methodName     fully qualified "Class.method"
+     * @param startMillis    start time in epoch millis
+     * @param durationNanos  execution time in nanoseconds
+     * @param threadId       id of the executing thread
+     * @param threadName     name of the executing thread
+     * @param exceptionClass fully qualified name of the captured exception, null if none
+     * @param snapshotId     snapshot ID, 0 if none
+     */
+    public MethodEvent(String methodName, long startMillis, long durationNanos, long threadId,
+            String threadName, String exceptionClass, long snapshotId) {
+        this.methodName = methodName;
+        this.startMillis = startMillis;
+        this.durationNanos = durationNanos;
+        this.threadId = threadId;
+        this.threadName = threadName;
+        this.exceptionClass = exceptionClass;
+        this.snapshotId = snapshotId;
+    }
+
+    public void addChild(MethodEvent child) {
+        if (children.isEmpty()) {
+            children = new ArrayList<>();
+        }
+        children.add(child);
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public double getDurationMs() {
+        return durationNanos / 1_000_000.0;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    public boolean hasException() {
+        return exceptionClass != null;
+    }
+
+    public long getSnapshotId() {
+        return snapshotId;
+    }
+
+    public List<MethodEvent> getChildren() {
+        return children;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    void setText(String text) {
+        this.text = text;
+    }
+}
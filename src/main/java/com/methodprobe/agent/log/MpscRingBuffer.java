@@ -0,0 +1,132 @@
+package com.methodprobe.agent.log;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer for many producers and one consumer.
+ *
+ * Based on Dmitry Vyukov's bounded queue: every slot carries a sequence
+ * number, so producers claim a slot with one CAS on the tail and publish it
+ * with an ordered store; no nodes are allocated. The head and tail counters
+ * are padded onto separate cache lines so producers and the consumer don't
+ * false-share.
+ *
+ * {@link #poll()} is also safe to call from producers, which is how the
+ * drop-oldest policy evicts the head when the buffer is full.
+ */
+public class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+
+    private final PaddedCounter head = new PaddedCounter();
+    private final PaddedCounter tail = new PaddedCounter();
+
+    /**
+     * @param capacity minimum capacity, rounded up to a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an element if there is room.
+     *
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, element);
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest element.
+     *
+     * @return the element, or null if the buffer is empty
+     */
+    public E poll() {
+        long pos = head.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E element = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.lazySet(index, pos + mask + 1);
+                    return element;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * Move up to {@code max} elements into {@code target}.
+     *
+     * @return number of elements moved
+     */
+    public int drainTo(List<? super E> target, int max) {
+        int count = 0;
+        E element;
+        while (count < max && (element = poll()) != null) {
+            target.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * AtomicLong followed by enough padding to fill a cache line.
+     */
+    @SuppressWarnings("unused")
+    static final class PaddedCounter extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
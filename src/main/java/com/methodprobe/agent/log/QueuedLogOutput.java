@@ -0,0 +1,111 @@
+package com.methodprobe.agent.log;
+
+import java.util.List;
+
+/**
+ * Gives a synchronous output (console, summary) its own bounded queue and
+ * thread, so a slow sink cannot stall the caller or the other sinks.
+ *
+ * Events are queued as objects and passed to the wrapped output on the
+ * background thread; the wrapped output is flushed whenever the queue runs
+ * empty and at least every flush interval.
+ */
+public class QueuedLogOutput implements LogOutput {
+
+    private final LogOutput delegate;
+    private final QueuedLogWriter queue;
+
+    /**
+     * @param delegate        the output written from the background thread
+     * @param bufferSize      max size of the queue (rounded up to a power of two)
+     * @param flushIntervalMs max delay between flushes of the delegate
+     * @param dropPolicy      which entry to drop when the queue is full
+     * @param threadName      name of the background thread
+     */
+    public QueuedLogOutput(LogOutput delegate, int bufferSize, long flushIntervalMs, DropPolicy dropPolicy,
+            String threadName) {
+        this.delegate = delegate;
+        this.queue = new QueuedLogWriter(bufferSize, flushIntervalMs, dropPolicy, this::writeBatch);
+        this.queue.start(threadName);
+    }
+
+    @Override
+    public void write(String message) {
+        queue.offer(message);
+    }
+
+    @Override
+    public void writeEvent(MethodEvent event) {
+        queue.offer(event);
+    }
+
+    @Override
+    public void writeTree(MethodEvent root) {
+        queue.offer(new QueuedLogWriter.Tree(root));
+    }
+
+    /**
+     * Runs on the background thread. Time-based outputs (summary) close their
+     * window on flush, so the delegate is flushed even when idle.
+     */
+    private void writeBatch(List<Object> batch, boolean flush) {
+        for (Object item : batch) {
+            try {
+                if (item instanceof MethodEvent) {
+                    delegate.writeEvent((MethodEvent) item);
+                } else if (item instanceof QueuedLogWriter.Tree) {
+                    delegate.writeTree(((QueuedLogWriter.Tree) item).root);
+                } else {
+                    delegate.write((String) item);
+                }
+            } catch (Exception e) {
+                // Keep the thread alive; one bad entry must not stop the sink
+                queue.countDropped();
+            }
+        }
+        if (flush) {
+            flushDelegate();
+        }
+    }
+
+    private void flushDelegate() {
+        try {
+            delegate.flush();
+        } catch (Exception e) {
+            System.err.println("[MethodProbe] Error flushing " + delegate.getClass().getSimpleName() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Wait until everything queued so far has been handed to the delegate,
+     * then flush it. The delegate is flushed on the background thread, so it
+     * never sees two threads at once.
+     */
+    @Override
+    public void flush() {
+        queue.flush();
+    }
+
+    @Override
+    public void shutdown() {
+        queue.shutdown();
+        delegate.shutdown();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return queue.getDroppedCount() + delegate.getDroppedCount();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * The output written from the background thread.
+     */
+    public LogOutput getDelegate() {
+        return delegate;
+    }
+}
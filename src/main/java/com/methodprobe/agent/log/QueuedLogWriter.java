@@ -0,0 +1,215 @@
+package com.methodprobe.agent.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue of log entries drained by one background thread, shared by
+ * the outputs that take entries as objects.
+ *
+ * Business threads only offer into a lock-free ring buffer, applying the
+ * drop policy when it is full. The writer thread hands the entries to a
+ * {@link BatchWriter} in batches and asks it to flush whenever the queue runs
+ * empty, at least every flush interval, and on {@link #flush()}.
+ */
+final class QueuedLogWriter {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final long FLUSH_TIMEOUT_MS = 5000;
+
+    /**
+     * Marks a queued event as the root of a call tree.
+     */
+    static final class Tree {
+        final MethodEvent root;
+
+        Tree(MethodEvent root) {
+            this.root = root;
+        }
+    }
+
+    /**
+     * Receives drained entries on the writer thread.
+     */
+    interface BatchWriter {
+        /**
+         * @param batch {@link MethodEvent}, {@link Tree} or String entries; empty
+         *              when the writer only asks for a flush
+         * @param flush whether buffered output should be written out now
+         */
+        void writeBatch(List<Object> batch, boolean flush);
+    }
+
+    private final MpscRingBuffer<Object> queue;
+    private final DropPolicy dropPolicy;
+    private final long flushIntervalMs;
+    private final BatchWriter writer;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong flushRequests = new AtomicLong();
+    private volatile long flushesDone;
+    private volatile boolean writerParked;
+    private Thread writerThread;
+
+    /**
+     * @param bufferSize      max size of the queue (rounded up to a power of two)
+     * @param flushIntervalMs max delay between flushes under load
+     * @param dropPolicy      which entry to drop when the queue is full
+     * @param writer          called on the writer thread with each batch
+     */
+    QueuedLogWriter(int bufferSize, long flushIntervalMs, DropPolicy dropPolicy, BatchWriter writer) {
+        this.queue = new MpscRingBuffer<>(bufferSize);
+        this.dropPolicy = dropPolicy;
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.writer = writer;
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    void start(String threadName) {
+        writerThread = new Thread(this::writerLoop, threadName);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    void offer(Object item) {
+        if (!running.get()) {
+            return;
+        }
+        if (!queue.offer(item)) {
+            if (dropPolicy == DropPolicy.NEWEST || !evictAndOffer(item)) {
+                droppedCount.incrementAndGet();
+            }
+        }
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private boolean evictAndOffer(Object item) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            if (queue.poll() != null) {
+                droppedCount.incrementAndGet();
+            }
+            if (queue.offer(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writerLoop() {
+        List<Object> batch = new ArrayList<>(BATCH_SIZE);
+        long lastFlushTime = System.currentTimeMillis();
+
+        while (running.get() || !queue.isEmpty()) {
+            // Read before draining: an empty drain then proves that everything
+            // queued before the request has been written
+            long requested = flushRequests.get();
+            queue.drainTo(batch, BATCH_SIZE);
+            long now = System.currentTimeMillis();
+            if (batch.isEmpty()) {
+                if (requested > flushesDone || now - lastFlushTime >= flushIntervalMs) {
+                    writeBatch(batch, true);
+                    lastFlushTime = now;
+                    flushesDone = requested;
+                }
+                if (running.get()) {
+                    writerParked = true;
+                    if (queue.isEmpty() && flushRequests.get() == requested) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+                    }
+                    writerParked = false;
+                }
+                continue;
+            }
+
+            boolean flush = queue.isEmpty() || now - lastFlushTime >= flushIntervalMs;
+            writeBatch(batch, flush);
+            batch.clear();
+            if (flush) {
+                lastFlushTime = now;
+            }
+        }
+        flushesDone = Long.MAX_VALUE;
+    }
+
+    private void writeBatch(List<Object> batch, boolean flush) {
+        try {
+            writer.writeBatch(batch, flush);
+        } catch (Exception e) {
+            // Keep the thread alive; one bad batch must not stop the sink
+            droppedCount.addAndGet(batch.size());
+            System.err.println("[MethodProbe] Error writing log batch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wait until everything queued so far has been passed to the writer and
+     * flushed, including the batch it is writing now. Gives up after a few
+     * seconds if producers keep the queue from running empty.
+     */
+    void flush() {
+        Thread thread = writerThread;
+        if (thread == null || Thread.currentThread() == thread) {
+            return;
+        }
+        long ticket = flushRequests.incrementAndGet();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+        LockSupport.unpark(thread);
+        while (flushesDone < ticket && thread.isAlive() && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stop accepting entries and wait for the writer to drain the queue.
+     */
+    void shutdown() {
+        running.set(false);
+        Thread thread = writerThread;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Take whatever the writer left behind, e.g. after shutdown timed out.
+     * Only call once the writer thread has stopped.
+     */
+    void drainRemaining(List<Object> batch) {
+        queue.drainTo(batch, Integer.MAX_VALUE);
+    }
+
+    boolean isWriterAlive() {
+        Thread thread = writerThread;
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * Count an entry the writer failed to deliver.
+     */
+    void countDropped() {
+        droppedCount.incrementAndGet();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    int size() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,161 @@
+package com.methodprobe.agent.log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Background housekeeping for rotated log files: gzip them and enforce the
+ * max-file retention count.
+ *
+ * Runs on a single low-priority daemon thread so compression never competes
+ * with the log writer or business threads.
+ *
+ * Retention only counts this writer's own dated files
+ * (prefix + yyyy-MM-dd[.N] + suffix[.gz]); other sinks share the directory
+ * and the "method-probe-" prefix.
+ */
+class RolledLogCompressor {
+
+    static final String GZIP_SUFFIX = ".gz";
+
+    private final Path logDir;
+    private final String filePrefix;
+    private final Pattern ownFiles;
+    private final int maxFiles;
+    private final boolean compress;
+    private final ExecutorService executor;
+
+    /**
+     * @param logDir     directory holding the log files
+     * @param filePrefix prefix shared by all log files (e.g. "method-probe-")
+     * @param fileSuffix suffix of the log files before any ".gz" (e.g. ".log")
+     * @param maxFiles   max number of log files to keep, 0 = unlimited
+     * @param compress   whether rotated files are gzipped
+     */
+    RolledLogCompressor(Path logDir, String filePrefix, String fileSuffix, int maxFiles, boolean compress) {
+        this.logDir = logDir;
+        this.filePrefix = filePrefix;
+        this.ownFiles = Pattern.compile(Pattern.quote(filePrefix) + "\\d{4}-\\d{2}-\\d{2}(\\.\\d+)?"
+                + Pattern.quote(fileSuffix) + "(" + Pattern.quote(GZIP_SUFFIX) + ")?");
+        this.maxFiles = maxFiles;
+        this.compress = compress;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "MethodProbe-LogCompressor");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+    }
+
+    /**
+     * Compress a rotated file (if enabled) and apply retention.
+     *
+     * @param activeFile the file currently being written, never deleted
+     */
+    void submit(Path rotated, Path activeFile) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.submit(() -> {
+            if (compress && rotated != null) {
+                gzip(rotated);
+            }
+            enforceRetention(activeFile);
+        });
+    }
+
+    private void gzip(Path file) {
+        Path target = file.resolveSibling(file.getFileName() + GZIP_SUFFIX);
+        Path partial = file.resolveSibling(file.getFileName() + GZIP_SUFFIX + ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(file);
+                    OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), 64 * 1024)) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(file);
+        } catch (IOException e) {
+            System.err.println("[MethodProbe] Failed to compress " + file + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // best effort
+            }
+        }
+    }
+
+    /**
+     * Delete the oldest log files beyond maxFiles.
+     */
+    void enforceRetention(Path activeFile) {
+        if (maxFiles <= 0) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(logDir, filePrefix + "*")) {
+            for (Path file : stream) {
+                // Partial .gz.tmp files and other sinks' files never match
+                if (ownFiles.matcher(file.getFileName().toString()).matches() && !file.equals(activeFile)) {
+                    files.add(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[MethodProbe] Failed to list log files: " + e.getMessage());
+            return;
+        }
+
+        // The active file counts towards the limit
+        int excess = files.size() + 1 - maxFiles;
+        if (excess <= 0) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(RolledLogCompressor::lastModified));
+        for (int i = 0; i < excess; i++) {
+            try {
+                Files.deleteIfExists(files.get(i));
+            } catch (IOException e) {
+                System.err.println("[MethodProbe] Failed to delete old log " + files.get(i) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Finish pending work, waiting at most the given time.
+     */
+    void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
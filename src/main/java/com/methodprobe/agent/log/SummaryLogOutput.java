@@ -0,0 +1,162 @@
+package com.methodprobe.agent.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Summary sink: aggregates calls per method and, once per interval, appends
+ * a table of the slowest methods (by total time) to
+ * method-probe-summary.log.
+ *
+ * Not thread-safe; run it behind a {@link QueuedLogOutput}, whose periodic
+ * flush closes the window even when no events arrive.
+ */
+public class SummaryLogOutput implements LogOutput {
+
+    static final String FILE_NAME = "method-probe-summary.log";
+    private static final int MAX_ROWS = 50;
+
+    private final File file;
+    private final long intervalMs;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private final Map<String, Stat> stats = new HashMap<>();
+    private long windowStart;
+
+    /**
+     * Per-method counters of the current window.
+     */
+    static final class Stat {
+        final String method;
+        long calls;
+        long errors;
+        long totalNanos;
+        long maxNanos;
+
+        Stat(String method) {
+            this.method = method;
+        }
+    }
+
+    /**
+     * @param logDir     directory for the summary file
+     * @param intervalMs length of one summary window
+     */
+    public SummaryLogOutput(String logDir, long intervalMs) {
+        File dir = new File(logDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        this.file = new File(dir, FILE_NAME);
+        this.intervalMs = Math.max(1, intervalMs);
+        this.windowStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Free-form messages carry no timing, so they are not summarized.
+     */
+    @Override
+    public void write(String message) {
+    }
+
+    @Override
+    public void writeEvent(MethodEvent event) {
+        record(event);
+    }
+
+    /**
+     * Every call in the tree counts, not just the entry method.
+     */
+    @Override
+    public void writeTree(MethodEvent root) {
+        record(root);
+        for (MethodEvent child : root.getChildren()) {
+            writeTree(child);
+        }
+    }
+
+    private void record(MethodEvent event) {
+        Stat stat = stats.get(event.getMethodName());
+        if (stat == null) {
+            stat = new Stat(event.getMethodName());
+            stats.put(event.getMethodName(), stat);
+        }
+        stat.calls++;
+        if (event.hasException()) {
+            stat.errors++;
+        }
+        stat.totalNanos += event.getDurationNanos();
+        stat.maxNanos = Math.max(stat.maxNanos, event.getDurationNanos());
+    }
+
+    /**
+     * Append the summary once the current window has elapsed.
+     */
+    @Override
+    public void flush() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= intervalMs) {
+            emit(now);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        emit(System.currentTimeMillis());
+    }
+
+    private void emit(long now) {
+        if (!stats.isEmpty()) {
+            try {
+                Files.write(file.toPath(), format(windowStart, now).getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("[MethodProbe] Error writing summary: " + e.getMessage());
+            }
+            stats.clear();
+        }
+        windowStart = now;
+    }
+
+    /**
+     * Render the current window as a text table.
+     */
+    String format(long from, long to) {
+        List<Stat> rows = new ArrayList<>(stats.values());
+        rows.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        long calls = 0;
+        for (Stat stat : rows) {
+            calls += stat.calls;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append('[').append(timeFormat.format(new Date(from))).append(" - ")
+                .append(timeFormat.format(new Date(to))).append("] [MethodProbe] Summary: ")
+                .append(calls).append(" calls, ").append(rows.size()).append(" methods\n");
+        sb.append(String.format(Locale.ROOT, "%10s %8s %10s %10s %12s  %s%n",
+                "calls", "errors", "avg ms", "max ms", "total ms", "method"));
+        for (int i = 0; i < rows.size() && i < MAX_ROWS; i++) {
+            Stat stat = rows.get(i);
+            sb.append(String.format(Locale.ROOT, "%10d %8d %10.2f %10.2f %12.2f  %s%n",
+                    stat.calls, stat.errors, stat.totalNanos / 1_000_000.0 / stat.calls,
+                    stat.maxNanos / 1_000_000.0, stat.totalNanos / 1_000_000.0, stat.method));
+        }
+        if (rows.size() > MAX_ROWS) {
+            sb.append("  ... ").append(rows.size() - MAX_ROWS).append(" more methods\n");
+        }
+        return sb.append('\n').toString();
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,122 @@
+package com.methodprobe.agent.log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import com.methodprobe.agent.snapshot.SnapshotIdGenerator;
+
+/**
+ * Renders method events as the human-readable text written by the console
+ * and file outputs.
+ */
+public class TextLogFormatter {
+
+    private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    private TextLogFormatter() {
+    }
+
+    /**
+     * Text of a flat event, formatted once and shared by every sink that
+     * writes it (file, console, live stream). An event is logged either flat
+     * or as a tree root, never both, so one cache slot is enough.
+     */
+    public static String flatText(MethodEvent event) {
+        String text = event.getText();
+        if (text == null) {
+            text = formatFlat(event);
+            event.setText(text);
+        }
+        return text;
+    }
+
+    /**
+     * Text of a call tree, formatted once and shared like {@link #flatText}.
+     */
+    public static String treeText(MethodEvent root) {
+        String text = root.getText();
+        if (text == null) {
+            text = formatTree(root);
+            root.setText(text);
+        }
+        return text;
+    }
+
+    /**
+     * Format a flat probe line, e.g.
+     * {@code [2026-01-12 10:00:00.000] [MethodProbe] [main] com.Foo.bar - 12.34 ms [snap:...]}
+     */
+    public static String formatFlat(MethodEvent event) {
+        String timestamp = new SimpleDateFormat(TIMESTAMP_PATTERN).format(new Date(endMillis(event)));
+        StringBuilder sb = new StringBuilder(128);
+        sb.append('[').append(timestamp).append("] [MethodProbe] [").append(event.getThreadName()).append("] ");
+        sb.append(event.getMethodName()).append(" - ").append(String.format("%.2f ms", event.getDurationMs()));
+        appendTags(sb, event);
+        sb.append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    /**
+     * Format a call tree with box-drawing borders and branches.
+     */
+    public static String formatTree(MethodEvent root) {
+        String timestamp = new SimpleDateFormat(TIMESTAMP_PATTERN).format(new Date(endMillis(root)));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n");
+        sb.append("╔══════════════════════════════════════════════════════════════════════════════\n");
+        sb.append(String.format("║ [%s] [%s] Method Call Tree\n", timestamp, root.getThreadName()));
+        if (root.hasException()) {
+            sb.append(String.format("║ ⚠ Exception: %s\n", root.getExceptionClass()));
+        }
+        sb.append("╠══════════════════════════════════════════════════════════════════════════════\n");
+
+        appendNode(sb, root, "", true);
+
+        sb.append("╚══════════════════════════════════════════════════════════════════════════════\n");
+        return sb.toString();
+    }
+
+    /**
+     * Recursively append a node and its children with tree branches.
+     */
+    private static void appendNode(StringBuilder sb, MethodEvent node, String prefix, boolean isLast) {
+        sb.append("║ ");
+        sb.append(prefix);
+        sb.append(isLast ? "└── " : "├── ");
+        sb.append(node.getMethodName());
+        sb.append(" - ");
+        sb.append(String.format("%.2f ms", node.getDurationMs()));
+        appendTags(sb, node);
+        sb.append("\n");
+
+        String childPrefix = prefix + (isLast ? "    " : "│   ");
+        List<MethodEvent> children = node.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            appendNode(sb, children.get(i), childPrefix, i == children.size() - 1);
+        }
+    }
+
+    private static void appendTags(StringBuilder sb, MethodEvent event) {
+        if (event.hasException()) {
+            sb.append(" [EXCEPTION: ").append(simpleName(event.getExceptionClass())).append(']');
+        }
+        if (event.getSnapshotId() != 0) {
+            sb.append(" [snap:").append(SnapshotIdGenerator.toString(event.getSnapshotId())).append(']');
+        }
+    }
+
+    static long endMillis(MethodEvent event) {
+        return event.getStartMillis() + event.getDurationNanos() / 1_000_000;
+    }
+
+    /**
+     * Simple name of a fully qualified class name, matching Class.getSimpleName
+     * for top-level and nested classes.
+     */
+    static String simpleName(String className) {
+        int cut = Math.max(className.lastIndexOf('.'), className.lastIndexOf('$'));
+        return className.substring(cut + 1);
+    }
+}
@@ -1,25 +1,59 @@
 package com.methodprobe.agent.log;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import org.java_websocket.WebSocket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Manages WebSocket server for real-time log broadcasting.
- * Uses async queue to prevent blocking business threads.
+ *
+ * Business threads only enqueue events into a lock-free ring buffer (and
+ * only while a client is connected). A single broadcast thread wakes every
+ * batch interval and sends each client one frame: a JSON array of the log
+ * entries that pass the client's {@link LogFilter}. Each entry is formatted
+ * at most once per batch, and only if some client wants it; clients with the
+ * same filter share the frame. Clients that fall behind by more than the
+ * per-client buffer are disconnected.
  */
 public class WebSocketLogManager {
 
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int MAX_FRAME_ENTRIES = 1000;
+
     private static LogWebSocketServer wsServer;
     private static int port;
-    private static final BlockingQueue<String> messageQueue = new LinkedBlockingQueue<>(10000);
+    private static long batchIntervalMs = 100;
+    private static long clientBufferBytes = 1024 * 1024;
+    private static final MpscRingBuffer<Object> messageQueue = new MpscRingBuffer<>(QUEUE_CAPACITY);
     private static Thread broadcastThread;
     private static volatile boolean running = false;
 
+    private static final AtomicLong droppedMessages = new AtomicLong();
+    private static final AtomicLong framesSent = new AtomicLong();
+
     public static synchronized void init(int port) {
+        init(port, batchIntervalMs, clientBufferBytes);
+    }
+
+    /**
+     * Start the WebSocket server and the broadcast thread.
+     *
+     * @param port              WebSocket port
+     * @param batchIntervalMs   how often queued entries are sent as one frame
+     * @param clientBufferBytes max unsent bytes per client before it is dropped
+     */
+    public static synchronized void init(int port, long batchIntervalMs, long clientBufferBytes) {
         if (wsServer == null) {
             try {
                 WebSocketLogManager.port = port;
+                WebSocketLogManager.batchIntervalMs = Math.max(1, batchIntervalMs);
+                WebSocketLogManager.clientBufferBytes = clientBufferBytes;
                 wsServer = new LogWebSocketServer(port);
                 wsServer.start();
 
@@ -35,23 +69,25 @@ public class WebSocketLogManager {
     }
 
     /**
-     * Start dedicated thread for async message broadcasting.
+     * Start dedicated thread for batched message broadcasting.
      */
     private static void startBroadcastThread() {
         running = true;
         broadcastThread = new Thread(() -> {
+            List<Object> batch = new ArrayList<>(MAX_FRAME_ENTRIES);
             while (running) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(batchIntervalMs));
                 try {
-                    // Block until message available (with timeout for graceful shutdown)
-                    String message = messageQueue.poll(1, TimeUnit.SECONDS);
-                    if (message != null && wsServer != null && wsServer.hasClients()) {
-                        wsServer.broadcastLog(message);
+                    while (messageQueue.drainTo(batch, MAX_FRAME_ENTRIES) > 0) {
+                        LogWebSocketServer server = wsServer;
+                        if (server != null && server.hasClients()) {
+                            sendBatch(server, batch);
+                        }
+                        batch.clear();
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
                 } catch (Exception e) {
                     // Continue on error to keep thread alive
+                    batch.clear();
                     System.err.println("[MethodProbe] Broadcast error: " + e.getMessage());
                 }
             }
@@ -60,17 +96,103 @@ public class WebSocketLogManager {
         broadcastThread.start();
     }
 
+    /**
+     * Send one batch to every client, filtered per client.
+     */
+    private static void sendBatch(LogWebSocketServer server, List<Object> batch) {
+        String[] rendered = new String[batch.size()];
+        Map<LogFilter, String> frames = new HashMap<>();
+        Map<LogFilter, Long> frameBytes = new HashMap<>();
+        for (WebSocket client : server.getClients()) {
+            if (!client.isOpen()) {
+                continue;
+            }
+            LogFilter filter = LogWebSocketServer.filterOf(client);
+            String frame = frames.get(filter);
+            if (frame == null && !frames.containsKey(filter)) {
+                frame = toFrame(batch, rendered, filter);
+                frames.put(filter, frame);
+                if (frame != null) {
+                    frameBytes.put(filter, LogWebSocketServer.utf8Length(frame));
+                }
+            }
+            if (frame != null && server.send(client, frame, frameBytes.get(filter), clientBufferBytes)) {
+                framesSent.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Format queued entries into one frame: a JSON array of log text.
+     */
+    static String toFrame(List<Object> batch) {
+        return toFrame(batch, new String[batch.size()], LogFilter.ALL);
+    }
+
+    /**
+     * Format the entries passing the filter into one frame, reusing entries
+     * already formatted for another client.
+     *
+     * @return the frame, or null if no entry passes
+     */
+    static String toFrame(List<Object> batch, String[] rendered, LogFilter filter) {
+        StringBuilder frame = null;
+        for (int i = 0; i < batch.size(); i++) {
+            Object entry = batch.get(i);
+            if (!filter.matches(entry)) {
+                continue;
+            }
+            if (frame == null) {
+                frame = new StringBuilder(batch.size() * 128).append('[');
+            } else {
+                frame.append(',');
+            }
+            if (rendered[i] == null) {
+                rendered[i] = render(entry);
+            }
+            JsonLinesLogOutput.appendQuoted(frame, rendered[i]);
+        }
+        return frame != null ? frame.append(']').toString() : null;
+    }
+
+    private static String render(Object item) {
+        if (item instanceof MethodEvent) {
+            return TextLogFormatter.flatText((MethodEvent) item);
+        }
+        if (item instanceof QueuedLogWriter.Tree) {
+            return TextLogFormatter.treeText(((QueuedLogWriter.Tree) item).root);
+        }
+        return (String) item;
+    }
+
+    /**
+     * True when at least one client is connected, so callers can skip
+     * building anything for the stream otherwise.
+     */
+    public static boolean isActive() {
+        LogWebSocketServer server = wsServer;
+        return server != null && server.hasClients();
+    }
+
     /**
      * Async broadcast: enqueue message without blocking.
-     * If queue is full, silently drop message to prevent memory issues.
+     * If queue is full, drop the message (counted) to prevent memory issues.
      */
     public static void broadcast(String message) {
-        if (wsServer != null && wsServer.hasClients()) {
-            // Non-blocking offer: returns false if queue full
-            if (!messageQueue.offer(message)) {
-                // Queue full - drop message silently
-                // Alternative: could log warning, but that might cause recursion
-            }
+        enqueue(message);
+    }
+
+    public static void broadcastEvent(MethodEvent event) {
+        enqueue(event);
+    }
+
+    public static void broadcastTree(MethodEvent root) {
+        enqueue(new QueuedLogWriter.Tree(root));
+    }
+
+    private static void enqueue(Object item) {
+        if (isActive() && !messageQueue.offer(item)) {
+            droppedMessages.incrementAndGet();
         }
     }
 
@@ -82,7 +204,7 @@ public class WebSocketLogManager {
                 // Stop broadcast thread
                 running = false;
                 if (broadcastThread != null) {
-                    broadcastThread.interrupt();
+                    LockSupport.unpark(broadcastThread);
                     try {
                         broadcastThread.join(2000); // Wait up to 2 seconds
                     } catch (InterruptedException e) {
@@ -91,7 +213,9 @@ public class WebSocketLogManager {
                 }
 
                 // Clear queue
-                messageQueue.clear();
+                while (messageQueue.poll() != null) {
+                    // discard
+                }
 
                 // Stop WebSocket server
                 wsServer.stop();
@@ -105,4 +229,25 @@ public class WebSocketLogManager {
     public static int getPort() {
         return port;
     }
+
+    public static int getClientCount() {
+        LogWebSocketServer server = wsServer;
+        return server != null ? server.getClientCount() : 0;
+    }
+
+    /**
+     * Entries dropped because the broadcast queue was full.
+     */
+    public static long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public static long getDroppedClients() {
+        LogWebSocketServer server = wsServer;
+        return server != null ? server.getDroppedClients() : 0;
+    }
+
+    public static long getFramesSent() {
+        return framesSent.get();
+    }
 }
@@ -0,0 +1,37 @@
+package com.methodprobe.agent.log;
+
+/**
+ * Live log stream sink: while a monitor is connected, queues entries for the
+ * WebSocket broadcast thread.
+ *
+ * Nothing is formatted on the calling thread: events are handed over as
+ * objects and formatted by the broadcast thread, reusing text already
+ * formatted by another sink.
+ */
+public class WebSocketLogOutput implements LogOutput {
+
+    @Override
+    public void write(String message) {
+        WebSocketLogManager.broadcast(message);
+    }
+
+    @Override
+    public void writeEvent(MethodEvent event) {
+        WebSocketLogManager.broadcastEvent(event);
+    }
+
+    @Override
+    public void writeTree(MethodEvent root) {
+        WebSocketLogManager.broadcastTree(root);
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return WebSocketLogManager.getDroppedMessages();
+    }
+
+    @Override
+    public void shutdown() {
+        WebSocketLogManager.stop();
+    }
+}
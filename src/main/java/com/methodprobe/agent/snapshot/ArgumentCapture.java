@@ -0,0 +1,204 @@
+package com.methodprobe.agent.snapshot;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+/**
+ * Cheap argument capture for async snapshot mode.
+ *
+ * Runs on the business thread and avoids Kryo wherever the argument cannot
+ * change after the call: immutable values are kept by reference, and arrays
+ * or collections of immutable values are shallow-copied up to
+ * {@code probe.snapshot.async.copy.max} elements. Only JDK collection types
+ * with a copy of the same type (keeping e.g. a TreeMap's comparator) are
+ * copied, so async snapshots record the same types as sync ones. Anything
+ * else (mutable objects, other containers, oversized ones) is serialized
+ * immediately so the snapshot still reflects the state at capture time.
+ *
+ * The deferred values are serialized later by {@link #serializeCaptured}.
+ */
+public class ArgumentCapture {
+
+    private static final Set<Class<?>> VALUE_TYPES = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class, UUID.class));
+
+    /** Collection types copied as the same type, by exact class */
+    private static final Map<Class<?>, UnaryOperator<Object>> COPIERS = new HashMap<>();
+
+    static {
+        COPIERS.put(ArrayList.class, c -> new ArrayList<>((Collection<?>) c));
+        COPIERS.put(LinkedList.class, c -> new LinkedList<>((Collection<?>) c));
+        COPIERS.put(ArrayDeque.class, c -> ((ArrayDeque<?>) c).clone());
+        COPIERS.put(HashSet.class, c -> new HashSet<>((Collection<?>) c));
+        COPIERS.put(LinkedHashSet.class, c -> new LinkedHashSet<>((Collection<?>) c));
+        COPIERS.put(TreeSet.class, c -> ((TreeSet<?>) c).clone());
+        COPIERS.put(HashMap.class, m -> new HashMap<>((Map<?, ?>) m));
+        COPIERS.put(LinkedHashMap.class, m -> new LinkedHashMap<>((Map<?, ?>) m));
+        COPIERS.put(TreeMap.class, m -> ((TreeMap<?, ?>) m).clone());
+        COPIERS.put(IdentityHashMap.class, m -> ((IdentityHashMap<?, ?>) m).clone());
+        COPIERS.put(EnumMap.class, m -> ((EnumMap<?, ?>) m).clone());
+    }
+
+    private static final AtomicLong deferredArgs = new AtomicLong();
+    private static final AtomicLong eagerArgs = new AtomicLong();
+
+    /**
+     * Capture arguments into the snapshot. Deferred values go to
+     * capturedArgs, eagerly serialized ones to serializedArgs.
+     */
+    public static void capture(MethodSnapshot snapshot, Object[] args) {
+        if (args == null || args.length == 0) {
+            snapshot.setSerializedArgs(new byte[0][]);
+            return;
+        }
+        int copyMax = AgentConfig.snapshotAsyncCopyMax;
+        byte[][] serialized = new byte[args.length][];
+        Object[] captured = null;
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null) {
+                continue;
+            }
+            Object value = copyIfSafe(arg, copyMax);
+            if (value != null) {
+                if (captured == null) {
+                    captured = new Object[args.length];
+                }
+                captured[i] = value;
+                deferredArgs.incrementAndGet();
+            } else {
+                serialized[i] = SnapshotSerializer.serialize(arg);
+                eagerArgs.incrementAndGet();
+            }
+        }
+        snapshot.setSerializedArgs(serialized);
+        snapshot.setCapturedArgs(captured);
+    }
+
+    /** Arguments whose serialization was moved off the business thread */
+    public static long getDeferredArgs() {
+        return deferredArgs.get();
+    }
+
+    /** Arguments that had to be serialized on the business thread in async mode */
+    public static long getEagerArgs() {
+        return eagerArgs.get();
+    }
+
+    /**
+     * Serialize values deferred by {@link #capture} and captured exception
+     * info. Called off the business thread.
+     */
+    public static void serializeCaptured(MethodSnapshot snapshot) {
+        Object[] captured = snapshot.getCapturedArgs();
+        if (captured != null) {
+            byte[][] serialized = snapshot.getSerializedArgs();
+            for (int i = 0; i < captured.length && i < serialized.length; i++) {
+                if (captured[i] != null) {
+                    serialized[i] = SnapshotSerializer.serialize(captured[i]);
+                }
+            }
+            snapshot.setCapturedArgs(null);
+        }
+        ExceptionInfo exception = snapshot.getCapturedException();
+        if (exception != null) {
+            snapshot.setSerializedException(SnapshotSerializer.serialize(exception));
+            snapshot.setCapturedException(null);
+        }
+    }
+
+    /**
+     * Whether a value can be kept by reference because it never changes.
+     */
+    static boolean isImmutable(Object value) {
+        Class<?> type = value.getClass();
+        return VALUE_TYPES.contains(type)
+                || type.isEnum()
+                || (type.getName().startsWith("java.time.") && !type.isArray())
+                || AgentConfig.isSnapshotValueClass(type.getName());
+    }
+
+    /**
+     * Return the argument itself if immutable, a shallow copy of the same type
+     * if it is a small array or known JDK container of immutable values, or
+     * null if it must be serialized now.
+     */
+    private static Object copyIfSafe(Object arg, int copyMax) {
+        if (isImmutable(arg)) {
+            return arg;
+        }
+        try {
+            Class<?> type = arg.getClass();
+            if (type.isArray()) {
+                int length = Array.getLength(arg);
+                if (length > copyMax) {
+                    return null;
+                }
+                if (type.getComponentType().isPrimitive()) {
+                    Object copy = Array.newInstance(type.getComponentType(), length);
+                    System.arraycopy(arg, 0, copy, 0, length);
+                    return copy;
+                }
+                Object[] copy = ((Object[]) arg).clone();
+                return allImmutable(Arrays.asList(copy)) ? copy : null;
+            }
+            if (arg instanceof EnumSet) {
+                // Enum constants are immutable; the concrete class is JDK-internal
+                return ((EnumSet<?>) arg).clone();
+            }
+            UnaryOperator<Object> copier = COPIERS.get(type);
+            if (copier == null) {
+                // Unknown or unmodifiable container: a copy would change its type
+                return null;
+            }
+            if (arg instanceof Collection) {
+                if (((Collection<?>) arg).size() > copyMax) {
+                    return null;
+                }
+                Collection<?> copy = (Collection<?>) copier.apply(arg);
+                return allImmutable(copy) ? copy : null;
+            }
+            if (((Map<?, ?>) arg).size() > copyMax) {
+                return null;
+            }
+            Map<?, ?> copy = (Map<?, ?>) copier.apply(arg);
+            return allImmutable(copy.keySet()) && allImmutable(copy.values()) ? copy : null;
+        } catch (RuntimeException e) {
+            // Concurrent modification while copying - fall back to serializing now
+        }
+        return null;
+    }
+
+    private static boolean allImmutable(Collection<?> values) {
+        for (Object value : values) {
+            if (value != null && !isImmutable(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
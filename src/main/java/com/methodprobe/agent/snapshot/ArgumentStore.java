@@ -0,0 +1,210 @@
+package com.methodprobe.agent.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed storage for serialized arguments.
+ *
+ * Each snapshot directory ({dir}/{date}/) holds one or more blob segments
+ * (args-*.blobs) in MTSS v2 format. A serialized argument is keyed by its
+ * xxHash64 and written once per segment; snapshot records refer to it by hash
+ * instead of embedding the bytes again. A new segment is started per writer
+ * process and day, so a torn tail left by a crash is never appended to.
+ *
+ * Writer-side instances are NOT thread-safe and are owned by the snapshot
+ * writer thread.
+ */
+public class ArgumentStore {
+
+    static final String SEGMENT_PREFIX = "args-";
+    static final String SEGMENT_SUFFIX = ".blobs";
+
+    /** Bound on remembered hashes; when exceeded, blobs may be stored again */
+    private static final int MAX_TRACKED_HASHES = 100_000;
+
+    private static final AtomicLong dedupHits = new AtomicLong();
+    private static final AtomicLong dedupBytesSaved = new AtomicLong();
+
+    /** Reader-side index cache, keyed by snapshot directory */
+    private static final Map<Path, Index> INDEX_CACHE = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final Set<Long> storedHashes = new HashSet<>();
+    private DataOutputStream out;
+
+    public ArgumentStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Store a serialized argument once per segment.
+     *
+     * @return the content hash to reference it by
+     */
+    public long put(byte[] data) throws IOException {
+        long hash = XxHash64.hash(data);
+        if (storedHashes.contains(hash)) {
+            dedupHits.incrementAndGet();
+            dedupBytesSaved.addAndGet(data.length);
+            return hash;
+        }
+
+        if (out == null) {
+            Path segment = dir.resolve(SEGMENT_PREFIX + System.currentTimeMillis() + SEGMENT_SUFFIX);
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment)));
+            SnapshotFormat.writeHeader(out);
+        }
+
+        SnapshotFormat.FieldWriter w = new SnapshotFormat.FieldWriter(SnapshotFormat.RECORD_ARG_BLOB);
+        w.int64(SnapshotFormat.TAG_BLOB_HASH, hash);
+        w.bytes(SnapshotFormat.TAG_BLOB_DATA, data);
+        SnapshotFormat.writeRecord(out, w.toByteArray());
+        // The blob must reach the file before any snapshot that references it
+        out.flush();
+
+        if (storedHashes.size() >= MAX_TRACKED_HASHES) {
+            storedHashes.clear();
+        }
+        storedHashes.add(hash);
+        return hash;
+    }
+
+    /**
+     * Close the current segment.
+     */
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("[MethodProbe] Error closing argument segment: " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    public static long getDedupHits() {
+        return dedupHits.get();
+    }
+
+    public static long getDedupBytesSaved() {
+        return dedupBytesSaved.get();
+    }
+
+    // ==================== Reader Side ====================
+
+    /**
+     * Replace argument references in a decoded snapshot with the stored bytes.
+     * Arguments whose blob cannot be found are left null.
+     *
+     * @param dir directory the snapshot file was read from
+     */
+    static void resolve(MethodSnapshot snapshot, Path dir) throws IOException {
+        long[] refs = snapshot.getArgRefs();
+        byte[][] args = snapshot.getSerializedArgs();
+        if (refs == null || args == null) {
+            return;
+        }
+        Path key = dir.toAbsolutePath().normalize();
+        Index index = INDEX_CACHE.get(key);
+        for (int i = 0; i < refs.length && i < args.length; i++) {
+            if (refs[i] == 0) {
+                continue;
+            }
+            if (index == null || !index.contains(refs[i])) {
+                // Segment may have grown since it was indexed
+                index = Index.load(key);
+                INDEX_CACHE.put(key, index);
+            }
+            args[i] = index.read(refs[i]);
+        }
+    }
+
+    /**
+     * Location of every intact blob in a directory's segments.
+     */
+    static final class Index {
+        private final Map<Long, Path> files = new HashMap<>();
+        private final Map<Long, long[]> locations = new HashMap<>(); // {offset, length}
+
+        static Index load(Path dir) throws IOException {
+            Index index = new Index();
+            if (!Files.isDirectory(dir)) {
+                return index;
+            }
+            try (DirectoryStream<Path> segments = Files.newDirectoryStream(dir,
+                    SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path segment : segments) {
+                    index.scan(segment);
+                }
+            }
+            return index;
+        }
+
+        private void scan(Path segment) throws IOException {
+            long size = Files.size(segment);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+                byte[] magic = new byte[4];
+                in.readFully(magic);
+                int version = in.readInt();
+                if (version < SnapshotFormat.VERSION_2) {
+                    return;
+                }
+                int headerLength = SnapshotFormat.readHeaderV2(in);
+                SnapshotFormat.readRecords(in, headerLength, size - headerLength, (payload, payloadOffset) -> {
+                    if (payload[0] != SnapshotFormat.RECORD_ARG_BLOB) {
+                        return;
+                    }
+                    long hash = 0;
+                    long[] location = null;
+                    SnapshotFormat.FieldReader r = new SnapshotFormat.FieldReader(payload, 1);
+                    while (r.next()) {
+                        if (r.tag == SnapshotFormat.TAG_BLOB_HASH) {
+                            hash = r.int64();
+                        } else if (r.tag == SnapshotFormat.TAG_BLOB_DATA) {
+                            location = new long[] { payloadOffset + r.valueOffset(), r.valueLength() };
+                        }
+                    }
+                    if (location != null && !locations.containsKey(hash)) {
+                        files.put(hash, segment);
+                        locations.put(hash, location);
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("[MethodProbe] Skipping unreadable argument segment " + segment
+                        + ": " + e.getMessage());
+            }
+        }
+
+        boolean contains(long hash) {
+            return locations.containsKey(hash);
+        }
+
+        byte[] read(long hash) throws IOException {
+            long[] location = locations.get(hash);
+            if (location == null) {
+                return null;
+            }
+            byte[] data = new byte[(int) location[1]];
+            try (RandomAccessFile raf = new RandomAccessFile(files.get(hash).toFile(), "r")) {
+                raf.seek(location[0]);
+                raf.readFully(data);
+            }
+            return data;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.methodprobe.agent.snapshot;
+
+/**
+ * CRC-32C (Castagnoli) checksum used by the snapshot file format.
+ * java.util.zip.CRC32C is only available from JDK 9, so this is a small
+ * table-driven implementation that works on JDK 8.
+ */
+public final class Crc32c {
+
+    private static final int POLY = 0x82F63B78; // reflected Castagnoli polynomial
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private Crc32c() {
+    }
+
+    /**
+     * Compute the CRC-32C of a byte range.
+     */
+    public static int compute(byte[] data, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return ~crc;
+    }
+
+    public static int compute(byte[] data) {
+        return compute(data, 0, data.length);
+    }
+}
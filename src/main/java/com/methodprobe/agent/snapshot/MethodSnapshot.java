@@ -9,6 +9,7 @@ public class MethodSnapshot implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private String snapshotId; // Unique ID for log-snapshot correlation
+    private transient long id; // Numeric ID, rendered to snapshotId on first read
     private long timestamp; // Capture timestamp
     private String className; // Fully qualified class name
     private String methodName; // Method name
@@ -16,8 +17,13 @@ public class MethodSnapshot implements Serializable {
     private double durationMs; // Execution duration
     private String[] argTypes; // Argument type names
     private byte[][] serializedArgs; // Serialized arguments (Kryo bytes)
+    private long[] argRefs; // Content hashes of deduplicated args (0 = stored inline)
     private byte[] serializedException; // Serialized exception if any
 
+    // Async mode: values captured on the business thread, serialized later
+    private transient Object[] capturedArgs;
+    private transient ExceptionInfo capturedException;
+
     public MethodSnapshot() {
     }
 
@@ -32,9 +38,21 @@ public class MethodSnapshot implements Serializable {
     }
 
     public String getSnapshotId() {
+        if (snapshotId == null && id != 0) {
+            snapshotId = SnapshotIdGenerator.toString(id);
+        }
         return snapshotId;
     }
 
+    /**
+     * Set a numeric ID from {@link SnapshotIdGenerator#next()}; it is rendered
+     * as text only when the snapshot is written.
+     */
+    public void setId(long id) {
+        this.id = id;
+        this.snapshotId = null;
+    }
+
     public void setSnapshotId(String snapshotId) {
         this.snapshotId = snapshotId;
     }
@@ -96,6 +114,14 @@ public class MethodSnapshot implements Serializable {
         this.serializedArgs = serializedArgs;
     }
 
+    public long[] getArgRefs() {
+        return argRefs;
+    }
+
+    public void setArgRefs(long[] argRefs) {
+        this.argRefs = argRefs;
+    }
+
     public byte[] getSerializedException() {
         return serializedException;
     }
@@ -104,6 +130,22 @@ public class MethodSnapshot implements Serializable {
         this.serializedException = serializedException;
     }
 
+    public Object[] getCapturedArgs() {
+        return capturedArgs;
+    }
+
+    public void setCapturedArgs(Object[] capturedArgs) {
+        this.capturedArgs = capturedArgs;
+    }
+
+    public ExceptionInfo getCapturedException() {
+        return capturedException;
+    }
+
+    public void setCapturedException(ExceptionInfo capturedException) {
+        this.capturedException = capturedException;
+    }
+
     public String getFullMethodName() {
         return className + "." + methodName;
     }
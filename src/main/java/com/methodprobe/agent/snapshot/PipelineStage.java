@@ -0,0 +1,134 @@
+package com.methodprobe.agent.snapshot;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of the snapshot pipeline: a bounded queue drained by a fixed
+ * number of daemon threads. When the queue is full the oldest task is
+ * dropped, so a burst never blocks business threads.
+ *
+ * Latency is measured from submission to task completion, i.e. it includes
+ * the time spent waiting in the queue.
+ */
+public class PipelineStage {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public PipelineStage(String name, int threads, int capacity) {
+        this.name = name;
+        AtomicInteger threadIndex = new AtomicInteger();
+        RejectedExecutionHandler dropOldest = (r, pool) -> {
+            if (!pool.isShutdown()) {
+                if (pool.getQueue().poll() != null) {
+                    dropped.incrementAndGet();
+                }
+                pool.execute(r);
+            }
+        };
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(capacity, 1)),
+                r -> {
+                    String threadName = threads == 1 ? name : name + "-" + threadIndex.incrementAndGet();
+                    Thread t = new Thread(r, threadName);
+                    t.setDaemon(true);
+                    return t;
+                },
+                dropOldest);
+    }
+
+    /**
+     * Queue a task. Returns false if the stage is shut down.
+     */
+    public boolean submit(Runnable task) {
+        if (executor.isShutdown()) {
+            return false;
+        }
+        long enqueuedAt = System.nanoTime();
+        submitted.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                recordLatency(System.nanoTime() - enqueuedAt);
+            }
+        });
+        return true;
+    }
+
+    private void recordLatency(long nanos) {
+        completed.incrementAndGet();
+        totalLatencyNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxLatencyNanos.get())) {
+            if (maxLatencyNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stop accepting tasks and wait for queued ones to finish.
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public double getAvgLatencyMs() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalLatencyNanos.get() / (double) count / 1_000_000.0;
+    }
+
+    public double getMaxLatencyMs() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,394 @@
+package com.methodprobe.agent.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary layout of snapshot files (MTSS).
+ *
+ * <pre>
+ * v1: magic "MTSS" | int version=1 | fixed-order fields (see SnapshotReader)
+ *
+ * v2: magic "MTSS" | int version=2 | int headerLength | int flags | long createdAt
+ *     record*  where record = int payloadLength | int crc32c(payload) | payload
+ *     payload = byte recordType | field*
+ *     field   = byte tag | varint length | value
+ * </pre>
+ *
+ * Readers skip header bytes beyond the ones they know, skip unknown record
+ * types and unknown field tags, and stop at the first record whose length or
+ * checksum does not verify (a torn write at the tail of the file).
+ */
+public final class SnapshotFormat {
+
+    public static final byte[] MAGIC = new byte[] { 'M', 'T', 'S', 'S' }; // Method probe Snap Shot
+    public static final int VERSION_1 = 1;
+    public static final int VERSION_2 = 2;
+    public static final int CURRENT_VERSION = VERSION_2;
+
+    /** magic + version + headerLength + flags + createdAt */
+    static final int HEADER_LENGTH_V2 = 24;
+    /** Size of the per-record prefix: payload length + checksum */
+    static final int RECORD_PREFIX_LENGTH = 8;
+
+    // ==================== Record Types ====================
+    public static final byte RECORD_SNAPSHOT = 1;
+    public static final byte RECORD_ARG_BLOB = 2; // content-addressed argument, see ArgumentStore
+
+    // ==================== Snapshot Field Tags ====================
+    static final byte TAG_ID = 1;
+    static final byte TAG_TIMESTAMP = 2;
+    static final byte TAG_CLASS = 3;
+    static final byte TAG_METHOD = 4;
+    static final byte TAG_THREAD = 5;
+    static final byte TAG_DURATION = 6;
+    static final byte TAG_ARG_TYPE = 7; // repeated, in argument order
+    static final byte TAG_ARG_VALUE = 8; // repeated, in argument order; empty = null
+    static final byte TAG_EXCEPTION = 9;
+    static final byte TAG_ARG_REF = 10; // repeated, in argument order; xxHash64 of a stored blob
+
+    // ==================== Argument Blob Field Tags ====================
+    static final byte TAG_BLOB_HASH = 1;
+    static final byte TAG_BLOB_DATA = 2;
+
+    private SnapshotFormat() {
+    }
+
+    // ==================== Writing ====================
+
+    /**
+     * Write the v2 file header.
+     */
+    public static void writeHeader(DataOutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.writeInt(VERSION_2);
+        out.writeInt(HEADER_LENGTH_V2);
+        out.writeInt(0); // flags, reserved
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Write one checksummed record.
+     */
+    public static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeInt(Crc32c.compute(payload));
+        out.write(payload);
+    }
+
+    /**
+     * Encode a snapshot as a record payload. Arguments must already be serialized.
+     */
+    public static byte[] encodeSnapshot(MethodSnapshot snapshot) {
+        FieldWriter w = new FieldWriter(RECORD_SNAPSHOT);
+        w.string(TAG_ID, snapshot.getSnapshotId());
+        w.int64(TAG_TIMESTAMP, snapshot.getTimestamp());
+        w.string(TAG_CLASS, snapshot.getClassName());
+        w.string(TAG_METHOD, snapshot.getMethodName());
+        w.string(TAG_THREAD, snapshot.getThreadName());
+        w.int64(TAG_DURATION, Double.doubleToLongBits(snapshot.getDurationMs()));
+
+        String[] argTypes = snapshot.getArgTypes();
+        if (argTypes != null) {
+            for (String type : argTypes) {
+                w.string(TAG_ARG_TYPE, type != null ? type : "null");
+            }
+        }
+        byte[][] serializedArgs = snapshot.getSerializedArgs();
+        long[] argRefs = snapshot.getArgRefs();
+        if (serializedArgs != null) {
+            for (int i = 0; i < serializedArgs.length; i++) {
+                if (argRefs != null && argRefs[i] != 0) {
+                    w.int64(TAG_ARG_REF, argRefs[i]);
+                } else {
+                    byte[] arg = serializedArgs[i];
+                    w.bytes(TAG_ARG_VALUE, arg != null ? arg : new byte[0]);
+                }
+            }
+        }
+        if (snapshot.getSerializedException() != null) {
+            w.bytes(TAG_EXCEPTION, snapshot.getSerializedException());
+        }
+        return w.toByteArray();
+    }
+
+    // ==================== Reading ====================
+
+    /**
+     * Read the rest of a v2 header (magic and version already consumed).
+     *
+     * @return number of header bytes consumed, including magic and version
+     */
+    static int readHeaderV2(DataInputStream in) throws IOException {
+        int headerLength = in.readInt();
+        if (headerLength < 12) {
+            throw new IOException("Invalid snapshot header length: " + headerLength);
+        }
+        // Skip flags, createdAt and anything a newer writer appended
+        skipFully(in, headerLength - 12);
+        return headerLength;
+    }
+
+    /**
+     * Read all verified record payloads, stopping silently at a truncated or
+     * corrupt tail. Payloads are only checksummed here, never deserialized.
+     *
+     * @param remaining bytes left in the file after the header
+     */
+    static List<byte[]> readRecordPayloads(DataInputStream in, long remaining) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        readRecords(in, 0, remaining, (payload, payloadOffset) -> payloads.add(payload));
+        return payloads;
+    }
+
+    /**
+     * Callback for each verified record.
+     */
+    interface RecordVisitor {
+        /**
+         * @param payload       the verified payload
+         * @param payloadOffset file offset of the first payload byte
+         */
+        void visit(byte[] payload, long payloadOffset) throws IOException;
+    }
+
+    /**
+     * Visit all verified records, stopping at a truncated or corrupt tail.
+     *
+     * @param position  file offset the stream is currently at
+     * @param remaining bytes left in the file
+     */
+    static void readRecords(DataInputStream in, long position, long remaining, RecordVisitor visitor)
+            throws IOException {
+        while (remaining >= RECORD_PREFIX_LENGTH) {
+            int length = in.readInt();
+            int crc = in.readInt();
+            remaining -= RECORD_PREFIX_LENGTH;
+            if (length < 1 || length > remaining) {
+                break; // torn write: length points past end of file
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            remaining -= length;
+            if (Crc32c.compute(payload) != crc) {
+                break; // corrupt record: nothing after it can be trusted
+            }
+            visitor.visit(payload, position + RECORD_PREFIX_LENGTH);
+            position += RECORD_PREFIX_LENGTH + length;
+        }
+    }
+
+    /**
+     * Decode a snapshot record payload.
+     *
+     * @return the snapshot, or null if the payload is not a snapshot record
+     */
+    public static MethodSnapshot decodeSnapshot(byte[] payload) throws IOException {
+        if (payload.length == 0 || payload[0] != RECORD_SNAPSHOT) {
+            return null;
+        }
+        MethodSnapshot snapshot = new MethodSnapshot();
+        List<String> argTypes = new ArrayList<>();
+        List<byte[]> argValues = new ArrayList<>();
+        List<Long> argRefs = new ArrayList<>();
+        boolean hasRefs = false;
+
+        FieldReader r = new FieldReader(payload, 1);
+        while (r.next()) {
+            switch (r.tag) {
+                case TAG_ID:
+                    snapshot.setSnapshotId(r.string());
+                    break;
+                case TAG_TIMESTAMP:
+                    snapshot.setTimestamp(r.int64());
+                    break;
+                case TAG_CLASS:
+                    snapshot.setClassName(r.string());
+                    break;
+                case TAG_METHOD:
+                    snapshot.setMethodName(r.string());
+                    break;
+                case TAG_THREAD:
+                    snapshot.setThreadName(r.string());
+                    break;
+                case TAG_DURATION:
+                    snapshot.setDurationMs(Double.longBitsToDouble(r.int64()));
+                    break;
+                case TAG_ARG_TYPE:
+                    argTypes.add(r.string());
+                    break;
+                case TAG_ARG_VALUE:
+                    byte[] value = r.bytes();
+                    argValues.add(value.length == 0 ? null : value);
+                    argRefs.add(0L);
+                    break;
+                case TAG_ARG_REF:
+                    argValues.add(null); // resolved later from the argument store
+                    argRefs.add(r.int64());
+                    hasRefs = true;
+                    break;
+                case TAG_EXCEPTION:
+                    snapshot.setSerializedException(r.bytes());
+                    break;
+                default:
+                    // Unknown field from a newer writer - skip it
+                    break;
+            }
+        }
+
+        if (!argTypes.isEmpty()) {
+            snapshot.setArgTypes(argTypes.toArray(new String[0]));
+        }
+        if (!argValues.isEmpty()) {
+            snapshot.setSerializedArgs(argValues.toArray(new byte[0][]));
+        }
+        if (hasRefs) {
+            long[] refs = new long[argRefs.size()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = argRefs.get(i);
+            }
+            snapshot.setArgRefs(refs);
+        }
+        return snapshot;
+    }
+
+    private static void skipFully(DataInputStream in, int n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes(n);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            n -= skipped;
+        }
+    }
+
+    // ==================== Field Encoding ====================
+
+    /**
+     * Tag-length-value writer for a single record payload.
+     */
+    static final class FieldWriter {
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+
+        FieldWriter(byte recordType) {
+            buf.write(recordType);
+        }
+
+        void string(byte tag, String value) {
+            if (value == null) {
+                return;
+            }
+            bytes(tag, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void int64(byte tag, long value) {
+            buf.write(tag);
+            writeVarint(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf.write((int) (value >>> shift));
+            }
+        }
+
+        void bytes(byte tag, byte[] value) {
+            buf.write(tag);
+            writeVarint(value.length);
+            buf.write(value, 0, value.length);
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buf.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf.write(value);
+        }
+
+        byte[] toByteArray() {
+            return buf.toByteArray();
+        }
+    }
+
+    /**
+     * Cursor over the fields of a verified record payload.
+     */
+    static final class FieldReader {
+        private final byte[] data;
+        private int pos;
+        byte tag;
+        private int valueOffset;
+        private int valueLength;
+
+        FieldReader(byte[] data, int offset) {
+            this.data = data;
+            this.pos = offset;
+        }
+
+        /**
+         * Advance to the next field; the previous value is skipped if unread.
+         */
+        boolean next() throws IOException {
+            if (pos >= data.length) {
+                return false;
+            }
+            tag = data[pos++];
+            int length = 0;
+            int shift = 0;
+            while (true) {
+                if (pos >= data.length || shift > 28) {
+                    throw new IOException("Malformed field length");
+                }
+                byte b = data[pos++];
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                shift += 7;
+            }
+            if (length < 0 || length > data.length - pos) {
+                throw new IOException("Field overruns record");
+            }
+            valueOffset = pos;
+            valueLength = length;
+            pos += length;
+            return true;
+        }
+
+        String string() {
+            return new String(data, valueOffset, valueLength, StandardCharsets.UTF_8);
+        }
+
+        long int64() throws IOException {
+            if (valueLength != 8) {
+                throw new IOException("Expected 8-byte field, got " + valueLength);
+            }
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (data[valueOffset + i] & 0xFF);
+            }
+            return v;
+        }
+
+        /**
+         * Offset of the current value within the payload.
+         */
+        int valueOffset() {
+            return valueOffset;
+        }
+
+        int valueLength() {
+            return valueLength;
+        }
+
+        byte[] bytes() {
+            byte[] copy = new byte[valueLength];
+            System.arraycopy(data, valueOffset, copy, 0, valueLength);
+            return copy;
+        }
+    }
+}
@@ -10,41 +10,39 @@ public class SnapshotHelper {
      * ClassFormatErrors during retransformation (prevent adding methods to target
      * class).
      */
-    public static void createSnapshot(String snapshotId, String className, String methodName,
+    public static void createSnapshot(long snapshotId, String className, String methodName,
             double durationMs, Object[] args, Throwable thrown) {
         try {
             MethodSnapshot snapshot = new MethodSnapshot(
-                    snapshotId,
+                    null,
                     System.currentTimeMillis(),
                     className,
                     methodName,
                     Thread.currentThread().getName(),
                     durationMs);
+            snapshot.setId(snapshotId);
 
             // Get arg types
             snapshot.setArgTypes(SnapshotSerializer.getArgTypes(args));
 
+            // Only capture exception if it passes the filter
+            ExceptionInfo exception = null;
+            if (thrown != null && AgentConfig.shouldCaptureException(thrown)) {
+                exception = new ExceptionInfo(thrown, AgentConfig.getExceptionStackDepth());
+            }
+
             // Serialize based on mode
             if (AgentConfig.snapshotSerializeSync) {
                 // Sync mode: serialize in business thread, write async
-                byte[][] serializedArgs = SnapshotSerializer.serializeArgs(args);
-                snapshot.setSerializedArgs(serializedArgs);
-                // Only serialize exception if it passes the filter
-                if (thrown != null && AgentConfig.shouldCaptureException(thrown)) {
-                    int stackDepth = AgentConfig.getExceptionStackDepth();
-                    snapshot.setSerializedException(
-                            SnapshotSerializer.serialize(new ExceptionInfo(thrown, stackDepth)));
+                snapshot.setSerializedArgs(SnapshotSerializer.serializeArgs(args));
+                if (exception != null) {
+                    snapshot.setSerializedException(SnapshotSerializer.serialize(exception));
                 }
                 SnapshotWriter.submitSerialized(snapshot);
             } else {
-                // Async mode: serialize and write in async thread (risk of data inconsistency)
-                snapshot.setSerializedArgs(SnapshotSerializer.serializeArgs(args));
-                // Only serialize exception if it passes the filter
-                if (thrown != null && AgentConfig.shouldCaptureException(thrown)) {
-                    int stackDepth = AgentConfig.getExceptionStackDepth();
-                    snapshot.setSerializedException(
-                            SnapshotSerializer.serialize(new ExceptionInfo(thrown, stackDepth)));
-                }
+                // Async mode: keep immutable values and cheap copies, serialize off-thread
+                ArgumentCapture.capture(snapshot, args);
+                snapshot.setCapturedException(exception);
                 SnapshotWriter.submit(snapshot);
             }
         } catch (Exception e) {
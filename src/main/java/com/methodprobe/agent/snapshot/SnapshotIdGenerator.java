@@ -1,37 +1,95 @@
 package com.methodprobe.agent.snapshot;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.methodprobe.agent.config.AgentConfig;
+
 /**
  * Generator for unique snapshot IDs.
- * Format: yyyyMMdd-HHmmss-SSS-seq (e.g., 20260112-091313-001-0001)
- * Thread-safe using atomic sequence counter.
+ *
+ * An ID is a positive 63-bit long, created without allocation:
+ *
+ * <pre>
+ * | 41 bits: millis since 2024-01-01 UTC | 12 bits: sequence | 10 bits: node |
+ * </pre>
+ *
+ * IDs are strictly increasing per JVM: each new ID is the previous one plus
+ * one sequence step, or the current time if that is larger. When more than
+ * 4096 IDs are taken in one millisecond the sequence carries into the time
+ * bits, borrowing from the next millisecond instead of wrapping, so IDs stay
+ * unique at any rate. The node bits keep IDs from different JVMs apart.
+ *
+ * IDs are rendered as 13-character Crockford base32 (e.g. 07ETZJG7003D1)
+ * only when they are written out; the text sorts in the same order as the
+ * numbers.
  */
 public class SnapshotIdGenerator {
 
-    private static final AtomicLong sequence = new AtomicLong(0);
+    /** 2024-01-01T00:00:00Z */
+    static final long EPOCH_MILLIS = 1704067200000L;
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int TIME_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_STEP = 1L << NODE_BITS;
+
+    private static final int TEXT_LENGTH = 13;
+    private static final char[] BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static final long NODE = resolveNode();
+    private static final AtomicLong last = new AtomicLong(NODE);
 
-    // Use ThreadLocal to avoid synchronization on SimpleDateFormat
-    private static final ThreadLocal<SimpleDateFormat> dateFormat = ThreadLocal
-            .withInitial(() -> new SimpleDateFormat("yyyyMMdd-HHmmss-SSS"));
+    /**
+     * Generate the next snapshot ID.
+     *
+     * @return a unique ID, never 0
+     */
+    public static long next() {
+        long now = ((System.currentTimeMillis() - EPOCH_MILLIS) << TIME_SHIFT) | NODE;
+        while (true) {
+            long prev = last.get();
+            long id = Math.max(now, prev + SEQUENCE_STEP);
+            if (last.compareAndSet(prev, id)) {
+                return id;
+            }
+        }
+    }
 
     /**
-     * Generate a unique snapshot ID.
-     * 
-     * @return unique ID in format: yyyyMMdd-HHmmss-SSS-seq
+     * Generate a unique snapshot ID as text.
      */
     public static String generate() {
-        String timestamp = dateFormat.get().format(new Date());
-        long seq = sequence.incrementAndGet() % 100000;
-        return String.format("%s-%05d", timestamp, seq);
+        return toString(next());
     }
 
     /**
-     * Reset sequence counter (for testing).
+     * Render an ID as fixed-width Crockford base32.
      */
-    public static void resetSequence() {
-        sequence.set(0);
+    public static String toString(long id) {
+        char[] text = new char[TEXT_LENGTH];
+        for (int i = TEXT_LENGTH - 1; i >= 0; i--) {
+            text[i] = BASE32[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(text);
+    }
+
+    /**
+     * Creation time of an ID in epoch millis.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> TIME_SHIFT) + EPOCH_MILLIS;
+    }
+
+    private static long resolveNode() {
+        int configured = AgentConfig.snapshotIdNode;
+        if (configured >= 0) {
+            return configured & NODE_MASK;
+        }
+        // "pid@host" identifies this JVM well enough to keep nodes apart
+        String runtime = ManagementFactory.getRuntimeMXBean().getName();
+        return (runtime.hashCode() ^ (runtime.hashCode() >>> 16)) & NODE_MASK;
     }
 }
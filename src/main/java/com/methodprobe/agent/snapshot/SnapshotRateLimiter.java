@@ -0,0 +1,145 @@
+package com.methodprobe.agent.snapshot;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+/**
+ * Per-method and global snapshot rate limits, checked before any
+ * serialization work so one hot method cannot flood the writer queue.
+ *
+ * Each limit is a lock-free token bucket implemented as GCRA: a single
+ * AtomicLong holds the theoretical arrival time of the next token, and
+ * acquiring is one CAS. A bucket refills at {@code rate} tokens per second
+ * and holds at most {@code burst} tokens.
+ *
+ * The per-method bucket is checked first, so a throttled hot method never
+ * spends the global budget; its token is given back if the global bucket
+ * then rejects, so quiet methods keep their own budget under global pressure.
+ */
+public class SnapshotRateLimiter {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** className -> methodName -> bucket; nested to avoid building a key per call */
+    private static final Map<String, Map<String, Bucket>> METHOD_BUCKETS = new ConcurrentHashMap<>();
+    private static final Bucket GLOBAL_BUCKET = new Bucket();
+
+    private static final AtomicLong rejectedByMethod = new AtomicLong();
+    private static final AtomicLong rejectedByGlobal = new AtomicLong();
+
+    /**
+     * Try to take a snapshot token for the given method.
+     *
+     * @return true if a snapshot may be captured
+     */
+    public static boolean tryAcquire(String className, String methodName) {
+        int methodRate = AgentConfig.snapshotRatePerMethod;
+        int burst = AgentConfig.snapshotRateBurst;
+        Bucket bucket = null;
+        if (methodRate > 0) {
+            bucket = methodBucket(className, methodName);
+            if (!bucket.tryAcquire(methodRate, burst)) {
+                bucket.rejected.incrementAndGet();
+                rejectedByMethod.incrementAndGet();
+                return false;
+            }
+        }
+
+        int globalRate = AgentConfig.snapshotRateGlobal;
+        if (globalRate > 0 && !GLOBAL_BUCKET.tryAcquire(globalRate, Math.max(burst, globalRate))) {
+            if (bucket != null) {
+                bucket.release(methodRate);
+            }
+            rejectedByGlobal.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Plain get first: on Java 8, computeIfAbsent locks the map bin even when
+     * the key is present (JDK-8161372).
+     */
+    private static Bucket methodBucket(String className, String methodName) {
+        Map<String, Bucket> methods = METHOD_BUCKETS.get(className);
+        if (methods == null) {
+            methods = METHOD_BUCKETS.computeIfAbsent(className, k -> new ConcurrentHashMap<>());
+        }
+        Bucket bucket = methods.get(methodName);
+        if (bucket == null) {
+            bucket = methods.computeIfAbsent(methodName, k -> new Bucket());
+        }
+        return bucket;
+    }
+
+    public static long getRejectedByMethod() {
+        return rejectedByMethod.get();
+    }
+
+    public static long getRejectedByGlobal() {
+        return rejectedByGlobal.get();
+    }
+
+    /**
+     * Rejection counts per method ("className.methodName"), only for methods
+     * that have been throttled at least once.
+     */
+    public static Map<String, Long> getRejectedPerMethod() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Bucket>> cls : METHOD_BUCKETS.entrySet()) {
+            for (Map.Entry<String, Bucket> method : cls.getValue().entrySet()) {
+                long rejected = method.getValue().rejected.get();
+                if (rejected > 0) {
+                    result.put(cls.getKey() + "." + method.getKey(), rejected);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drop all buckets and counters (for testing and config changes).
+     */
+    public static void reset() {
+        METHOD_BUCKETS.clear();
+        GLOBAL_BUCKET.nextTokenNanos.set(Long.MIN_VALUE);
+        rejectedByMethod.set(0);
+        rejectedByGlobal.set(0);
+    }
+
+    /**
+     * GCRA token bucket.
+     */
+    static final class Bucket {
+        /** Theoretical arrival time of the next token; MIN_VALUE = full bucket */
+        final AtomicLong nextTokenNanos = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLong rejected = new AtomicLong();
+
+        boolean tryAcquire(int ratePerSecond, int burst) {
+            long interval = NANOS_PER_SECOND / ratePerSecond;
+            long tolerance = interval * Math.max(burst - 1, 0);
+            long now = System.nanoTime();
+            while (true) {
+                long tat = nextTokenNanos.get();
+                long base = (tat == Long.MIN_VALUE || tat - now < 0) ? now : tat;
+                if (base - now > tolerance) {
+                    return false;
+                }
+                if (nextTokenNanos.compareAndSet(tat, base + interval)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Give back a token taken by {@link #tryAcquire} but not used.
+         */
+        void release(int ratePerSecond) {
+            nextTokenNanos.addAndGet(-(NANOS_PER_SECOND / ratePerSecond));
+        }
+    }
+}
@@ -27,7 +27,7 @@ import java.util.List;
  */
 public class SnapshotReader {
 
-    private static final byte[] MAGIC = new byte[] { 'M', 'T', 'S', 'S' };
+    private static final byte[] MAGIC = SnapshotFormat.MAGIC;
 
     public static void main(String[] args) {
         if (args.length < 1) {
@@ -54,9 +54,10 @@ public class SnapshotReader {
 
             for (Path file : files) {
                 try {
-                    MethodSnapshot snapshot = readSnapshot(file.toString());
-                    printSnapshot(snapshot);
-                    System.out.println(); // Blank line between snapshots
+                    for (MethodSnapshot snapshot : readSnapshots(file.toString())) {
+                        printSnapshot(snapshot);
+                        System.out.println(); // Blank line between snapshots
+                    }
                 } catch (Exception e) {
                     System.err.println("Failed to read " + file + ": " + e.getMessage());
                 }
@@ -133,10 +134,25 @@ public class SnapshotReader {
     }
 
     /**
-     * Read a snapshot from file.
+     * Read a snapshot from file. For files holding several records, the first
+     * verified snapshot record is returned.
      */
     public static MethodSnapshot readSnapshot(String filePath) throws IOException {
+        List<MethodSnapshot> snapshots = readSnapshots(filePath);
+        if (snapshots.isEmpty()) {
+            throw new IOException("No intact snapshot record in file");
+        }
+        return snapshots.get(0);
+    }
+
+    /**
+     * Read all verified snapshot records from a file (v1 or v2).
+     * A corrupt or truncated tail in a v2 file is skipped rather than failing
+     * the whole file.
+     */
+    public static List<MethodSnapshot> readSnapshots(String filePath) throws IOException {
         Path path = Paths.get(filePath);
+        long fileSize = Files.size(path);
         try (DataInputStream dis = new DataInputStream(
                 new BufferedInputStream(Files.newInputStream(path)))) {
 
@@ -150,56 +166,79 @@ public class SnapshotReader {
 
             // Read version
             int version = dis.readInt();
-            if (version != 1) {
+            if (version == SnapshotFormat.VERSION_1) {
+                return Collections.singletonList(readSnapshotV1(dis));
+            }
+            if (version < SnapshotFormat.VERSION_2) {
                 throw new IOException("Unsupported snapshot version: " + version);
             }
 
-            // Read snapshotId
-            String snapshotId = dis.readUTF();
-
-            // Read header
-            MethodSnapshot snapshot = new MethodSnapshot();
-            snapshot.setSnapshotId(snapshotId.isEmpty() ? null : snapshotId);
-            snapshot.setTimestamp(dis.readLong());
-            snapshot.setClassName(dis.readUTF());
-            snapshot.setMethodName(dis.readUTF());
-            snapshot.setThreadName(dis.readUTF());
-            snapshot.setDurationMs(dis.readDouble());
-
-            // Read arg types
-            int argTypeCount = dis.readInt();
-            if (argTypeCount > 0) {
-                String[] argTypes = new String[argTypeCount];
-                for (int i = 0; i < argTypeCount; i++) {
-                    argTypes[i] = dis.readUTF();
+            // v2 and later share the length-prefixed header and record framing
+            int headerLength = SnapshotFormat.readHeaderV2(dis);
+            List<MethodSnapshot> snapshots = new ArrayList<>();
+            for (byte[] payload : SnapshotFormat.readRecordPayloads(dis, fileSize - headerLength)) {
+                MethodSnapshot snapshot = SnapshotFormat.decodeSnapshot(payload);
+                if (snapshot != null) {
+                    if (snapshot.getArgRefs() != null) {
+                        Path dir = path.toAbsolutePath().getParent();
+                        ArgumentStore.resolve(snapshot, dir);
+                    }
+                    snapshots.add(snapshot);
                 }
-                snapshot.setArgTypes(argTypes);
             }
+            return snapshots;
+        }
+    }
 
-            // Read serialized args
-            int argCount = dis.readInt();
-            if (argCount > 0) {
-                byte[][] serializedArgs = new byte[argCount][];
-                for (int i = 0; i < argCount; i++) {
-                    int len = dis.readInt();
-                    if (len >= 0) {
-                        serializedArgs[i] = new byte[len];
-                        dis.readFully(serializedArgs[i]);
-                    }
-                }
-                snapshot.setSerializedArgs(serializedArgs);
+    /**
+     * Read the body of a legacy v1 snapshot (magic and version already consumed).
+     */
+    private static MethodSnapshot readSnapshotV1(DataInputStream dis) throws IOException {
+        // Read snapshotId
+        String snapshotId = dis.readUTF();
+
+        // Read header
+        MethodSnapshot snapshot = new MethodSnapshot();
+        snapshot.setSnapshotId(snapshotId.isEmpty() ? null : snapshotId);
+        snapshot.setTimestamp(dis.readLong());
+        snapshot.setClassName(dis.readUTF());
+        snapshot.setMethodName(dis.readUTF());
+        snapshot.setThreadName(dis.readUTF());
+        snapshot.setDurationMs(dis.readDouble());
+
+        // Read arg types
+        int argTypeCount = dis.readInt();
+        if (argTypeCount > 0) {
+            String[] argTypes = new String[argTypeCount];
+            for (int i = 0; i < argTypeCount; i++) {
+                argTypes[i] = dis.readUTF();
             }
+            snapshot.setArgTypes(argTypes);
+        }
 
-            // Read exception
-            int exceptionLen = dis.readInt();
-            if (exceptionLen >= 0) {
-                byte[] exception = new byte[exceptionLen];
-                dis.readFully(exception);
-                snapshot.setSerializedException(exception);
+        // Read serialized args
+        int argCount = dis.readInt();
+        if (argCount > 0) {
+            byte[][] serializedArgs = new byte[argCount][];
+            for (int i = 0; i < argCount; i++) {
+                int len = dis.readInt();
+                if (len >= 0) {
+                    serializedArgs[i] = new byte[len];
+                    dis.readFully(serializedArgs[i]);
+                }
             }
+            snapshot.setSerializedArgs(serializedArgs);
+        }
 
-            return snapshot;
+        // Read exception
+        int exceptionLen = dis.readInt();
+        if (exceptionLen >= 0) {
+            byte[] exception = new byte[exceptionLen];
+            dis.readFully(exception);
+            snapshot.setSerializedException(exception);
         }
+
+        return snapshot;
     }
 
     /**
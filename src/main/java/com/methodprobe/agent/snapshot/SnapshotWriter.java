@@ -6,24 +6,31 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.methodprobe.agent.config.AgentConfig;
+
 /**
  * Async writer for method snapshots.
- * Uses a single daemon thread to write snapshots to files without blocking
- * business threads.
+ *
+ * Two-stage pipeline so business threads never wait on Kryo or disk:
+ * a serializer stage (N threads, each with its own Kryo instance) turns
+ * captured arguments into bytes, and a single writer thread appends the
+ * results to files in order. Snapshots serialized on the business thread
+ * (sync mode) skip straight to the writer stage.
  */
 public class SnapshotWriter {
 
-    private static volatile ExecutorService executor;
+    private static volatile PipelineStage serializeStage;
+    private static volatile PipelineStage writeStage;
     private static volatile String snapshotDir = "./probe-snapshots";
     private static final AtomicBoolean initialized = new AtomicBoolean(false);
     private static final AtomicLong sequence = new AtomicLong(0);
 
-    private static final byte[] MAGIC = new byte[] { 'M', 'T', 'S', 'S' }; // Method probe Snap Shot
-    private static final int VERSION = 1;
+    // Argument blob segment for the current date directory (writer thread only)
+    private static ArgumentStore argumentStore;
+    private static String argumentStoreDate;
 
     /**
      * Initialize the snapshot writer.
@@ -31,26 +38,29 @@ public class SnapshotWriter {
     public static void init(String dir) {
         if (initialized.compareAndSet(false, true)) {
             snapshotDir = dir;
-            executor = new ThreadPoolExecutor(
-                    1, 1,
-                    0L, TimeUnit.MILLISECONDS,
-                    new LinkedBlockingQueue<>(500),
-                    r -> {
-                        Thread t = new Thread(r, "MethodProbe-SnapshotWriter");
-                        t.setDaemon(true);
-                        return t;
-                    },
-                    new ThreadPoolExecutor.DiscardOldestPolicy());
-            System.out.println("[MethodProbe] SnapshotWriter initialized. Dir: " + dir);
+            int threads = AgentConfig.snapshotSerializerThreads;
+            if (threads <= 0) {
+                threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+            }
+            serializeStage = new PipelineStage("MethodProbe-SnapshotSerializer", threads,
+                    AgentConfig.snapshotSerializerQueueSize);
+            writeStage = new PipelineStage("MethodProbe-SnapshotWriter", 1,
+                    AgentConfig.snapshotWriterQueueSize);
+            System.out.println("[MethodProbe] SnapshotWriter initialized. Dir: " + dir
+                    + ", serializer threads: " + threads);
         }
     }
 
     /**
-     * Submit a snapshot for async writing.
+     * Submit a snapshot whose captured arguments still need serializing.
      */
     public static void submit(MethodSnapshot snapshot) {
-        if (executor != null && !executor.isShutdown()) {
-            executor.submit(() -> writeSnapshot(snapshot));
+        PipelineStage stage = serializeStage;
+        if (stage != null) {
+            stage.submit(() -> {
+                ArgumentCapture.serializeCaptured(snapshot);
+                submitSerialized(snapshot);
+            });
         }
     }
 
@@ -58,11 +68,20 @@ public class SnapshotWriter {
      * Submit pre-serialized snapshot for async file writing only.
      */
     public static void submitSerialized(MethodSnapshot snapshot) {
-        if (executor != null && !executor.isShutdown()) {
-            executor.submit(() -> writeSnapshot(snapshot));
+        PipelineStage stage = writeStage;
+        if (stage != null) {
+            stage.submit(() -> writeSnapshot(snapshot));
         }
     }
 
+    public static PipelineStage getSerializeStage() {
+        return serializeStage;
+    }
+
+    public static PipelineStage getWriteStage() {
+        return writeStage;
+    }
+
     /**
      * Write snapshot to file.
      */
@@ -87,74 +106,62 @@ public class SnapshotWriter {
             }
             Path filePath = dirPath.resolve(filename);
 
+            if (AgentConfig.snapshotDedupEnabled) {
+                storeArguments(snapshot, dateStr, dirPath);
+            }
+
             try (DataOutputStream dos = new DataOutputStream(
                     new BufferedOutputStream(Files.newOutputStream(filePath)))) {
+                SnapshotFormat.writeHeader(dos);
+                SnapshotFormat.writeRecord(dos, SnapshotFormat.encodeSnapshot(snapshot));
+            }
 
-                // Write magic and version
-                dos.write(MAGIC);
-                dos.writeInt(VERSION);
-
-                // Write snapshotId
-                dos.writeUTF(snapshotId != null ? snapshotId : "");
-
-                // Write header
-                dos.writeLong(snapshot.getTimestamp());
-                dos.writeUTF(snapshot.getClassName());
-                dos.writeUTF(snapshot.getMethodName());
-                dos.writeUTF(snapshot.getThreadName());
-                dos.writeDouble(snapshot.getDurationMs());
-
-                // Write arg types
-                String[] argTypes = snapshot.getArgTypes();
-                dos.writeInt(argTypes != null ? argTypes.length : 0);
-                if (argTypes != null) {
-                    for (String type : argTypes) {
-                        dos.writeUTF(type != null ? type : "null");
-                    }
-                }
+        } catch (Exception e) {
+            System.err.println("[MethodProbe] Failed to write snapshot: " + e.getMessage());
+        }
+    }
 
-                // Write serialized args
-                byte[][] serializedArgs = snapshot.getSerializedArgs();
-                dos.writeInt(serializedArgs != null ? serializedArgs.length : 0);
-                if (serializedArgs != null) {
-                    for (byte[] arg : serializedArgs) {
-                        if (arg != null) {
-                            dos.writeInt(arg.length);
-                            dos.write(arg);
-                        } else {
-                            dos.writeInt(-1); // null marker
-                        }
-                    }
-                }
+    /**
+     * Move large serialized arguments into the day's argument store and keep
+     * only their hashes in the snapshot record.
+     */
+    private static void storeArguments(MethodSnapshot snapshot, String dateStr, Path dirPath) throws IOException {
+        byte[][] serializedArgs = snapshot.getSerializedArgs();
+        if (serializedArgs == null) {
+            return;
+        }
+        if (!dateStr.equals(argumentStoreDate)) {
+            if (argumentStore != null) {
+                argumentStore.close();
+            }
+            argumentStore = new ArgumentStore(dirPath);
+            argumentStoreDate = dateStr;
+        }
 
-                // Write exception if any
-                byte[] exception = snapshot.getSerializedException();
-                if (exception != null) {
-                    dos.writeInt(exception.length);
-                    dos.write(exception);
-                } else {
-                    dos.writeInt(-1);
+        int minSize = AgentConfig.snapshotDedupMinSize;
+        long[] refs = null;
+        for (int i = 0; i < serializedArgs.length; i++) {
+            byte[] arg = serializedArgs[i];
+            if (arg != null && arg.length >= minSize) {
+                if (refs == null) {
+                    refs = new long[serializedArgs.length];
                 }
+                refs[i] = argumentStore.put(arg);
             }
-
-        } catch (Exception e) {
-            System.err.println("[MethodProbe] Failed to write snapshot: " + e.getMessage());
         }
+        snapshot.setArgRefs(refs);
     }
 
     /**
      * Shutdown the writer gracefully.
      */
     public static void shutdown() {
-        if (executor != null) {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
+        if (writeStage != null) {
+            // Drain serializers first: they feed the writer
+            serializeStage.shutdown(5000);
+            writeStage.shutdown(5000);
+            if (argumentStore != null) {
+                argumentStore.close();
             }
             System.out.println("[MethodProbe] SnapshotWriter shutdown complete");
         }
@@ -1,17 +1,14 @@
 package com.methodprobe.agent.tree;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayDeque;
-import java.util.Date;
 import java.util.Deque;
 
 import com.methodprobe.agent.config.AgentConfig;
 import com.methodprobe.agent.log.LogOutputFactory;
-import com.methodprobe.agent.snapshot.ExceptionInfo;
-import com.methodprobe.agent.snapshot.MethodSnapshot;
+import com.methodprobe.agent.log.MethodEvent;
+import com.methodprobe.agent.snapshot.SnapshotHelper;
 import com.methodprobe.agent.snapshot.SnapshotIdGenerator;
-import com.methodprobe.agent.snapshot.SnapshotSerializer;
-import com.methodprobe.agent.snapshot.SnapshotWriter;
+import com.methodprobe.agent.snapshot.SnapshotRateLimiter;
 
 /**
  * ThreadLocal context manager for building method call trees.
@@ -56,8 +53,9 @@ public class CallTreeContext {
         // Check if this is an entry method
         boolean isEntryMethod = AgentConfig.isTreeEntryMethod(className, methodName);
 
-        // Determine if we should capture args for snapshot
-        boolean captureArgs = AgentConfig.snapshotEnabled &&
+        // Determine if we should capture args for snapshot; the snapshot ID is
+        // only assigned on exit if the node actually triggers
+        boolean captureArgs = AgentConfig.snapshotEnabled && AgentConfig.treeCaptureArgs &&
                 (AgentConfig.treeSnapshotProbeAll || isEntryMethod);
 
         if (isEntryMethod) {
@@ -65,7 +63,6 @@ public class CallTreeContext {
             MethodCallNode rootNode = new MethodCallNode(fullMethodName, System.nanoTime());
             if (captureArgs) {
                 rootNode.setArgs(args);
-                rootNode.setSnapshotId(SnapshotIdGenerator.generate());
             }
             ROOT_NODE.set(rootNode);
             stack.clear();
@@ -89,7 +86,6 @@ public class CallTreeContext {
         MethodCallNode node = new MethodCallNode(fullMethodName, System.nanoTime());
         if (captureArgs) {
             node.setArgs(args);
-            node.setSnapshotId(SnapshotIdGenerator.generate());
         }
         MethodCallNode parent = stack.peek();
         if (parent != null) {
@@ -146,9 +142,13 @@ public class CallTreeContext {
                 triggerMet = true;
             }
 
+            // Release the args either way so they are not pinned until the tree is printed
+            Object[] args = currentNode.getArgs();
+            currentNode.setArgs(null);
+
             // Create snapshot if trigger conditions met and snapshot enabled
-            if (triggerMet && currentNode.getSnapshotId() != null && AgentConfig.snapshotEnabled) {
-                createNodeSnapshot(currentNode, thrown);
+            if (triggerMet && args != null && AgentConfig.snapshotEnabled) {
+                createNodeSnapshot(currentNode, className, methodName, args, thrown);
             }
 
             stack.pop();
@@ -170,11 +170,15 @@ public class CallTreeContext {
                 }
 
                 if (shouldPrint) {
-                    // Capture root for async printing (root will be cleared below)
+                    // Capture root and the business thread for async printing
+                    // (root will be cleared below)
                     final MethodCallNode capturedRoot = root;
-                    // Only pass thrown if it should be captured (passes filter)
-                    final Throwable capturedThrown = captureException ? thrown : null;
-                    AsyncTreePrinter.submit(() -> printCallTree(capturedRoot, capturedThrown));
+                    final Thread thread = Thread.currentThread();
+                    final long threadId = thread.getId();
+                    final String threadName = thread.getName();
+                    final long endMillis = System.currentTimeMillis();
+                    AsyncTreePrinter.submit(() -> LogOutputFactory.writeTree(
+                            toEvent(capturedRoot, capturedRoot.getEndTimeNanos(), endMillis, threadId, threadName)));
                 }
 
                 // Clear the context for thread reuse
@@ -185,99 +189,36 @@ public class CallTreeContext {
     }
 
     /**
-     * Create snapshot for a tree node.
+     * Create snapshot for a triggered tree node, unless the method is over its
+     * snapshot rate limit (checked before any serialization work). The node only
+     * gets an ID when a snapshot is actually taken.
      */
-    private static void createNodeSnapshot(MethodCallNode node, Throwable thrown) {
-        try {
-            String[] parts = node.getMethodName().split("\\.");
-            String methodName = parts.length > 0 ? parts[parts.length - 1] : node.getMethodName();
-            String className = node.getMethodName().substring(0,
-                    node.getMethodName().length() - methodName.length() - 1);
-
-            MethodSnapshot snapshot = new MethodSnapshot(
-                    node.getSnapshotId(),
-                    System.currentTimeMillis(),
-                    className,
-                    methodName,
-                    Thread.currentThread().getName(),
-                    node.getDurationMs());
-
-            Object[] args = node.getArgs();
-            snapshot.setArgTypes(SnapshotSerializer.getArgTypes(args));
-            byte[][] serializedArgs = SnapshotSerializer.serializeArgs(args);
-            snapshot.setSerializedArgs(serializedArgs);
-            // Only serialize exception if it passes the filter
-            if (thrown != null && AgentConfig.shouldCaptureException(thrown)) {
-                int stackDepth = AgentConfig.getExceptionStackDepth();
-                snapshot.setSerializedException(SnapshotSerializer.serialize(new ExceptionInfo(thrown, stackDepth)));
-            }
-            SnapshotWriter.submitSerialized(snapshot);
-        } catch (Exception e) {
-            System.err.println("[MethodProbe] Failed to create tree snapshot: " + e.getMessage());
+    private static void createNodeSnapshot(MethodCallNode node, String className, String methodName,
+            Object[] args, Throwable thrown) {
+        if (!SnapshotRateLimiter.tryAcquire(className, methodName)) {
+            return;
         }
+        long snapshotId = SnapshotIdGenerator.next();
+        node.setSnapshotId(snapshotId);
+        SnapshotHelper.createSnapshot(snapshotId, className, methodName, node.getDurationMs(), args, thrown);
     }
 
     /**
-     * Print the call tree to console with tree-style formatting.
+     * Convert a finished call tree into log events. Node start times are
+     * derived from the nano clock relative to the entry method's end, which
+     * was observed at {@code endMillis}.
      */
-    private static void printCallTree(MethodCallNode root, Throwable thrown) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        String timestamp = sdf.format(new Date());
-        String threadName = Thread.currentThread().getName();
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n");
-        sb.append("╔══════════════════════════════════════════════════════════════════════════════\n");
-        sb.append(String.format("║ [%s] [%s] Method Call Tree\n", timestamp, threadName));
-        if (thrown != null) {
-            sb.append(String.format("║ ⚠ Exception: %s\n", thrown.getClass().getName()));
-        }
-        sb.append("╠══════════════════════════════════════════════════════════════════════════════\n");
-
-        // Print tree recursively
-        printNode(sb, root, "", true);
-
-        sb.append("╚══════════════════════════════════════════════════════════════════════════════\n");
-
-        LogOutputFactory.write(sb.toString());
-    }
-
-    /**
-     * Recursively print a node and its children with tree branches.
-     */
-    private static void printNode(StringBuilder sb, MethodCallNode node, String prefix, boolean isLast) {
-        String connector = isLast ? "└── " : "├── ";
-        String durationStr = String.format("%.2f ms", node.getDurationMs());
-
-        sb.append("║ ");
-        sb.append(prefix);
-        sb.append(connector);
-        sb.append(node.getMethodName());
-        sb.append(" - ");
-        sb.append(durationStr);
-
-        // Show exception tag if node has exception
-        if (node.hasException()) {
-            sb.append(" [EXCEPTION: ");
-            sb.append(node.getException().getClass().getSimpleName());
-            sb.append("]");
-        }
-
-        // Show snapshot ID if available (instead of args)
-        String snapshotId = node.getSnapshotId();
-        if (snapshotId != null) {
-            sb.append(" [snap:");
-            sb.append(snapshotId);
-            sb.append("]");
-        }
-        sb.append("\n");
-
-        // Print children
-        String childPrefix = prefix + (isLast ? "    " : "│   ");
-        for (int i = 0; i < node.getChildren().size(); i++) {
-            boolean childIsLast = (i == node.getChildren().size() - 1);
-            printNode(sb, node.getChildren().get(i), childPrefix, childIsLast);
+    static MethodEvent toEvent(MethodCallNode node, long rootEndNanos, long endMillis, long threadId,
+            String threadName) {
+        long startMillis = endMillis - (rootEndNanos - node.getStartTimeNanos()) / 1_000_000;
+        MethodEvent event = new MethodEvent(node.getMethodName(), startMillis,
+                node.getEndTimeNanos() - node.getStartTimeNanos(), threadId, threadName,
+                node.hasException() ? node.getException().getClass().getName() : null,
+                node.getSnapshotId());
+        for (MethodCallNode child : node.getChildren()) {
+            event.addChild(toEvent(child, rootEndNanos, endMillis, threadId, threadName));
         }
+        return event;
     }
 
     /**
@@ -308,6 +249,13 @@ public class CallTreeContext {
         return stack.size();
     }
 
+    /**
+     * Get the root node of the calling thread's tree (for testing).
+     */
+    static MethodCallNode getRootNode() {
+        return ROOT_NODE.get();
+    }
+
     /**
      * Force clear the context (useful for cleanup).
      */
@@ -16,7 +16,7 @@ public class MethodCallNode {
     private MethodCallNode parent;
     private final List<MethodCallNode> children;
     private Object[] args; // Method arguments for snapshot
-    private String snapshotId; // Unique ID for log-snapshot correlation
+    private long snapshotId; // Unique ID for log-snapshot correlation, 0 = none
 
     public MethodCallNode(String methodName, long startTimeNanos) {
         this.methodName = methodName;
@@ -37,11 +37,11 @@ public class MethodCallNode {
         this.args = args;
     }
 
-    public String getSnapshotId() {
+    public long getSnapshotId() {
         return snapshotId;
     }
 
-    public void setSnapshotId(String snapshotId) {
+    public void setSnapshotId(long snapshotId) {
         this.snapshotId = snapshotId;
     }
 
@@ -0,0 +1,89 @@
+package com.methodprobe.agent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for per-method advice variant selection.
+ */
+public class AdviceVariantTest {
+
+    private boolean snapshotEnabled;
+    private boolean probeAll;
+
+    @Before
+    public void setUp() {
+        snapshotEnabled = AgentConfig.snapshotEnabled;
+        probeAll = AgentConfig.treeSnapshotProbeAll;
+        AgentConfig.setFlatEnabled(true);
+        AgentConfig.setTreeEnabled(true);
+        AgentConfig.treeSnapshotProbeAll = false;
+    }
+
+    @After
+    public void tearDown() {
+        AgentConfig.snapshotEnabled = snapshotEnabled;
+        AgentConfig.treeSnapshotProbeAll = probeAll;
+    }
+
+    @Test
+    public void testLightestVariantWithoutSnapshot() {
+        AgentConfig.snapshotEnabled = false;
+        AgentConfig.addFlatPackage("com.variant.flat");
+        AgentConfig.addTreePackage("com.variant.tree");
+
+        assertEquals(AdviceVariant.TIMING, AdviceVariant.select("com.variant.flat.Service", "run"));
+        assertEquals(AdviceVariant.TREE, AdviceVariant.select("com.variant.tree.Service", "run"));
+    }
+
+    @Test
+    public void testSnapshotOnlyWhereArgumentsAreRead() {
+        AgentConfig.snapshotEnabled = true;
+        AgentConfig.addFlatPackage("com.variant.snapflat");
+        AgentConfig.addTreePackage("com.variant.snaptree");
+        AgentConfig.addTreeEntryMethod("com.variant.snaptree.Controller.handle");
+
+        assertEquals(AdviceVariant.SNAPSHOT, AdviceVariant.select("com.variant.snapflat.Service", "run"));
+        assertEquals(AdviceVariant.SNAPSHOT, AdviceVariant.select("com.variant.snaptree.Controller", "handle"));
+        // Tree nodes below the entry only keep arguments with probe=all
+        assertEquals(AdviceVariant.TREE, AdviceVariant.select("com.variant.snaptree.Dao", "load"));
+
+        AgentConfig.treeSnapshotProbeAll = true;
+        assertEquals(AdviceVariant.SNAPSHOT, AdviceVariant.select("com.variant.snaptree.Dao", "load"));
+    }
+
+    @Test
+    public void testPlanForWholeClass() {
+        AgentConfig.snapshotEnabled = true;
+        AgentConfig.addTreePackage("com.variant.plan");
+        AgentConfig.addTreeEntryMethod("com.variant.plan.Controller.handle");
+
+        Map<String, AdviceVariant> expected = new TreeMap<>();
+        expected.put(AdviceVariant.ANY_METHOD, AdviceVariant.TREE);
+        expected.put("handle", AdviceVariant.SNAPSHOT);
+        assertEquals(expected, ProbeMethodMatcher.planFor("com.variant.plan.Controller"));
+
+        AgentConfig.snapshotEnabled = false;
+        assertEquals(Collections.singletonMap(AdviceVariant.ANY_METHOD, AdviceVariant.TREE),
+                ProbeMethodMatcher.planFor("com.variant.plan.Controller"));
+    }
+
+    @Test
+    public void testPlanForConfiguredMethods() {
+        AgentConfig.snapshotEnabled = false;
+        AgentConfig.addFlatMethod("com.variant.named.Service.find");
+
+        assertEquals(Collections.singletonMap("find", AdviceVariant.TIMING),
+                ProbeMethodMatcher.planFor("com.variant.named.Service"));
+        assertNull(ProbeMethodMatcher.planFor("com.variant.named.Other"));
+    }
+}
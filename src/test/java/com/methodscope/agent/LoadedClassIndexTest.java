@@ -0,0 +1,84 @@
+package com.methodprobe.agent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LoadedClassIndex.
+ */
+public class LoadedClassIndexTest {
+
+    private static List<String> names(List<LoadedClassIndex.Entry> entries) {
+        List<String> names = new ArrayList<>();
+        for (LoadedClassIndex.Entry entry : entries) {
+            names.add(entry.className);
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void testFindByPackageAndClassPrefix() {
+        LoadedClassIndex index = new LoadedClassIndex();
+        index.addAll(new Class<?>[] { String.class, java.util.ArrayList.class, java.util.concurrent.ConcurrentHashMap.class,
+                LoadedClassIndexTest.class, int[].class });
+
+        assertEquals(4, index.size());
+        assertEquals(java.util.Arrays.asList("java.util.ArrayList", "java.util.concurrent.ConcurrentHashMap"),
+                names(index.find("java.util")));
+        assertEquals(Collections.singletonList("java.util.ArrayList"), names(index.find("java.util.ArrayList")));
+        assertEquals(Collections.singletonList("java.lang.String"), names(index.find("java.lang.String")));
+        assertEquals(4, index.find("").size());
+        assertTrue(index.find("com.example").isEmpty());
+    }
+
+    @Test
+    public void testTransformerRecordsNewLoadsOnly() throws Exception {
+        LoadedClassIndex index = new LoadedClassIndex();
+        ClassLoader loader = getClass().getClassLoader();
+
+        assertNull(index.transformer().transform(loader, "com/methodprobe/agent/LoadedClassIndexTest", null, null,
+                new byte[0]));
+        index.transformer().transform(loader, "java/lang/Integer", Integer.class, null, new byte[0]);
+
+        List<LoadedClassIndex.Entry> found = index.find("com.methodprobe.agent");
+        assertEquals(Collections.singletonList("com.methodprobe.agent.LoadedClassIndexTest"), names(found));
+        assertSame(LoadedClassIndexTest.class, found.get(0).resolve());
+        assertTrue("Redefinitions are not new loads", index.find("java.lang").isEmpty());
+    }
+
+    @Test
+    public void testUnresolvableEntriesAreDropped() {
+        LoadedClassIndex index = new LoadedClassIndex();
+        index.add("com.example.Missing", new ClassLoader(null) {
+        });
+
+        assertTrue(index.find("com.example").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testInstrumentedStateIsPerLoader() {
+        LoadedClassIndex index = new LoadedClassIndex();
+        ClassLoader loader = getClass().getClassLoader();
+        index.addAll(new Class<?>[] { LoadedClassIndexTest.class });
+
+        Map<String, AdviceVariant> plan = Collections.singletonMap("run", AdviceVariant.TIMING);
+        index.setInstrumented(LoadedClassIndexTest.class.getName(), loader, plan, 1);
+        assertEquals(plan, index.find(LoadedClassIndexTest.class.getName()).get(0).instrumentedPlan);
+
+        // Another loader's class of the same name is a different entry
+        index.setInstrumented(LoadedClassIndexTest.class.getName(), new ClassLoader(null) {
+        }, null, 0);
+        assertEquals(plan, index.find(LoadedClassIndexTest.class.getName()).get(0).instrumentedPlan);
+
+        index.setInstrumented(LoadedClassIndexTest.class.getName(), loader, null, 0);
+        assertNull(index.find(LoadedClassIndexTest.class.getName()).get(0).instrumentedPlan);
+    }
+}
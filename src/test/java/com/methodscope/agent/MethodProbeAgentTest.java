@@ -0,0 +1,136 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.methodprobe.agent.config.AgentConfig;
+import com.methodprobe.agent.tree.CallTreeContext;
+
+import static org.junit.Assert.*;
+
+/**
+ * Retransformation against a real Instrumentation: adding a config entry
+ * weaves classes that are already loaded, removing it restores their
+ * original bytecode.
+ */
+public class MethodProbeAgentTest {
+
+    /** Loaded copies of {@link Target} outside the agent's excluded packages, one per test */
+    private static final String REMOVED = "com.retransform.removed.Target";
+    private static final String ADDED = "com.retransform.added.Target";
+    private static final String REJECTED = "com.retransform.rejected.Target";
+
+    /**
+     * Reports whether it runs inside a call tree, i.e. whether the tree
+     * advice ran on entry.
+     */
+    public static class Target implements Callable<Boolean> {
+        @Override
+        public Boolean call() {
+            return CallTreeContext.isInTree();
+        }
+
+        /** Second method, for the session method cap */
+        public int size() {
+            return 1;
+        }
+    }
+
+    /**
+     * Plain loader for the fixture; ByteBuddy's own loaders are excluded.
+     */
+    private static class FixtureLoader extends ClassLoader {
+        FixtureLoader() {
+            super(MethodProbeAgentTest.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        AgentConfig.setTreeEnabled(true);
+        MethodProbeAgent.install(ByteBuddyAgent.install());
+    }
+
+    @After
+    public void tearDown() {
+        MethodProbeAgent.uninstall();
+        AgentConfig.removeTreeEntryMethod(REMOVED + ".call");
+        AgentConfig.removeTreeEntryMethod(ADDED + ".call");
+        CallTreeContext.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Callable<Boolean> load(String name) throws Exception {
+        byte[] bytes = new ByteBuddy().redefine(Target.class).name(name).make().getBytes();
+        return (Callable<Boolean>) new FixtureLoader().define(name, bytes).getDeclaredConstructor().newInstance();
+    }
+
+    @Test
+    public void testRemovedEntryRestoresOriginalBytecode() throws Exception {
+        AgentConfig.addTreeEntryMethod(REMOVED + ".call");
+        Callable<Boolean> target = load(REMOVED);
+        assertTrue("Woven on load", target.call());
+
+        AgentConfig.removeTreeEntryMethod(REMOVED + ".call");
+        assertEquals(1, MethodProbeAgent.retransformClasses(REMOVED));
+        assertFalse("Advice no longer runs", target.call());
+        // Nothing changed since, so nothing to retransform
+        assertEquals(0, MethodProbeAgent.retransformClasses(REMOVED));
+    }
+
+    @Test
+    public void testAddedEntryWeavesLoadedClass() throws Exception {
+        Callable<Boolean> target = load(ADDED);
+        assertFalse(target.call());
+
+        // Retransformation may only change method bodies
+        AgentConfig.addTreeEntryMethod(ADDED + ".call");
+        assertEquals(1, MethodProbeAgent.retransformClasses(ADDED));
+        assertTrue("Advice runs after retransformation", target.call());
+    }
+
+    @Test
+    public void testRejectedSessionLeavesNoWovenClass() throws Exception {
+        List<Callable<Boolean>> loaded = new ArrayList<>();
+        // The application loads a class while the session's method cap is checked
+        LoadedClassIndex index = new LoadedClassIndex() {
+            @Override
+            List<Entry> find(String prefix) {
+                if (loaded.isEmpty()) {
+                    try {
+                        loaded.add(load(REJECTED));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    addAll(new Class<?>[] { loaded.get(0).getClass() });
+                }
+                return super.find(prefix);
+            }
+        };
+        SessionManager.Session session = new SessionManager.Session(60, 1, false)
+                .treeEntries(Collections.singletonList(REJECTED + ".call"))
+                .treePackages(Collections.singletonList("com.retransform.rejected"));
+        try {
+            new SessionManager(index).start(session);
+            fail("Expected the method cap to reject the session");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertFalse(AgentConfig.getTreeEntryMethods().contains(REJECTED + ".call"));
+        // The advice reads the reverted config at runtime, so check what the agent wove
+        LoadedClassIndex.Entry entry = MethodProbeAgent.getClassIndex().find(REJECTED).get(0);
+        assertNull("Advice woven during the session is gone", entry.instrumentedPlan);
+    }
+}
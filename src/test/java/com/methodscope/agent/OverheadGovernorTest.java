@@ -0,0 +1,130 @@
+package com.methodprobe.agent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the overhead governor's escalation. Without an
+ * Instrumentation nothing is retransformed, so these check config steps.
+ */
+public class OverheadGovernorTest {
+
+    private boolean snapshotEnabled;
+    private long flatThresholdMs;
+
+    @Before
+    public void setUp() {
+        snapshotEnabled = AgentConfig.snapshotEnabled;
+        flatThresholdMs = AgentConfig.getFlatThresholdMs();
+        AgentConfig.setFlatEnabled(true);
+        AgentConfig.setTreeEnabled(true);
+        AgentConfig.setFlatThresholdMs(10);
+    }
+
+    @After
+    public void tearDown() {
+        OverheadGovernor.reset();
+        AgentConfig.snapshotEnabled = snapshotEnabled;
+        AgentConfig.setFlatThresholdMs(flatThresholdMs);
+    }
+
+    @Test
+    public void testEscalatesStepByStepAndResets() {
+        AgentConfig.snapshotEnabled = true;
+        OverheadGovernor.MethodCost hot = cost("com.governor.steps.Service", "get", 100, 1_000);
+
+        assertEquals(OverheadGovernor.Step.SAMPLING, OverheadGovernor.escalate(5, Arrays.asList(hot)));
+        assertFalse(AgentConfig.isShedMethod("com.governor.steps.Service", "get"));
+        assertEquals(OverheadGovernor.Step.NO_TREE_ARGS, OverheadGovernor.escalate(5, Arrays.asList(hot)));
+        assertFalse(AgentConfig.treeCaptureArgs);
+        assertTrue(AgentConfig.snapshotEnabled);
+        assertEquals(OverheadGovernor.Step.NO_SNAPSHOTS, OverheadGovernor.escalate(5, Arrays.asList(hot)));
+        assertFalse(AgentConfig.snapshotEnabled);
+        assertEquals(OverheadGovernor.Step.SHED_METHODS, OverheadGovernor.escalate(5, Arrays.asList(hot)));
+        assertTrue(AgentConfig.isShedMethod("com.governor.steps.Service", "get"));
+
+        String json = OverheadGovernor.toJson();
+        assertTrue(json.contains("\"step\":\"SHED_METHODS\""));
+        assertTrue(json.contains("\"flatSampleInterval\":" + AgentConfig.getOverheadSampleInterval()));
+        assertTrue(json.contains("{\"step\":\"NO_SNAPSHOTS\""));
+
+        OverheadGovernor.reset();
+        assertEquals(OverheadGovernor.Step.NONE, OverheadGovernor.getStep());
+        assertTrue(AgentConfig.treeCaptureArgs);
+        assertTrue(AgentConfig.snapshotEnabled);
+        assertFalse(AgentConfig.isShedMethod("com.governor.steps.Service", "get"));
+        assertTrue(OverheadGovernor.toJson().contains("\"flatSampleInterval\":1"));
+    }
+
+    @Test
+    public void testNoisyOrSingleWindowsDoNotEscalate() {
+        double overBudget = AgentConfig.getOverheadMaxPercent() + 50;
+        int enough = OverheadGovernor.MIN_WINDOW_SAMPLES;
+        OverheadGovernor.MethodCost cold = cost("com.governor.noisy.Service", "get", 1, 50_000);
+
+        // One cold-JIT sample, scaled up by the sample rate, far over budget
+        for (int i = 0; i < OverheadGovernor.OVER_BUDGET_CHECKS + 1; i++) {
+            assertEquals(OverheadGovernor.Step.NONE, OverheadGovernor.judge(overBudget, 1, Arrays.asList(cold)));
+        }
+        // Over budget with enough samples, but interrupted by a window under budget
+        OverheadGovernor.judge(overBudget, enough, Arrays.asList(cold));
+        OverheadGovernor.judge(0, enough, Arrays.asList(cold));
+        for (int i = 1; i < OverheadGovernor.OVER_BUDGET_CHECKS; i++) {
+            assertEquals(OverheadGovernor.Step.NONE, OverheadGovernor.judge(overBudget, enough, Arrays.asList(cold)));
+        }
+        assertEquals(OverheadGovernor.Step.SAMPLING, OverheadGovernor.judge(overBudget, enough, Arrays.asList(cold)));
+    }
+
+    @Test
+    public void testStepsThatDoNotApplyAreSkipped() {
+        AgentConfig.snapshotEnabled = false;
+        OverheadGovernor.MethodCost hot = cost("com.governor.skip.Service", "get", 100, 1_000);
+
+        assertEquals(OverheadGovernor.Step.SAMPLING, OverheadGovernor.escalate(5, Arrays.asList(hot)));
+        // No snapshots, so neither tree arguments nor snapshots can be turned off
+        assertEquals(OverheadGovernor.Step.SHED_METHODS, OverheadGovernor.escalate(5, Arrays.asList(hot)));
+        assertTrue(AgentConfig.isShedMethod("com.governor.skip.Service", "get"));
+    }
+
+    @Test
+    public void testShedsOnlyCheapMethodsOutsideTreeEntries() {
+        AgentConfig.snapshotEnabled = false;
+        AgentConfig.addFlatPackage("com.governor.shed");
+        AgentConfig.addTreeEntryMethod("com.governor.shed.Controller.handle");
+        OverheadGovernor.escalate(5, Arrays.<OverheadGovernor.MethodCost>asList());
+
+        OverheadGovernor.escalate(5, Arrays.asList(
+                cost("com.governor.shed.Service", "get", 100, 1_000),
+                cost("com.governor.shed.Service", "slowQuery", 100, 50_000_000),
+                cost("com.governor.shed.Controller", "handle", 100, 1_000)));
+        assertTrue(AgentConfig.isShedMethod("com.governor.shed.Service", "get"));
+        assertFalse(AgentConfig.isShedMethod("com.governor.shed.Service", "slowQuery"));
+        assertFalse(AgentConfig.isShedMethod("com.governor.shed.Controller", "handle"));
+
+        // The shed method keeps no advice; the rest of the class does
+        assertEquals(AdviceVariant.NONE, AdviceVariant.select("com.governor.shed.Service", "get"));
+        Map<String, AdviceVariant> plan = ProbeMethodMatcher.planFor("com.governor.shed.Service");
+        assertEquals(AdviceVariant.NONE, plan.get("get"));
+        assertEquals(AdviceVariant.TIMING, plan.get(AdviceVariant.ANY_METHOD));
+
+        AgentConfig.removeFlatPackage("com.governor.shed");
+        AgentConfig.removeTreeEntryMethod("com.governor.shed.Controller.handle");
+    }
+
+    private static OverheadGovernor.MethodCost cost(String className, String methodName, int samples,
+            long meanNanos) {
+        OverheadGovernor.MethodCost cost = new OverheadGovernor.MethodCost(className, methodName);
+        for (int i = 0; i < samples; i++) {
+            cost.record(meanNanos, 100);
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,219 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import com.methodprobe.agent.config.AgentConfig;
+import com.methodprobe.agent.log.LogOutputFactory;
+import com.methodprobe.agent.log.MethodEvent;
+import com.methodprobe.agent.snapshot.SnapshotHelper;
+import com.methodprobe.agent.snapshot.SnapshotIdGenerator;
+import com.methodprobe.agent.snapshot.SnapshotRateLimiter;
+import com.methodprobe.agent.tree.CallTreeContext;
+
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+/**
+ * Compares the fully inlined advice with the split advice and its lighter
+ * variants on a small method.
+ *
+ * Reports the bytecode size of the woven method against the JIT inlining
+ * limits and the throughput of a loop calling it. Not a unit test; run
+ * after {@code mvn test-compile} with
+ * {@code java -cp target/test-classes:target/classes:<dependencies>
+ * com.methodprobe.agent.ProbeAdviceBenchmark}, optionally adding
+ * {@code -XX:+UnlockDiagnosticVMOptions -XX:+PrintInlining} to see the JIT's
+ * inlining decisions for {@code work}.
+ */
+public class ProbeAdviceBenchmark {
+
+    private static final int MAX_INLINE_SIZE = 35;
+    private static final int FREQ_INLINE_SIZE = 325;
+    private static final int ITERATIONS = 5_000_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * The instrumented method and the uninstrumented loop calling it.
+     */
+    public static class Target {
+        public int work(int x) {
+            return x * 31 + 7;
+        }
+
+        public long loop(int n) {
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += work(i);
+            }
+            return sum;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Probed but never slow enough to log: measures the always-paid path
+        AgentConfig.setFlatEnabled(true);
+        AgentConfig.setFlatThresholdMs(Long.MAX_VALUE / 1_000_000);
+        String[] variants = { "plain", "inline", "split", "tree", "timing" };
+        Class<?>[] advice = { null, LegacyProbeAdvice.class, ProbeAdvice.class, TreeAdvice.class,
+                TimingAdvice.class };
+
+        System.out.println(String.format(Locale.ROOT, "%-8s %12s %14s", "advice", "work() bytes", "ns/call"));
+        for (int i = 0; i < variants.length; i++) {
+            String name = Target.class.getName() + "$" + variants[i];
+            AgentConfig.addFlatMethod(name + ".work");
+
+            DynamicType.Builder<?> builder = new ByteBuddy().redefine(Target.class).name(name);
+            if (advice[i] != null) {
+                builder = builder.visit(Advice.to(advice[i]).on(named("work")));
+            }
+            DynamicType.Unloaded<?> type = builder.make();
+            int codeSize = codeSize(type.getBytes(), "work");
+            Object target = type.load(ProbeAdviceBenchmark.class.getClassLoader(),
+                    ClassLoadingStrategy.Default.WRAPPER).getLoaded().getConstructor().newInstance();
+
+            double nanos = Double.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                Object sum = target.getClass().getMethod("loop", int.class).invoke(target, ITERATIONS);
+                nanos = Math.min(nanos, (System.nanoTime() - start) / (double) ITERATIONS);
+                if (sum == null) {
+                    throw new IllegalStateException();
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "%-8s %12d %14.2f  %s", variants[i], codeSize, nanos,
+                    codeSize <= MAX_INLINE_SIZE ? "inlinable"
+                            : codeSize <= FREQ_INLINE_SIZE ? "inlinable when hot" : "too big to inline"));
+        }
+        LogOutputFactory.shutdown();
+    }
+
+    /**
+     * The advice as it was before the split: all logic inlined into the
+     * instrumented method.
+     */
+    public static class LegacyProbeAdvice {
+
+        @Advice.OnMethodEnter
+        public static long onEnter(
+                @Advice.Origin("#t") String className,
+                @Advice.Origin("#m") String methodName,
+                @Advice.AllArguments Object[] args) {
+            CallTreeContext.onMethodEnter(className, methodName, args);
+            return System.nanoTime();
+        }
+
+        @Advice.OnMethodExit(onThrowable = Throwable.class)
+        public static void onExit(
+                @Advice.Enter long startTime,
+                @Advice.Origin("#t") String className,
+                @Advice.Origin("#m") String methodName,
+                @Advice.AllArguments Object[] args,
+                @Advice.Thrown Throwable thrown) {
+            long durationNanos = System.nanoTime() - startTime;
+            double durationMs = durationNanos / 1_000_000.0;
+            boolean isException = thrown != null;
+
+            CallTreeContext.onMethodExit(className, methodName, thrown);
+            boolean captureException = isException && AgentConfig.shouldCaptureException(thrown);
+
+            if (AgentConfig.isFlatEnabled()
+                    && !CallTreeContext.isInTree()
+                    && AgentConfig.shouldLogFlatMethod(className, methodName)) {
+                boolean triggerOnTimeout = AgentConfig.flatTriggerOnTimeout;
+                boolean triggerOnException = AgentConfig.flatTriggerOnException;
+                long thresholdMs = AgentConfig.getFlatThresholdMs();
+
+                boolean shouldLog = false;
+                if (triggerOnTimeout && durationMs >= thresholdMs) {
+                    shouldLog = true;
+                }
+                if (triggerOnException && captureException) {
+                    shouldLog = true;
+                }
+
+                if (shouldLog) {
+                    long snapshotId = 0;
+                    if (AgentConfig.snapshotEnabled && SnapshotRateLimiter.tryAcquire(className, methodName)) {
+                        snapshotId = SnapshotIdGenerator.next();
+                        SnapshotHelper.createSnapshot(snapshotId, className, methodName, durationMs, args, thrown);
+                    }
+                    Thread thread = Thread.currentThread();
+                    long startMillis = System.currentTimeMillis() - durationNanos / 1_000_000;
+                    LogOutputFactory.writeEvent(new MethodEvent(className + "." + methodName,
+                            startMillis, durationNanos, thread.getId(), thread.getName(),
+                            captureException ? thrown.getClass().getName() : null, snapshotId));
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytecode length of a method's Code attribute, read from the class file.
+     */
+    static int codeSize(byte[] classFile, String methodName) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        in.skipBytes(8); // magic, minor, major
+        int poolCount = in.readUnsignedShort();
+        String[] utf8 = new String[poolCount];
+        for (int i = 1; i < poolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8[i] = in.readUTF();
+                    break;
+                case 5: // long
+                case 6: // double
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                case 7: case 8: case 16: case 19: case 20:
+                    in.skipBytes(2);
+                    break;
+                case 15:
+                    in.skipBytes(3);
+                    break;
+                default: // int, float, refs, name-and-type, dynamic
+                    in.skipBytes(4);
+            }
+        }
+        in.skipBytes(6); // access, this, super
+        in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+        skipMembers(in); // fields
+        int methods = in.readUnsignedShort();
+        for (int m = 0; m < methods; m++) {
+            in.skipBytes(2);
+            String name = utf8[in.readUnsignedShort()];
+            in.skipBytes(2);
+            int attributes = in.readUnsignedShort();
+            for (int a = 0; a < attributes; a++) {
+                String attribute = utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+                if (name.equals(methodName) && "Code".equals(attribute)) {
+                    in.skipBytes(4); // max stack, max locals
+                    return in.readInt();
+                }
+                in.skipBytes(length);
+            }
+        }
+        throw new IllegalArgumentException("No method " + methodName);
+    }
+
+    private static void skipMembers(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.skipBytes(6);
+            int attributes = in.readUnsignedShort();
+            for (int a = 0; a < attributes; a++) {
+                in.skipBytes(2);
+                in.skipBytes(in.readInt());
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.Advice;
+import org.junit.Test;
+
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the size of the inlined advice variants.
+ */
+public class ProbeAdviceTest {
+
+    private static int wovenSize(Class<?> advice) throws Exception {
+        byte[] bytes = new ByteBuddy().redefine(ProbeAdviceBenchmark.Target.class)
+                .visit(Advice.to(advice).on(named("work")))
+                .make().getBytes();
+        return ProbeAdviceBenchmark.codeSize(bytes, "work");
+    }
+
+    @Test
+    public void testWovenMethodStaysInlinable() throws Exception {
+        int split = wovenSize(ProbeAdvice.class);
+        int inline = wovenSize(ProbeAdviceBenchmark.LegacyProbeAdvice.class);
+
+        // FreqInlineSize: the JIT still inlines hot methods up to this size
+        assertTrue("Woven size " + split, split <= 325);
+        assertTrue("Split " + split + " vs inline " + inline, split * 2 < inline);
+    }
+
+    @Test
+    public void testLighterVariantsAreSmaller() throws Exception {
+        int snapshot = wovenSize(ProbeAdvice.class);
+        int tree = wovenSize(TreeAdvice.class);
+        int timing = wovenSize(TimingAdvice.class);
+
+        // No argument array to build (and box into) below the snapshot variant
+        assertTrue("Tree " + tree + " vs snapshot " + snapshot, tree < snapshot);
+        assertTrue("Timing " + timing + " vs tree " + tree, timing < tree);
+    }
+}
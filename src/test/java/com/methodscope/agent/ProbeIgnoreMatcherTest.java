@@ -0,0 +1,74 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ByteArrayClassLoader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ProbeIgnoreMatcher.
+ */
+public class ProbeIgnoreMatcherTest {
+
+    private static final ClassLoader APP_LOADER = ProbeIgnoreMatcherTest.class.getClassLoader();
+
+    @BeforeClass
+    public static void setUpClass() {
+        AgentConfig.init(null);
+        AgentConfig.setFlatEnabled(true);
+        AgentConfig.addFlatPackage("com.ignoretest.app");
+    }
+
+    @Test
+    public void testIgnoredByName() {
+        assertFalse(ProbeIgnoreMatcher.isIgnored("com.ignoretest.app.Service", APP_LOADER));
+        assertTrue(ProbeIgnoreMatcher.isIgnored("com.ignoretest.lib.Helper", APP_LOADER));
+        assertTrue(ProbeIgnoreMatcher.isIgnored("java.util.HashMap", APP_LOADER));
+
+        AgentConfig.addFlatClass("com.ignoretest.lib.Helper");
+        assertFalse(ProbeIgnoreMatcher.isIgnored("com.ignoretest.lib.Helper", APP_LOADER));
+        AgentConfig.removeFlatClass("com.ignoretest.lib.Helper");
+    }
+
+    @Test
+    public void testIgnoredByClassLoader() {
+        ClassLoader generated = new ByteArrayClassLoader(APP_LOADER, Collections.<String, byte[]>emptyMap());
+
+        assertTrue(ProbeIgnoreMatcher.isIgnored("com.ignoretest.app.Service", null));
+        assertTrue(ProbeIgnoreMatcher.isIgnored("com.ignoretest.app.Service", generated));
+    }
+
+    /**
+     * Loader type excluded only by the config loaded in the test.
+     */
+    private static class LateExcludedLoader extends ClassLoader {
+        LateExcludedLoader() {
+            super(APP_LOADER);
+        }
+    }
+
+    @Test
+    public void testClassLoaderVerdictFollowsConfig() {
+        ClassLoader loader = new LateExcludedLoader();
+        assertFalse(ProbeIgnoreMatcher.isIgnored("com.ignoretest.app.Service", loader));
+
+        AgentConfig.init("probe.exclude.classloaders=" + LateExcludedLoader.class.getName());
+        assertTrue(ProbeIgnoreMatcher.isIgnored("com.ignoretest.app.Service", loader));
+        assertTrue(ProbeIgnoreMatcher.isIgnored("com.ignoretest.app.Service", new LateExcludedLoader()));
+    }
+
+    @Test
+    public void testIgnoredTypesAreCounted() {
+        StartupReport report = new StartupReport();
+        ProbeIgnoreMatcher matcher = new ProbeIgnoreMatcher(report);
+
+        assertTrue(matcher.matches(TypeDescription.ForLoadedType.of(String.class), APP_LOADER, null, null, null));
+        assertTrue(report.toJson(), report.toJson().contains("\"typesIgnored\":1"));
+    }
+}
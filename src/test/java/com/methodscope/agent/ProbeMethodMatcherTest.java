@@ -0,0 +1,90 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ProbeMethodMatcher.
+ */
+public class ProbeMethodMatcherTest {
+
+    static class Entity implements Supplier<String> {
+        private String name;
+        private boolean active;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public String getaway() {
+            return "not a getter";
+        }
+
+        public void process() {
+            Runnable task = () -> name = "done";
+            task.run();
+        }
+
+        @Override
+        public String get() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static List<String> matched(ElementMatcher<? super MethodDescription> matcher) {
+        List<String> names = new ArrayList<>();
+        for (MethodDescription method : TypeDescription.ForLoadedType.of(Entity.class).getDeclaredMethods()) {
+            if (matcher.matches(method)) {
+                names.add(method.getName() + (method.isBridge() ? "(bridge)" : ""));
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Test
+    public void testConfiguredMethodsOnly() {
+        assertEquals(Arrays.asList("getName", "process"),
+                matched(ProbeMethodMatcher.forMethods(new HashSet<>(Arrays.asList("process", "getName")), true, true)));
+    }
+
+    @Test
+    public void testAllMethods() {
+        List<String> names = matched(ProbeMethodMatcher.forMethods(AgentConfig.ALL_METHODS, false, false));
+
+        assertTrue(names.containsAll(Arrays.asList("get", "get(bridge)", "getName", "setName", "toString")));
+        assertTrue("Lambda body is a method too", names.stream().anyMatch(n -> n.startsWith("lambda$")));
+    }
+
+    @Test
+    public void testSkipAccessorsAndSynthetic() {
+        assertEquals(Arrays.asList("get", "getaway", "process"),
+                matched(ProbeMethodMatcher.forMethods(AgentConfig.ALL_METHODS, true, true)));
+    }
+}
@@ -0,0 +1,159 @@
+package com.methodprobe.agent;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for time-boxed profiling sessions. Without an Instrumentation
+ * nothing is retransformed, so these check config rollback and the caps.
+ */
+public class SessionManagerTest {
+
+    /** Name of a loaded copy of {@link Target} outside the agent's excluded packages */
+    private static final String TARGET = "com.session.cap.Target";
+
+    /**
+     * Three methods for the method cap.
+     */
+    public static class Target {
+        public void a() {
+        }
+
+        public void b() {
+        }
+
+        public void c() {
+        }
+    }
+
+    private LoadedClassIndex index;
+    private SessionManager manager;
+
+    @Before
+    public void setUp() {
+        AgentConfig.setFlatEnabled(true);
+        AgentConfig.setTreeEnabled(true);
+        index = new LoadedClassIndex();
+        index.addAll(new Class<?>[] { new ByteBuddy().redefine(Target.class).name(TARGET).make()
+                .load(SessionManagerTest.class.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded() });
+        manager = new SessionManager(index);
+    }
+
+    @After
+    public void tearDown() {
+        AgentConfig.removeFlatClass(TARGET);
+    }
+
+    @Test
+    public void testStopRollsBackOnlyWhatSessionAdded() {
+        AgentConfig.addFlatClass("com.session.stop.Existing");
+        SessionManager.Session session = new SessionManager.Session(60, 0, false)
+                .flatClasses(Arrays.asList("com.session.stop.Existing", "com.session.stop.Added"))
+                .treePackages(Collections.singletonList("com.session.stop.tree"));
+
+        assertEquals(0, manager.start(session));
+        assertNotNull(session.getId());
+        assertEquals(AgentConfig.getSessionMaxMethods(), session.getMaxMethods());
+        assertTrue(AgentConfig.getFlatClasses().contains("com.session.stop.Added"));
+        assertTrue(AgentConfig.getTreePackages().contains("com.session.stop.tree"));
+
+        assertEquals(0, manager.stop(session.getId()));
+        assertFalse(AgentConfig.getFlatClasses().contains("com.session.stop.Added"));
+        assertFalse(AgentConfig.getTreePackages().contains("com.session.stop.tree"));
+        // Configured before the session, so it stays
+        assertTrue(AgentConfig.getFlatClasses().contains("com.session.stop.Existing"));
+        assertEquals(-1, manager.stop(session.getId()));
+        AgentConfig.removeFlatClass("com.session.stop.Existing");
+    }
+
+    @Test
+    public void testExpiredSessionRollsBack() {
+        SessionManager.Session session = new SessionManager.Session(60, 0, false)
+                .flatMethods(Collections.singletonList("com.session.expire.Service.run"));
+        manager.start(session);
+
+        manager.check(session.getExpiresAt() - 1);
+        assertTrue(AgentConfig.getFlatMethods().contains("com.session.expire.Service.run"));
+
+        manager.check(session.getExpiresAt());
+        assertFalse(AgentConfig.getFlatMethods().contains("com.session.expire.Service.run"));
+        assertEquals("[]", manager.toJson());
+    }
+
+    @Test
+    public void testSharedEntryStaysUntilLastSessionEnds() {
+        SessionManager.Session first = new SessionManager.Session(60, 0, false)
+                .flatPackages(Collections.singletonList("com.session.shared"));
+        SessionManager.Session second = new SessionManager.Session(60, 0, false)
+                .flatPackages(Collections.singletonList("com.session.shared"));
+        manager.start(first);
+        manager.start(second);
+
+        manager.stop(first.getId());
+        assertTrue(AgentConfig.getFlatPackages().contains("com.session.shared"));
+        manager.stop(second.getId());
+        assertFalse(AgentConfig.getFlatPackages().contains("com.session.shared"));
+    }
+
+    @Test
+    public void testMethodCapRejectsSessionBeforeApplying() {
+        SessionManager.Session session = new SessionManager.Session(60, 2, false)
+                .flatClasses(Collections.singletonList(TARGET));
+        try {
+            manager.start(session);
+            fail("Expected the method cap to reject the session");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("3 methods"));
+        }
+        assertNull(session.getId());
+        assertFalse(AgentConfig.getFlatClasses().contains(TARGET));
+
+        assertEquals(0, manager.start(new SessionManager.Session(60, 3, false)
+                .flatClasses(Collections.singletonList(TARGET))));
+    }
+
+    @Test
+    public void testSessionOverCapIsEnded() {
+        SessionManager.Session session = new SessionManager.Session(60, 3, false)
+                .flatClasses(Collections.singletonList(TARGET));
+        manager.start(session);
+
+        // More advice than the cap allows, e.g. from a package added later
+        LoadedClassIndex.Entry entry = index.find(TARGET).get(0);
+        index.setInstrumented(TARGET, entry.resolve().getClassLoader(), ProbeMethodMatcher.planFor(TARGET), 4);
+        manager.check(System.currentTimeMillis());
+        assertEquals("[]", manager.toJson());
+        assertFalse(AgentConfig.getFlatClasses().contains(TARGET));
+    }
+
+    @Test
+    public void testLimitsAreValidated() {
+        assertRejected(new SessionManager.Session(0, 0, false)
+                .flatPackages(Collections.singletonList("com.session.limits")));
+        assertRejected(new SessionManager.Session(AgentConfig.getSessionMaxTtl() + 1, 0, false)
+                .flatPackages(Collections.singletonList("com.session.limits")));
+        assertRejected(new SessionManager.Session(60, AgentConfig.getSessionMaxMethods() + 1, false)
+                .flatPackages(Collections.singletonList("com.session.limits")));
+        assertRejected(new SessionManager.Session(60, 0, false));
+        assertFalse(AgentConfig.getFlatPackages().contains("com.session.limits"));
+    }
+
+    private void assertRejected(SessionManager.Session session) {
+        try {
+            manager.start(session);
+            fail("Expected " + session + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
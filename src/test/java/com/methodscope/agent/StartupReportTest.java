@@ -0,0 +1,36 @@
+package com.methodprobe.agent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StartupReport.
+ */
+public class StartupReportTest {
+
+    @Test
+    public void testQuietUntilReported() {
+        StartupReport report = new StartupReport();
+        report.start(60_000);
+        assertTrue(report.isQuiet());
+
+        report.recordMatch(1_000_000, true);
+        report.recordMatch(500_000, false);
+        report.recordTransformation();
+        report.recordError();
+        report.report();
+
+        assertFalse(report.isQuiet());
+        String json = report.toJson();
+        assertTrue(json, json.contains("\"typesChecked\":2,\"typesMatched\":1,\"matchMs\":1.500"));
+        assertTrue(json, json.contains("\"transformed\":1,\"errors\":1"));
+    }
+
+    @Test
+    public void testNoWindowIsNeverQuiet() {
+        StartupReport report = new StartupReport();
+        report.start(0);
+        assertFalse(report.isQuiet());
+    }
+}
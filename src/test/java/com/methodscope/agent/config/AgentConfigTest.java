@@ -175,6 +175,26 @@ public class AgentConfigTest {
         assertTrue(AgentConfig.shouldInstrumentClass("com.combtree.Service"));
     }
 
+    @Test
+    public void testMethodsToInstrument() {
+        AgentConfig.setFlatEnabled(true);
+        AgentConfig.setTreeEnabled(true);
+        AgentConfig.addFlatMethod("com.methodlevel.Service.pay");
+        AgentConfig.addTreeEntryMethod("com.methodlevel.Service.handle");
+        AgentConfig.addFlatMethod("com.methodlevel.ServiceImpl.other");
+        AgentConfig.addFlatClass("com.methodlevel.Whole");
+
+        assertEquals(new java.util.TreeSet<>(java.util.Arrays.asList("handle", "pay")),
+                AgentConfig.getMethodsToInstrument("com.methodlevel.Service"));
+        assertEquals(AgentConfig.ALL_METHODS, AgentConfig.getMethodsToInstrument("com.methodlevel.Whole"));
+        assertNull(AgentConfig.getMethodsToInstrument("com.methodlevel.Other"));
+
+        AgentConfig.setTreeEnabled(false);
+        assertEquals(java.util.Collections.singleton("pay"),
+                AgentConfig.getMethodsToInstrument("com.methodlevel.Service"));
+        AgentConfig.setTreeEnabled(true);
+    }
+
     // ==== Exclusion Tests (via shouldInstrumentClass) ====
 
     @Test
@@ -199,4 +219,31 @@ public class AgentConfigTest {
         assertTrue("User classes should be instrumentable",
                 AgentConfig.shouldInstrumentClass("com.userapp.Service"));
     }
+
+    @Test
+    public void testPackageMatchCacheFollowsConfigChanges() {
+        AgentConfig.setFlatEnabled(true);
+        AgentConfig.addFlatPackage("com.pkgcache.web");
+
+        assertTrue(AgentConfig.shouldInstrumentClass("com.pkgcache.web.Controller"));
+        // Package config is a name prefix, not only whole packages
+        assertTrue(AgentConfig.shouldInstrumentClass("com.pkgcache.webapp.Controller"));
+        assertFalse(AgentConfig.shouldInstrumentClass("com.pkgcache.dao.Repository"));
+
+        AgentConfig.addFlatClass("com.pkgcache.dao.Repository");
+        assertTrue(AgentConfig.shouldInstrumentClass("com.pkgcache.dao.Repository"));
+        assertFalse(AgentConfig.shouldInstrumentClass("com.pkgcache.dao.Other"));
+
+        AgentConfig.removeFlatClass("com.pkgcache.dao.Repository");
+        assertFalse(AgentConfig.shouldInstrumentClass("com.pkgcache.dao.Repository"));
+    }
+
+    @Test
+    public void testInlineAgentArgs() {
+        AgentConfig.init("probe.flat.classes=com.inline.OrderService;com.inline.PayService");
+
+        assertTrue(AgentConfig.getFlatClasses().contains("com.inline.OrderService"));
+        assertTrue(AgentConfig.getFlatClasses().contains("com.inline.PayService"));
+        assertTrue(AgentConfig.shouldInstrumentClass("com.inline.PayService"));
+    }
 }
@@ -8,6 +8,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -116,6 +117,24 @@ public class AsyncFileLogOutputTest {
         assertTrue("Should contain message 2", content.contains("Shutdown test message 2"));
     }
 
+    @Test
+    public void testFlushWritesEverythingInOrder() throws Exception {
+        logOutput = new AsyncFileLogOutput(TEST_LOG_DIR, 100000, 5000); // Long flush interval
+
+        int count = 20000;
+        for (int i = 0; i < count; i++) {
+            logOutput.write("Ordered message " + i + "\n");
+        }
+        logOutput.flush();
+
+        String todayDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        List<String> lines = readFileLines(new File(TEST_LOG_DIR, "method-probe-" + todayDate + ".log"));
+        assertEquals("Everything written before flush() is in the file", count, lines.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("Ordered message " + i, lines.get(i));
+        }
+    }
+
     @Test
     public void testHighConcurrency() throws Exception {
         logOutput = new AsyncFileLogOutput(TEST_LOG_DIR, 10000, 100);
@@ -178,6 +197,79 @@ public class AsyncFileLogOutputTest {
         assertTrue("Queue should not be empty", logOutput.getQueueSize() >= 0);
     }
 
+    @Test
+    public void testLargeMultiByteMessagesSpanBuffers() throws Exception {
+        logOutput = new AsyncFileLogOutput(TEST_LOG_DIR, 1000, 100);
+
+        // Larger than all I/O buffers combined, with 3-byte UTF-8 characters
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            big.append("日志");
+        }
+        big.append("-end\n");
+        logOutput.write("before\n");
+        logOutput.write(big.toString());
+        logOutput.write("after\n");
+        logOutput.shutdown();
+        logOutput = null;
+
+        String todayDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        File logFile = new File(TEST_LOG_DIR, "method-probe-" + todayDate + ".log");
+        String content = new String(Files.readAllBytes(logFile.toPath()), StandardCharsets.UTF_8);
+        assertEquals("before\n" + big + "after\n", content);
+    }
+
+    @Test
+    public void testDropNewestCountsAndReportsDrops() throws Exception {
+        // Capacity 4; the writer has not run yet while we fill it from this thread
+        logOutput = new AsyncFileLogOutput(TEST_LOG_DIR, 4, 5000, DropPolicy.NEWEST);
+        for (int i = 0; i < 1000; i++) {
+            logOutput.write("Burst message " + i + "\n");
+        }
+        assertTrue("Some messages should be dropped", logOutput.getDroppedCount() > 0);
+
+        long dropped = logOutput.getDroppedCount();
+        logOutput.shutdown();
+        logOutput = null;
+
+        String todayDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        String content = readFileContent(new File(TEST_LOG_DIR, "method-probe-" + todayDate + ".log"));
+        assertTrue("First message kept with drop-newest", content.contains("Burst message 0\n"));
+        assertTrue("Drop count reported in the log", content.contains("total=" + dropped + ")"));
+    }
+
+    @Test
+    public void testSizeRollingCompressesAndKeepsMaxFiles() throws Exception {
+        // Roll every ~1KB, keep 3 files in total
+        logOutput = new AsyncFileLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST, 1024, 3, true);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            line.append('x');
+        }
+        for (int i = 0; i < 20; i++) {
+            logOutput.write(line + "-" + i + "\n");
+            logOutput.flush();
+        }
+        logOutput.write("last\n");
+        logOutput.shutdown();
+        logOutput = null;
+
+        String todayDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        File active = new File(TEST_LOG_DIR, "method-probe-" + todayDate + ".log");
+        assertTrue("Active file keeps its daily name", active.exists());
+        assertTrue(readFileContent(active).contains("last"));
+
+        String[] names = new File(TEST_LOG_DIR).list();
+        assertNotNull(names);
+        assertEquals("Retention keeps max files", 3, names.length);
+        for (String name : names) {
+            if (!name.equals(active.getName())) {
+                assertTrue("Rolled file is indexed and gzipped: " + name,
+                        name.matches("method-probe-" + todayDate + "\\.\\d+\\.log\\.gz"));
+            }
+        }
+    }
+
     private String readFileContent(File file) throws IOException {
         StringBuilder content = new StringBuilder();
         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
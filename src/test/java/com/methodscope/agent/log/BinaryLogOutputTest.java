@@ -0,0 +1,142 @@
+package com.methodprobe.agent.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BinaryLogOutput and LogReader.
+ */
+public class BinaryLogOutputTest {
+
+    private static final String TEST_LOG_DIR = "./target/test-binary-logs";
+    private BinaryLogOutput logOutput;
+
+    @Before
+    public void setUp() {
+        deleteDirectory(new File(TEST_LOG_DIR));
+    }
+
+    @After
+    public void tearDown() {
+        if (logOutput != null) {
+            logOutput.shutdown();
+        }
+        deleteDirectory(new File(TEST_LOG_DIR));
+    }
+
+    @Test
+    public void testFlatAndTreeRoundTripAsText() throws Exception {
+        logOutput = new BinaryLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        logOutput.writeEvent(new MethodEvent("com.example.Service.query", 1000L, 12_340_000L, 7L, "worker-1",
+                "java.lang.IllegalStateException", 0));
+        logOutput.writeTree(sampleTree());
+        logOutput.shutdown();
+        logOutput = null;
+
+        String text = decode("text");
+        assertTrue(text.contains("[worker-1] com.example.Service.query - 12.34 ms [EXCEPTION: IllegalStateException]"));
+        assertTrue(text.contains("Method Call Tree"));
+        assertTrue(text.contains("└── com.example.Controller.handle - 20.00 ms"));
+        assertTrue(text.contains("    ├── com.example.Dao.load - 5.00 ms [snap:"));
+        assertTrue(text.contains("    └── com.example.Dao.save - 1.50 ms"));
+    }
+
+    @Test
+    public void testCsvAndJson() throws Exception {
+        logOutput = new BinaryLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        logOutput.writeEvent(new MethodEvent("com.example.A.run", 1000L, 2_000_000L, 3L, "main", null, 0));
+        logOutput.writeTree(sampleTree());
+        logOutput.shutdown();
+        logOutput = null;
+
+        String[] csv = decode("csv").split("\\R");
+        assertEquals("Flat event plus three tree nodes", 4, csv.length);
+        assertTrue(csv[0].startsWith("-1,com.example.A.run,"));
+        assertTrue(csv[2].startsWith("1,com.example.Dao.load,"));
+
+        String[] json = decode("json").split("\\R");
+        assertEquals(4, json.length);
+        assertTrue(json[0].startsWith("{\"type\":\"flat\",\"method\":\"com.example.A.run\""));
+        assertTrue(json[1].contains("\"depth\":0"));
+        assertTrue(json[2].contains("\"snapshotId\":\""));
+    }
+
+    @Test
+    public void testAppendAfterRestartResetsDictionary() throws Exception {
+        logOutput = new BinaryLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        logOutput.writeEvent(new MethodEvent("com.example.First.run", 1000L, 1_000_000L, 1L, "t1", null, 0));
+        logOutput.shutdown();
+
+        logOutput = new BinaryLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        logOutput.writeEvent(new MethodEvent("com.example.Second.run", 1000L, 1_000_000L, 1L, "t2", null, 0));
+        logOutput.shutdown();
+        logOutput = null;
+
+        String text = decode("text");
+        assertTrue(text.contains("[t1] com.example.First.run"));
+        assertTrue(text.contains("[t2] com.example.Second.run"));
+    }
+
+    @Test
+    public void testTruncatedTailIsIgnored() throws Exception {
+        logOutput = new BinaryLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        logOutput.writeEvent(new MethodEvent("com.example.A.run", 1000L, 1_000_000L, 1L, "main", null, 0));
+        logOutput.writeEvent(new MethodEvent("com.example.B.run", 1000L, 1_000_000L, 1L, "main", null, 0));
+        logOutput.shutdown();
+        logOutput = null;
+
+        File file = logFile();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), java.util.Arrays.copyOf(bytes, bytes.length - 3));
+
+        String text = decode("text");
+        assertTrue(text.contains("com.example.A.run"));
+        assertFalse(text.contains("com.example.B.run"));
+    }
+
+    private MethodEvent sampleTree() {
+        MethodEvent root = new MethodEvent("com.example.Controller.handle", 1000L, 20_000_000L, 9L, "http-1", null, 0);
+        root.addChild(new MethodEvent("com.example.Dao.load", 1001L, 5_000_000L, 9L, "http-1", null, 42L << 22));
+        root.addChild(new MethodEvent("com.example.Dao.save", 1010L, 1_500_000L, 9L, "http-1", null, 0));
+        return root;
+    }
+
+    private File logFile() {
+        String todayDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        return new File(TEST_LOG_DIR, "method-probe-" + todayDate + ".mpb");
+    }
+
+    private String decode(String format) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = Files.newInputStream(logFile().toPath());
+                PrintStream out = new PrintStream(bytes, true, "UTF-8")) {
+            LogReader.read(in, format, out);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void deleteDirectory(File dir) {
+        if (dir.exists()) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+}
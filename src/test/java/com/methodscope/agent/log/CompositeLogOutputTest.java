@@ -0,0 +1,216 @@
+package com.methodprobe.agent.log;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the multi-sink CompositeLogOutput and its sinks.
+ */
+public class CompositeLogOutputTest {
+
+    private static final String TEST_LOG_DIR = "./target/test-composite-logs";
+
+    private final List<LogOutput> toShutdown = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (LogOutput output : toShutdown) {
+            output.shutdown();
+        }
+        File dir = new File(TEST_LOG_DIR);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Records the text it receives; optionally blocks until released.
+     */
+    private static class RecordingOutput implements LogOutput {
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release;
+
+        RecordingOutput(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(String message) {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            texts.add(message);
+        }
+    }
+
+    private static MethodEvent event(String method, long durationMs, String exception) {
+        return new MethodEvent(method, System.currentTimeMillis(), durationMs * 1_000_000L, 1L, "main", exception, 0);
+    }
+
+    @Test
+    public void testSlowSinkDoesNotStallOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingOutput slow = new RecordingOutput(release);
+        RecordingOutput fast = new RecordingOutput(null);
+        Map<String, LogOutput> sinks = new LinkedHashMap<>();
+        sinks.put("slow", new QueuedLogOutput(slow, 16, 50, DropPolicy.NEWEST, "test-slow"));
+        sinks.put("fast", new QueuedLogOutput(fast, 1024, 50, DropPolicy.NEWEST, "test-fast"));
+        CompositeLogOutput composite = new CompositeLogOutput(sinks);
+        toShutdown.add(composite);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            composite.writeEvent(event("com.example.A.run", 1, null));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Writes should not wait for the blocked sink", elapsedMs < 1000);
+
+        sinks.get("fast").flush();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (fast.texts.size() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(100, fast.texts.size());
+        assertEquals(0, sinks.get("fast").getDroppedCount());
+        assertTrue("Blocked sink drops its own entries", sinks.get("slow").getDroppedCount() > 0);
+        assertEquals(sinks.get("slow").getDroppedCount(), composite.getDroppedCount());
+
+        release.countDown();
+    }
+
+    @Test
+    public void testFlushWaitsForInFlightBatchAndFlushesDelegate() throws Exception {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> flushedAt = Collections.synchronizedList(new ArrayList<>());
+        LogOutput slow = new LogOutput() {
+            @Override
+            public void write(String message) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.add(message);
+            }
+
+            @Override
+            public void flush() {
+                flushedAt.add(written.size());
+            }
+        };
+        QueuedLogOutput queued = new QueuedLogOutput(slow, 1024, 60000, DropPolicy.NEWEST, "test-flush");
+        toShutdown.add(queued);
+
+        for (int i = 0; i < 5; i++) {
+            queued.write("message " + i + "\n");
+        }
+        queued.flush();
+
+        assertEquals(5, written.size());
+        assertFalse("Delegate flushed", flushedAt.isEmpty());
+        assertEquals(Integer.valueOf(5), flushedAt.get(flushedAt.size() - 1));
+    }
+
+    @Test
+    public void testTextIsFormattedOnceAndShared() throws Exception {
+        RecordingOutput first = new RecordingOutput(null);
+        RecordingOutput second = new RecordingOutput(null);
+        Map<String, LogOutput> sinks = new LinkedHashMap<>();
+        sinks.put("first", first);
+        sinks.put("second", second);
+        CompositeLogOutput composite = new CompositeLogOutput(sinks);
+
+        composite.writeEvent(event("com.example.A.run", 2, null));
+
+        assertEquals(1, first.texts.size());
+        assertSame(first.texts.get(0), second.texts.get(0));
+        assertTrue(first.texts.get(0).contains("com.example.A.run - 2.00 ms"));
+    }
+
+    @Test
+    public void testSummaryAggregatesFlatAndTreeCalls() throws Exception {
+        SummaryLogOutput summary = new SummaryLogOutput(TEST_LOG_DIR, 60000);
+        QueuedLogOutput queued = new QueuedLogOutput(summary, 1024, 50, DropPolicy.OLDEST, "test-summary");
+
+        queued.writeEvent(event("com.example.A.fast", 1, null));
+        queued.writeEvent(event("com.example.A.fast", 3, "java.io.IOException"));
+        MethodEvent root = event("com.example.B.slow", 100, null);
+        root.addChild(event("com.example.A.fast", 2, null));
+        queued.writeTree(root);
+        queued.write("plain text is ignored\n");
+        queued.shutdown();
+
+        String text = new String(Files.readAllBytes(summary.getFile().toPath()), StandardCharsets.UTF_8);
+        assertTrue(text.contains("Summary: 4 calls, 2 methods"));
+        String[] lines = text.split("\n");
+        assertTrue("Slowest total first", lines[2].endsWith("com.example.B.slow"));
+        assertTrue(lines[3].matches("\\s+3\\s+1\\s+2\\.00\\s+3\\.00\\s+6\\.00\\s+com\\.example\\.A\\.fast"));
+    }
+
+    @Test
+    public void testTextRetentionKeepsOtherSinksFiles() throws Exception {
+        new File(TEST_LOG_DIR).mkdirs();
+        File summary = new File(TEST_LOG_DIR, SummaryLogOutput.FILE_NAME);
+        Files.write(summary.toPath(), "earlier window\n".getBytes(StandardCharsets.UTF_8));
+        JsonLinesLogOutput json = new JsonLinesLogOutput(TEST_LOG_DIR, 1024, 50, DropPolicy.OLDEST);
+        toShutdown.add(json);
+        json.writeEvent(event("com.example.A.run", 1, null));
+        json.flush();
+        String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        File jsonFile = new File(TEST_LOG_DIR, "method-probe-" + today + ".jsonl");
+        assertTrue(jsonFile.exists());
+        // Oldest in the directory, so they would be the first to go
+        summary.setLastModified(System.currentTimeMillis() - 3_600_000L);
+        jsonFile.setLastModified(System.currentTimeMillis() - 3_600_000L);
+
+        // Roll every ~1KB, keep 2 text files
+        AsyncFileLogOutput text = new AsyncFileLogOutput(TEST_LOG_DIR, 1000, 50, DropPolicy.OLDEST, 1024, 2, true);
+        Map<String, LogOutput> sinks = new LinkedHashMap<>();
+        sinks.put("file", text);
+        sinks.put("jsonl", json);
+        CompositeLogOutput composite = new CompositeLogOutput(sinks);
+        StringBuilder method = new StringBuilder("com.example.");
+        for (int i = 0; i < 300; i++) {
+            method.append('x');
+        }
+        for (int i = 0; i < 20; i++) {
+            composite.writeEvent(event(method + ".run" + i, 1, null));
+            text.flush();
+        }
+        composite.shutdown();
+        toShutdown.clear();
+
+        assertTrue("Summary file survives text retention", summary.exists());
+        assertTrue("JSON Lines file survives text retention", jsonFile.exists());
+        int textFiles = 0;
+        for (String name : new File(TEST_LOG_DIR).list()) {
+            if (name.matches("method-probe-" + today + "(\\.\\d+)?\\.log(\\.gz)?")) {
+                textFiles++;
+            }
+        }
+        assertEquals("Retention keeps max text files", 2, textFiles);
+    }
+}
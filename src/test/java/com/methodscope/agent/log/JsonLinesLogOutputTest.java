@@ -0,0 +1,102 @@
+package com.methodprobe.agent.log;
+
+import com.methodprobe.agent.snapshot.SnapshotIdGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for JsonLinesLogOutput.
+ */
+public class JsonLinesLogOutputTest {
+
+    private static final String TEST_LOG_DIR = "./target/test-json-logs";
+    private JsonLinesLogOutput logOutput;
+
+    @Before
+    public void setUp() {
+        deleteDirectory(new File(TEST_LOG_DIR));
+    }
+
+    @After
+    public void tearDown() {
+        if (logOutput != null) {
+            logOutput.shutdown();
+        }
+        deleteDirectory(new File(TEST_LOG_DIR));
+    }
+
+    @Test
+    public void testFlatEventLine() throws Exception {
+        logOutput = new JsonLinesLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        logOutput.writeEvent(new MethodEvent("com.example.Service.query", 1000L, 12_345_678L, 7L, "worker-1",
+                "java.lang.IllegalStateException", 0));
+        List<String> lines = shutdownAndRead();
+
+        assertEquals(1, lines.size());
+        assertEquals("{\"type\":\"flat\",\"ts\":1012,\"start\":1000,\"thread\":\"worker-1\",\"threadId\":7,"
+                + "\"method\":\"com.example.Service.query\",\"durationMs\":12.345,"
+                + "\"exception\":\"java.lang.IllegalStateException\"}", lines.get(0));
+    }
+
+    @Test
+    public void testTreeIsOneLine() throws Exception {
+        logOutput = new JsonLinesLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        MethodEvent root = new MethodEvent("com.example.Controller.handle", 1000L, 20_000_000L, 9L, "http-1", null, 0);
+        MethodEvent child = new MethodEvent("com.example.Dao.load", 1001L, 5_000_000L, 9L, "http-1", null, 0);
+        child.addChild(new MethodEvent("com.example.Db.exec", 1002L, 1_000L, 9L, "http-1", null, 0));
+        root.addChild(child);
+        root.addChild(new MethodEvent("com.example.Dao.save", 1010L, 1_500_000L, 9L, "http-1", null, 0));
+        logOutput.writeTree(root);
+        List<String> lines = shutdownAndRead();
+
+        assertEquals(1, lines.size());
+        assertEquals("{\"type\":\"tree\",\"ts\":1020,\"thread\":\"http-1\",\"threadId\":9,\"root\":"
+                + "{\"method\":\"com.example.Controller.handle\",\"start\":1000,\"durationMs\":20.000,\"children\":["
+                + "{\"method\":\"com.example.Dao.load\",\"start\":1001,\"durationMs\":5.000,\"children\":["
+                + "{\"method\":\"com.example.Db.exec\",\"start\":1002,\"durationMs\":0.001}]},"
+                + "{\"method\":\"com.example.Dao.save\",\"start\":1010,\"durationMs\":1.500}]}}", lines.get(0));
+    }
+
+    @Test
+    public void testEscapingAndSnapshotId() throws Exception {
+        logOutput = new JsonLinesLogOutput(TEST_LOG_DIR, 1000, 100, DropPolicy.OLDEST);
+        logOutput.writeEvent(new MethodEvent("com.example.A.run", 0L, 0L, 1L, "pool \"x\"\\1\n", null, 42L << 22));
+        logOutput.write("line\twith tab\n");
+        List<String> lines = shutdownAndRead();
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"thread\":\"pool \\\"x\\\"\\\\1\\n\""));
+        assertTrue(lines.get(0).endsWith(",\"snapshotId\":\"" + SnapshotIdGenerator.toString(42L << 22) + "\"}"));
+        assertEquals("{\"type\":\"message\",\"text\":\"line\\twith tab\\n\"}", lines.get(1));
+    }
+
+    private List<String> shutdownAndRead() throws Exception {
+        logOutput.shutdown();
+        logOutput = null;
+        String todayDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+        File file = new File(TEST_LOG_DIR, "method-probe-" + todayDate + ".jsonl");
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private void deleteDirectory(File dir) {
+        if (dir.exists()) {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+}
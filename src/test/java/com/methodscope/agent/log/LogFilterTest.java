@@ -0,0 +1,94 @@
+package com.methodprobe.agent.log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LogFilter parsing and matching.
+ */
+public class LogFilterTest {
+
+    private static MethodEvent event(String method, long durationMs, String thread, String exception) {
+        return new MethodEvent(method, 0L, durationMs * 1_000_000L, 1L, thread, exception, 0);
+    }
+
+    @Test
+    public void testParseAllFields() {
+        LogFilter filter = LogFilter.parse(
+                "{\"type\":\"filter\",\"methodPrefix\":\"com.example\",\"minDurationMs\":1.5,"
+                        + "\"exceptionOnly\":true,\"threadPattern\":\"http-*\"}");
+
+        assertEquals(new LogFilter("com.example", 1_500_000L, true, "http-*"), filter);
+        assertFalse(filter.isMatchAll());
+    }
+
+    @Test
+    public void testEmptyFilterMatchesAll() {
+        LogFilter filter = LogFilter.parse("{ \"type\" : \"filter\", \"methodPrefix\": \"\", \"threadPattern\": null }");
+
+        assertTrue(filter.isMatchAll());
+        assertEquals(LogFilter.ALL, filter);
+        assertTrue(filter.matches("plain text\n"));
+    }
+
+    @Test
+    public void testRejectsInvalidMessages() {
+        for (String json : new String[] { "not json", "{\"type\":\"other\"}",
+                "{\"type\":\"filter\",\"minDurationMs\":\"fast\"}", "{\"type\":\"filter\",\"x\":[1]}" }) {
+            try {
+                LogFilter.parse(json);
+                fail("Should reject " + json);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesFlatEvents() {
+        LogFilter filter = new LogFilter("com.example.order", 10_000_000L, false, "http-?");
+
+        assertTrue(filter.matches(event("com.example.order.Service.pay", 20, "http-1", null)));
+        assertFalse(filter.matches(event("com.example.user.Service.get", 20, "http-1", null)));
+        assertFalse(filter.matches(event("com.example.order.Service.pay", 5, "http-1", null)));
+        assertFalse(filter.matches(event("com.example.order.Service.pay", 20, "http-10", null)));
+        assertFalse("Text needs a match-all filter", filter.matches("System: hello"));
+
+        LogFilter exceptions = new LogFilter(null, 0, true, null);
+        assertTrue(exceptions.matches(event("a.B.c", 1, "main", "java.lang.IllegalStateException")));
+        assertFalse(exceptions.matches(event("a.B.c", 1, "main", null)));
+    }
+
+    @Test
+    public void testMatchesTreeOnAnyNode() {
+        MethodEvent root = event("com.example.web.Controller.handle", 30, "http-1", null);
+        MethodEvent child = event("com.example.order.Service.pay", 10, "http-1", "java.io.IOException");
+        root.addChild(child);
+        QueuedLogWriter.Tree tree = new QueuedLogWriter.Tree(root);
+
+        assertTrue(new LogFilter("com.example.order", 20_000_000L, true, null).matches(tree));
+        assertFalse("Root duration decides", new LogFilter(null, 40_000_000L, false, null).matches(tree));
+        assertFalse(new LogFilter("com.example.user", 0, false, null).matches(tree));
+    }
+
+    @Test
+    public void testToFrameSkipsFilteredEntriesAndReusesRendering() {
+        List<Object> batch = new ArrayList<>(Arrays.asList("text\n",
+                event("com.example.A.slow", 50, "main", null),
+                event("com.example.A.fast", 1, "main", null)));
+        String[] rendered = new String[batch.size()];
+
+        String frame = WebSocketLogManager.toFrame(batch, rendered, new LogFilter(null, 10_000_000L, false, null));
+        assertTrue(frame.contains("com.example.A.slow"));
+        assertFalse(frame.contains("com.example.A.fast"));
+        assertNull("Filtered entries are not formatted", rendered[2]);
+        assertNotNull(rendered[1]);
+
+        assertNull(WebSocketLogManager.toFrame(batch, rendered, new LogFilter(null, 0, true, null)));
+    }
+}
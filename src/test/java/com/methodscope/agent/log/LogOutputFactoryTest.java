@@ -7,6 +7,8 @@ import org.junit.Test;
 
 import java.io.File;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import static org.junit.Assert.*;
 
@@ -15,10 +17,15 @@ import static org.junit.Assert.*;
  */
 public class LogOutputFactoryTest {
 
+    private String originalMode;
+    private String originalDir;
+
     @Before
     public void setUp() throws Exception {
         // Reset the singleton instance
         resetFactory();
+        originalMode = AgentConfig.getOutputMode();
+        originalDir = AgentConfig.getOutputDir();
     }
 
     @After
@@ -26,6 +33,9 @@ public class LogOutputFactoryTest {
         // Clean up
         LogOutputFactory.shutdown();
         resetFactory();
+        // AgentConfig is static - restore so other test classes see defaults
+        AgentConfig.setOutputMode(originalMode);
+        AgentConfig.setOutputDir(originalDir);
     }
 
     @Test
@@ -53,6 +63,22 @@ public class LogOutputFactoryTest {
         deleteDirectory(new File("./target/test-logs"));
     }
 
+    @Test
+    public void testMultipleSinks() throws Exception {
+        AgentConfig.setOutputMode("file, summary");
+        AgentConfig.setOutputDir("./target/test-logs");
+
+        LogOutput output = LogOutputFactory.getInstance();
+
+        assertTrue("Should be CompositeLogOutput", output instanceof CompositeLogOutput);
+        assertEquals(Arrays.asList("file", "summary"), new ArrayList<>(LogOutputFactory.getSinks().keySet()));
+        assertTrue(LogOutputFactory.getSinks().get("file") instanceof AsyncFileLogOutput);
+        assertTrue(LogOutputFactory.getSinks().get("summary") instanceof QueuedLogOutput);
+
+        output.shutdown();
+        deleteDirectory(new File("./target/test-logs"));
+    }
+
     @Test
     public void testInit() throws Exception {
         AgentConfig.setOutputMode("console");
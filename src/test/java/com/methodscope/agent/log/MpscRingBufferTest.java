@@ -0,0 +1,75 @@
+package com.methodprobe.agent.log;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for MpscRingBuffer.
+ */
+public class MpscRingBufferTest {
+
+    @Test
+    public void testFifoAndCapacity() {
+        MpscRingBuffer<String> ring = new MpscRingBuffer<>(3);
+        assertEquals("Capacity rounds up to a power of two", 4, ring.capacity());
+        assertNull(ring.poll());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer("m" + i));
+        }
+        assertFalse("Full buffer rejects", ring.offer("m4"));
+        assertEquals(4, ring.size());
+
+        assertEquals("m0", ring.poll());
+        assertTrue("Freed slot is reusable", ring.offer("m4"));
+
+        List<String> drained = new ArrayList<>();
+        assertEquals(4, ring.drainTo(drained, 10));
+        assertEquals("m1", drained.get(0));
+        assertEquals("m4", drained.get(3));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 8;
+        final int perProducer = 20000;
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            final int base = p * perProducer;
+            executor.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        while (seen.size() < producers * perProducer) {
+            Integer value = ring.poll();
+            if (value != null) {
+                assertTrue("Each element is delivered once", seen.add(value));
+            } else if (done.getCount() == 0 && ring.isEmpty()) {
+                break;
+            }
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(producers * perProducer, seen.size());
+    }
+}
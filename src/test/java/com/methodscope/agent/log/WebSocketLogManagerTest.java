@@ -0,0 +1,151 @@
+package com.methodprobe.agent.log;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the batched WebSocket live log stream.
+ */
+public class WebSocketLogManagerTest {
+
+    private WebSocketClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.closeBlocking();
+        }
+        WebSocketLogManager.stop();
+    }
+
+    @Test
+    public void testToFrameIsJsonArrayOfText() {
+        List<Object> batch = Arrays.asList("plain \"quoted\"\n",
+                new MethodEvent("com.example.A.run", 0L, 1_500_000L, 1L, "main", null, 0));
+        String frame = WebSocketLogManager.toFrame(new java.util.ArrayList<>(batch));
+
+        assertTrue(frame.startsWith("[\"plain \\\"quoted\\\"\\n\",\"["));
+        assertTrue(frame.contains("[MethodProbe] [main] com.example.A.run - 1.50 ms"));
+        assertTrue(frame.endsWith("\"]"));
+    }
+
+    @Test
+    public void testFrameSizeCountsUtf8Bytes() {
+        assertEquals(5, LogWebSocketServer.utf8Length("[\"a\"]"));
+        // CJK chars are 3 bytes, U+00E9 is 2, a surrogate pair is 4
+        assertEquals(6, LogWebSocketServer.utf8Length("\u65e5\u5fd7"));
+        assertEquals(2, LogWebSocketServer.utf8Length("\u00e9"));
+        assertEquals(4, LogWebSocketServer.utf8Length("\ud83d\ude00"));
+        String frame = "[\"\u6162\u65b9\u6cd5 com.example.A.run - 12.00 ms\"]";
+        assertEquals(frame.getBytes(java.nio.charset.StandardCharsets.UTF_8).length,
+                LogWebSocketServer.utf8Length(frame));
+    }
+
+    @Test
+    public void testEntriesAreBatchedIntoOneFrame() throws Exception {
+        int port = freePort();
+        WebSocketLogManager.init(port, 200, 1024 * 1024);
+
+        BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+        client = new WebSocketClient(new URI("ws://localhost:" + port)) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+            }
+
+            @Override
+            public void onMessage(String message) {
+                frames.add(message);
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+            }
+
+            @Override
+            public void onError(Exception ex) {
+            }
+        };
+        assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!WebSocketLogManager.isActive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        WebSocketLogManager.broadcast("first\n");
+        WebSocketLogManager.broadcastEvent(new MethodEvent("com.example.B.run", 0L, 2_000_000L, 1L, "main", null, 0));
+
+        String frame = frames.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Should receive a frame", frame);
+        assertTrue(frame.startsWith("[\"first\\n\","));
+        assertTrue(frame.contains("com.example.B.run - 2.00 ms"));
+        assertEquals(1, WebSocketLogManager.getClientCount());
+    }
+
+    @Test
+    public void testClientFilterIsAppliedOnServer() throws Exception {
+        int port = freePort();
+        WebSocketLogManager.init(port, 50, 1024 * 1024);
+
+        BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+        client = new WebSocketClient(new URI("ws://localhost:" + port)) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+            }
+
+            @Override
+            public void onMessage(String message) {
+                frames.add(message);
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+            }
+
+            @Override
+            public void onError(Exception ex) {
+            }
+        };
+        assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+        client.send("{\"type\":\"filter\",\"methodPrefix\":\"com.example.order\"}");
+        // The filter is applied asynchronously; wait until a frame shows it
+        long deadline = System.currentTimeMillis() + 5000;
+        boolean filtered = false;
+        while (!filtered && System.currentTimeMillis() < deadline) {
+            WebSocketLogManager.broadcastEvent(new MethodEvent("com.example.user.Probe.ping", 0L, 0L, 1L, "main", null, 0));
+            WebSocketLogManager.broadcastEvent(new MethodEvent("com.example.order.Probe.ping", 0L, 0L, 1L, "main", null, 0));
+            String frame = frames.poll(200, TimeUnit.MILLISECONDS);
+            filtered = frame != null && !frame.contains("com.example.user");
+        }
+        assertTrue("Filter should be applied", filtered);
+        Thread.sleep(200);
+        frames.clear();
+
+        WebSocketLogManager.broadcast("text\n");
+        WebSocketLogManager.broadcastEvent(new MethodEvent("com.example.user.Service.get", 0L, 1_000_000L, 1L, "main", null, 0));
+        WebSocketLogManager.broadcastEvent(new MethodEvent("com.example.order.Service.pay", 0L, 1_000_000L, 1L, "main", null, 0));
+
+        String frame = frames.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Should receive a frame", frame);
+        assertTrue(frame.contains("com.example.order.Service.pay"));
+        assertFalse(frame.contains("com.example.user.Service.get"));
+        assertFalse(frame.contains("text"));
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.methodprobe.agent.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+/**
+ * Tests for async-mode argument capture.
+ */
+public class ArgumentCaptureTest {
+
+    private int savedCopyMax;
+
+    @Before
+    public void setUp() {
+        savedCopyMax = AgentConfig.snapshotAsyncCopyMax;
+    }
+
+    @After
+    public void tearDown() {
+        AgentConfig.snapshotAsyncCopyMax = savedCopyMax;
+    }
+
+    private MethodSnapshot newSnapshot() {
+        return new MethodSnapshot("id", 1L, "com.example.Svc", "run", "main", 1.0);
+    }
+
+    @Test
+    public void testImmutableArgsKeptByReference() {
+        String name = "alice";
+        LocalDate date = LocalDate.of(2024, 1, 2);
+        MethodSnapshot snapshot = newSnapshot();
+        ArgumentCapture.capture(snapshot, new Object[] { name, 42, date, null });
+
+        Object[] captured = snapshot.getCapturedArgs();
+        assertSame(name, captured[0]);
+        assertEquals(42, captured[1]);
+        assertSame(date, captured[2]);
+        assertNull(captured[3]);
+        // Nothing serialized on the calling thread
+        for (byte[] bytes : snapshot.getSerializedArgs()) {
+            assertNull(bytes);
+        }
+    }
+
+    @Test
+    public void testArraysAndCollectionsShallowCopied() {
+        int[] numbers = { 1, 2, 3 };
+        List<String> names = new ArrayList<>(Arrays.asList("a", "b"));
+        MethodSnapshot snapshot = newSnapshot();
+        ArgumentCapture.capture(snapshot, new Object[] { numbers, names });
+
+        // Mutating after capture must not affect the snapshot
+        numbers[0] = 99;
+        names.add("c");
+
+        ArgumentCapture.serializeCaptured(snapshot);
+        assertNull(snapshot.getCapturedArgs());
+        Object[] args = SnapshotSerializer.deserializeArgs(snapshot.getSerializedArgs());
+        assertArrayEquals(new int[] { 1, 2, 3 }, (int[]) args[0]);
+        assertEquals(Arrays.asList("a", "b"), args[1]);
+    }
+
+    @Test
+    public void testCollectionsKeepTheirType() {
+        TreeMap<String, Integer> sorted = new TreeMap<>();
+        sorted.put("b", 2);
+        sorted.put("a", 1);
+        LinkedList<String> linked = new LinkedList<>(Arrays.asList("x", "y"));
+        MethodSnapshot snapshot = newSnapshot();
+        Object[] original = { sorted, linked };
+        ArgumentCapture.capture(snapshot, original);
+        assertNotNull("Copied, not serialized eagerly", snapshot.getCapturedArgs()[0]);
+        assertNotNull(snapshot.getCapturedArgs()[1]);
+
+        sorted.put("c", 3);
+        linked.clear();
+        ArgumentCapture.serializeCaptured(snapshot);
+        Object[] args = SnapshotSerializer.deserializeArgs(snapshot.getSerializedArgs());
+
+        assertArrayEquals(SnapshotSerializer.getArgTypes(original), SnapshotSerializer.getArgTypes(args));
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(((TreeMap<?, ?>) args[0]).keySet()));
+        assertEquals(Arrays.asList("x", "y"), args[1]);
+    }
+
+    @Test
+    public void testSortedCopyKeepsComparator() {
+        TreeMap<String, Integer> sorted = new TreeMap<>(Collections.reverseOrder());
+        sorted.put("a", 1);
+        MethodSnapshot snapshot = newSnapshot();
+        ArgumentCapture.capture(snapshot, new Object[] { sorted });
+
+        TreeMap<?, ?> copy = (TreeMap<?, ?>) snapshot.getCapturedArgs()[0];
+        assertNotSame(sorted, copy);
+        assertSame(sorted.comparator(), copy.comparator());
+    }
+
+    @Test
+    public void testUnknownContainersSerializedEagerly() {
+        MethodSnapshot snapshot = newSnapshot();
+        ArgumentCapture.capture(snapshot, new Object[] { Collections.unmodifiableList(Arrays.asList("a")) });
+
+        assertNull(snapshot.getCapturedArgs());
+        assertNotNull(snapshot.getSerializedArgs()[0]);
+    }
+
+    @Test
+    public void testMutableArgsSerializedEagerly() {
+        Map<String, List<String>> nested = new HashMap<>();
+        nested.put("k", new ArrayList<>(Arrays.asList("v")));
+        int[] big = new int[10];
+        AgentConfig.snapshotAsyncCopyMax = 5;
+
+        MethodSnapshot snapshot = newSnapshot();
+        ArgumentCapture.capture(snapshot, new Object[] { nested, big, new StringBuilder("sb") });
+
+        assertNull(snapshot.getCapturedArgs());
+        for (byte[] bytes : snapshot.getSerializedArgs()) {
+            assertNotNull(bytes);
+        }
+    }
+}
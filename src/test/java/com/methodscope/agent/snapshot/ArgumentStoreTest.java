@@ -0,0 +1,106 @@
+package com.methodprobe.agent.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests for content-addressed argument storage.
+ */
+public class ArgumentStoreTest {
+
+    private static final String TEST_DIR = "./target/test-argument-store";
+
+    @Before
+    public void setUp() throws Exception {
+        cleanup();
+        Files.createDirectories(Paths.get(TEST_DIR));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cleanup();
+    }
+
+    private void cleanup() throws IOException {
+        Path path = Paths.get(TEST_DIR);
+        if (Files.exists(path)) {
+            Files.walk(path)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testXxHash64KnownValues() {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0]));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash("abc".getBytes()));
+    }
+
+    @Test
+    public void testRepeatedArgumentStoredOnce() throws Exception {
+        Path dir = Paths.get(TEST_DIR);
+        byte[] config = SnapshotSerializer.serialize(new String(new char[200]).replace('\0', 'x'));
+
+        ArgumentStore store = new ArgumentStore(dir);
+        long hits = ArgumentStore.getDedupHits();
+        long first = store.put(config);
+        long second = store.put(config.clone());
+        store.close();
+
+        assertEquals(first, second);
+        assertEquals(hits + 1, ArgumentStore.getDedupHits());
+
+        List<Path> segments = listSegments(dir);
+        assertEquals(1, segments.size());
+        // header + one record holding the blob
+        assertTrue(Files.size(segments.get(0)) < 2L * config.length);
+    }
+
+    @Test
+    public void testReaderResolvesReferences() throws Exception {
+        Path dir = Paths.get(TEST_DIR);
+        byte[] big = SnapshotSerializer.serialize(new String(new char[300]).replace('\0', 'y'));
+        byte[] small = SnapshotSerializer.serialize(7);
+
+        ArgumentStore store = new ArgumentStore(dir);
+        MethodSnapshot snapshot = new MethodSnapshot("id-ref", 1L, "com.example.Svc", "run", "main", 1.0);
+        snapshot.setArgTypes(new String[] { "java.lang.String", "java.lang.Integer" });
+        snapshot.setSerializedArgs(new byte[][] { big, small });
+        snapshot.setArgRefs(new long[] { store.put(big), 0 });
+        store.close();
+
+        Path file = dir.resolve("id-ref.snapshot");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            SnapshotFormat.writeHeader(dos);
+            SnapshotFormat.writeRecord(dos, SnapshotFormat.encodeSnapshot(snapshot));
+        }
+        // The snapshot record only carries the hash, not the blob
+        assertTrue(Files.size(file) < big.length);
+
+        MethodSnapshot loaded = SnapshotReader.readSnapshot(file.toString());
+        assertArrayEquals(big, loaded.getSerializedArgs()[0]);
+        assertEquals(7, SnapshotSerializer.deserialize(loaded.getSerializedArgs()[1]));
+    }
+
+    private List<Path> listSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(ArgumentStore.SEGMENT_SUFFIX))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -102,4 +102,13 @@ public class MethodSnapshotTest {
         String fullName = snapshot.getFullMethodName();
         assertEquals("null.null", fullName);
     }
+
+    @Test
+    public void testNumericIdRenderedOnRead() {
+        MethodSnapshot snapshot = new MethodSnapshot();
+        long id = SnapshotIdGenerator.next();
+        snapshot.setId(id);
+
+        assertEquals(SnapshotIdGenerator.toString(id), snapshot.getSnapshotId());
+    }
 }
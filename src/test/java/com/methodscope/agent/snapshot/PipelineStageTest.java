@@ -0,0 +1,62 @@
+package com.methodprobe.agent.snapshot;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for snapshot pipeline stages.
+ */
+public class PipelineStageTest {
+
+    @Test
+    public void testCompletesTasksAndRecordsLatency() throws Exception {
+        PipelineStage stage = new PipelineStage("test-stage", 2, 10);
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            stage.submit(done::countDown);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        stage.shutdown(1000);
+
+        assertEquals(4, stage.getSubmitted());
+        assertEquals(4, stage.getCompleted());
+        assertEquals(0, stage.getDropped());
+        assertEquals(2, stage.getThreads());
+        assertTrue(stage.getMaxLatencyMs() >= stage.getAvgLatencyMs());
+        assertFalse(stage.submit(() -> {
+        }));
+    }
+
+    @Test
+    public void testDropsOldestWhenFull() throws Exception {
+        PipelineStage stage = new PipelineStage("test-stage", 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+
+        stage.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Queue holds 2; the third submission evicts the oldest queued task
+        for (int i = 0; i < 3; i++) {
+            stage.submit(ran::incrementAndGet);
+        }
+        assertEquals(1, stage.getDropped());
+        assertEquals(2, stage.getQueueDepth());
+
+        release.countDown();
+        stage.shutdown(5000);
+        assertEquals(2, ran.get());
+    }
+}
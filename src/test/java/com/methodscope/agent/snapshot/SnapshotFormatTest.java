@@ -0,0 +1,166 @@
+package com.methodprobe.agent.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tests for the MTSS v2 format and v1 backward compatibility.
+ */
+public class SnapshotFormatTest {
+
+    private static final String TEST_DIR = "./target/test-snapshot-format";
+
+    @Before
+    public void setUp() throws Exception {
+        cleanup();
+        Files.createDirectories(Paths.get(TEST_DIR));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cleanup();
+    }
+
+    private void cleanup() throws IOException {
+        Path path = Paths.get(TEST_DIR);
+        if (Files.exists(path)) {
+            Files.walk(path)
+                    .sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    private MethodSnapshot newSnapshot(String id, String method) {
+        MethodSnapshot snapshot = new MethodSnapshot(id, 1700000000000L, "com.example.Service", method, "main", 12.5);
+        snapshot.setArgTypes(new String[] { "java.lang.String", "null" });
+        snapshot.setSerializedArgs(new byte[][] { SnapshotSerializer.serialize("hello"), null });
+        return snapshot;
+    }
+
+    private String writeFile(String name, MethodSnapshot... snapshots) throws IOException {
+        Path file = Paths.get(TEST_DIR, name);
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            SnapshotFormat.writeHeader(dos);
+            for (MethodSnapshot snapshot : snapshots) {
+                SnapshotFormat.writeRecord(dos, SnapshotFormat.encodeSnapshot(snapshot));
+            }
+        }
+        return file.toString();
+    }
+
+    @Test
+    public void testCrc32cKnownValue() {
+        // Standard check value for CRC-32C
+        assertEquals(0xE3069283, Crc32c.compute("123456789".getBytes()));
+    }
+
+    @Test
+    public void testRoundTripV2() throws Exception {
+        String file = writeFile("a.snapshot", newSnapshot("id-1", "process"));
+
+        MethodSnapshot loaded = SnapshotReader.readSnapshot(file);
+        assertEquals("id-1", loaded.getSnapshotId());
+        assertEquals(1700000000000L, loaded.getTimestamp());
+        assertEquals("com.example.Service.process", loaded.getFullMethodName());
+        assertEquals("main", loaded.getThreadName());
+        assertEquals(12.5, loaded.getDurationMs(), 0.0001);
+        assertArrayEquals(new String[] { "java.lang.String", "null" }, loaded.getArgTypes());
+        assertEquals("hello", SnapshotSerializer.deserialize(loaded.getSerializedArgs()[0]));
+        assertNull(loaded.getSerializedArgs()[1]);
+    }
+
+    @Test
+    public void testCorruptTailIsSkipped() throws Exception {
+        String file = writeFile("b.snapshot", newSnapshot("id-1", "first"), newSnapshot("id-2", "second"));
+
+        // Flip the last byte of the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int b = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(b ^ 0xFF);
+        }
+
+        List<MethodSnapshot> snapshots = SnapshotReader.readSnapshots(file);
+        assertEquals(1, snapshots.size());
+        assertEquals("id-1", snapshots.get(0).getSnapshotId());
+    }
+
+    @Test
+    public void testTruncatedTailIsSkipped() throws Exception {
+        String file = writeFile("c.snapshot", newSnapshot("id-1", "first"), newSnapshot("id-2", "second"));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        List<MethodSnapshot> snapshots = SnapshotReader.readSnapshots(file);
+        assertEquals(1, snapshots.size());
+        assertEquals("first", snapshots.get(0).getMethodName());
+    }
+
+    @Test
+    public void testUnknownFieldsAndRecordsAreSkipped() throws Exception {
+        SnapshotFormat.FieldWriter future = new SnapshotFormat.FieldWriter((byte) 99);
+        future.string((byte) 1, "something new");
+
+        SnapshotFormat.FieldWriter extended = new SnapshotFormat.FieldWriter(SnapshotFormat.RECORD_SNAPSHOT);
+        extended.string(SnapshotFormat.TAG_ID, "id-3");
+        extended.string((byte) 120, "unknown field");
+        extended.string(SnapshotFormat.TAG_METHOD, "handle");
+
+        Path file = Paths.get(TEST_DIR, "d.snapshot");
+        try (DataOutputStream dos = new DataOutputStream(Files.newOutputStream(file))) {
+            SnapshotFormat.writeHeader(dos);
+            SnapshotFormat.writeRecord(dos, future.toByteArray());
+            SnapshotFormat.writeRecord(dos, extended.toByteArray());
+        }
+
+        List<MethodSnapshot> snapshots = SnapshotReader.readSnapshots(file.toString());
+        assertEquals(1, snapshots.size());
+        assertEquals("id-3", snapshots.get(0).getSnapshotId());
+        assertEquals("handle", snapshots.get(0).getMethodName());
+    }
+
+    @Test
+    public void testReadsV1File() throws Exception {
+        Path file = Paths.get(TEST_DIR, "legacy.snapshot");
+        byte[] arg = SnapshotSerializer.serialize(42);
+        try (DataOutputStream dos = new DataOutputStream(Files.newOutputStream(file))) {
+            dos.write(SnapshotFormat.MAGIC);
+            dos.writeInt(1);
+            dos.writeUTF("20260112-101010-001-00099");
+            dos.writeLong(1700000000000L);
+            dos.writeUTF("com.example.Legacy");
+            dos.writeUTF("run");
+            dos.writeUTF("worker");
+            dos.writeDouble(3.0);
+            dos.writeInt(1);
+            dos.writeUTF("java.lang.Integer");
+            dos.writeInt(1);
+            dos.writeInt(arg.length);
+            dos.write(arg);
+            dos.writeInt(-1);
+        }
+
+        MethodSnapshot loaded = SnapshotReader.readSnapshot(file.toString());
+        assertEquals("20260112-101010-001-00099", loaded.getSnapshotId());
+        assertEquals("com.example.Legacy.run", loaded.getFullMethodName());
+        assertEquals(42, SnapshotSerializer.deserialize(loaded.getSerializedArgs()[0]));
+        assertNull(loaded.getSerializedException());
+    }
+}
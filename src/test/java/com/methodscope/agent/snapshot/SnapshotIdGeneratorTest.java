@@ -24,25 +24,38 @@ public class SnapshotIdGeneratorTest {
     @Test
     public void testGenerateFormat() {
         String id = SnapshotIdGenerator.generate();
-        // Format: yyyyMMdd-HHmmss-SSS-seq (e.g., 20260112-091313-001-00001)
-        String[] parts = id.split("-");
-        assertEquals("ID should have 4 parts separated by -", 4, parts.length);
-
-        // Date part: 8 digits
-        assertEquals("Date part should be 8 chars", 8, parts[0].length());
-        assertTrue("Date part should be numeric", parts[0].matches("\\d{8}"));
-
-        // Time part: 6 digits
-        assertEquals("Time part should be 6 chars", 6, parts[1].length());
-        assertTrue("Time part should be numeric", parts[1].matches("\\d{6}"));
+        // 13 chars of Crockford base32 (no I, L, O, U)
+        assertTrue("Unexpected ID format: " + id, id.matches("[0-9A-HJKMNP-TV-Z]{13}"));
+    }
 
-        // Milliseconds: 3 digits
-        assertEquals("Millis part should be 3 chars", 3, parts[2].length());
-        assertTrue("Millis part should be numeric", parts[2].matches("\\d{3}"));
+    @Test
+    public void testIdEncodesCreationTime() {
+        long before = System.currentTimeMillis();
+        long id = SnapshotIdGenerator.next();
+        long after = System.currentTimeMillis();
+
+        assertTrue(id > 0);
+        long created = SnapshotIdGenerator.timestampOf(id);
+        // May be slightly ahead if the sequence borrowed future milliseconds
+        assertTrue(created >= before);
+        assertTrue(created <= after + 1000);
+    }
 
-        // Sequence: 5 digits
-        assertEquals("Sequence part should be 5 chars", 5, parts[3].length());
-        assertTrue("Sequence part should be numeric", parts[3].matches("\\d{5}"));
+    @Test
+    public void testMonotonicAndTextOrdered() {
+        long prev = SnapshotIdGenerator.next();
+        String prevText = SnapshotIdGenerator.toString(prev);
+        // Far more than 4096 per millisecond: the sequence must carry, not wrap
+        for (int i = 0; i < 100000; i++) {
+            long id = SnapshotIdGenerator.next();
+            assertTrue("IDs must increase", id > prev);
+            assertEquals("Node bits must be stable", prev & SnapshotIdGenerator.NODE_MASK,
+                    id & SnapshotIdGenerator.NODE_MASK);
+            String text = SnapshotIdGenerator.toString(id);
+            assertTrue("Text must sort like the number", text.compareTo(prevText) > 0);
+            prev = id;
+            prevText = text;
+        }
     }
 
     @Test
@@ -61,8 +74,8 @@ public class SnapshotIdGeneratorTest {
     @Test
     public void testGenerateThreadSafety() throws InterruptedException {
         final int threadCount = 10;
-        final int idsPerThread = 100;
-        final Set<String> allIds = java.util.Collections.synchronizedSet(new HashSet<>());
+        final int idsPerThread = 10000;
+        final Set<Long> allIds = java.util.Collections.synchronizedSet(new HashSet<>());
         final CountDownLatch latch = new CountDownLatch(threadCount);
 
         ExecutorService executor = Executors.newFixedThreadPool(threadCount);
@@ -70,8 +83,11 @@ public class SnapshotIdGeneratorTest {
         for (int t = 0; t < threadCount; t++) {
             executor.submit(() -> {
                 try {
+                    long[] local = new long[idsPerThread];
                     for (int i = 0; i < idsPerThread; i++) {
-                        String id = SnapshotIdGenerator.generate();
+                        local[i] = SnapshotIdGenerator.next();
+                    }
+                    for (long id : local) {
                         allIds.add(id);
                     }
                 } finally {
@@ -87,19 +103,4 @@ public class SnapshotIdGeneratorTest {
         assertEquals("All IDs across threads should be unique",
                 threadCount * idsPerThread, allIds.size());
     }
-
-    @Test
-    public void testResetSequence() {
-        // Generate some IDs
-        SnapshotIdGenerator.generate();
-        SnapshotIdGenerator.generate();
-
-        // Reset
-        SnapshotIdGenerator.resetSequence();
-
-        // Next ID should start from 1
-        String id = SnapshotIdGenerator.generate();
-        assertTrue("After reset, sequence should start from 1",
-                id.endsWith("-00001"));
-    }
 }
@@ -0,0 +1,96 @@
+package com.methodprobe.agent.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.methodprobe.agent.config.AgentConfig;
+
+/**
+ * Tests for per-method and global snapshot rate limiting.
+ */
+public class SnapshotRateLimiterTest {
+
+    private int savedPerMethod;
+    private int savedBurst;
+    private int savedGlobal;
+
+    @Before
+    public void setUp() {
+        savedPerMethod = AgentConfig.snapshotRatePerMethod;
+        savedBurst = AgentConfig.snapshotRateBurst;
+        savedGlobal = AgentConfig.snapshotRateGlobal;
+        SnapshotRateLimiter.reset();
+    }
+
+    @After
+    public void tearDown() {
+        AgentConfig.snapshotRatePerMethod = savedPerMethod;
+        AgentConfig.snapshotRateBurst = savedBurst;
+        AgentConfig.snapshotRateGlobal = savedGlobal;
+        SnapshotRateLimiter.reset();
+    }
+
+    @Test
+    public void testPerMethodBurstThenReject() {
+        // One token per second: only the burst is available within the test
+        AgentConfig.snapshotRatePerMethod = 1;
+        AgentConfig.snapshotRateBurst = 3;
+        AgentConfig.snapshotRateGlobal = 0;
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(SnapshotRateLimiter.tryAcquire("com.example.Hot", "call"));
+        }
+        assertFalse(SnapshotRateLimiter.tryAcquire("com.example.Hot", "call"));
+        // Other methods have their own bucket
+        assertTrue(SnapshotRateLimiter.tryAcquire("com.example.Hot", "other"));
+
+        assertEquals(1, SnapshotRateLimiter.getRejectedByMethod());
+        assertEquals(Long.valueOf(1), SnapshotRateLimiter.getRejectedPerMethod().get("com.example.Hot.call"));
+    }
+
+    @Test
+    public void testGlobalLimit() {
+        AgentConfig.snapshotRatePerMethod = 0;
+        AgentConfig.snapshotRateBurst = 1;
+        AgentConfig.snapshotRateGlobal = 2;
+
+        assertTrue(SnapshotRateLimiter.tryAcquire("com.example.A", "a"));
+        assertTrue(SnapshotRateLimiter.tryAcquire("com.example.B", "b"));
+        assertFalse(SnapshotRateLimiter.tryAcquire("com.example.C", "c"));
+        assertEquals(1, SnapshotRateLimiter.getRejectedByGlobal());
+        assertEquals(0, SnapshotRateLimiter.getRejectedByMethod());
+    }
+
+    @Test
+    public void testGlobalRejectionKeepsMethodBudget() {
+        AgentConfig.snapshotRatePerMethod = 1;
+        AgentConfig.snapshotRateBurst = 2;
+        AgentConfig.snapshotRateGlobal = 2;
+
+        assertTrue(SnapshotRateLimiter.tryAcquire("com.example.Busy", "a"));
+        assertTrue(SnapshotRateLimiter.tryAcquire("com.example.Busy", "b"));
+        // Global budget spent; the quiet method is rejected globally, not by its own bucket
+        for (int i = 0; i < 5; i++) {
+            assertFalse(SnapshotRateLimiter.tryAcquire("com.example.Quiet", "q"));
+        }
+        assertEquals(5, SnapshotRateLimiter.getRejectedByGlobal());
+
+        // With the global limit lifted, the quiet method still has its whole burst
+        AgentConfig.snapshotRateGlobal = 0;
+        assertTrue(SnapshotRateLimiter.tryAcquire("com.example.Quiet", "q"));
+        assertTrue(SnapshotRateLimiter.tryAcquire("com.example.Quiet", "q"));
+        assertFalse(SnapshotRateLimiter.tryAcquire("com.example.Quiet", "q"));
+        assertEquals(1, SnapshotRateLimiter.getRejectedByMethod());
+    }
+
+    @Test
+    public void testUnlimited() {
+        AgentConfig.snapshotRatePerMethod = 0;
+        AgentConfig.snapshotRateGlobal = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(SnapshotRateLimiter.tryAcquire("com.example.A", "a"));
+        }
+    }
+}
@@ -161,4 +161,33 @@ public class SnapshotWriterReaderTest {
 
         assertEquals("Should have created all snapshot files", count, fileCount);
     }
+
+    @Test
+    public void testCapturedSnapshotGoesThroughSerializerStage() throws Exception {
+        String snapshotId = SnapshotIdGenerator.generate();
+        MethodSnapshot snapshot = new MethodSnapshot(
+                snapshotId,
+                System.currentTimeMillis(),
+                "com.test.Async",
+                "method",
+                "thread",
+                1.0);
+        Object[] args = { "deferred", 7 };
+        snapshot.setArgTypes(SnapshotSerializer.getArgTypes(args));
+        ArgumentCapture.capture(snapshot, args);
+
+        long serialized = SnapshotWriter.getSerializeStage().getCompleted();
+        SnapshotWriter.submit(snapshot);
+        Thread.sleep(500);
+
+        assertEquals(serialized + 1, SnapshotWriter.getSerializeStage().getCompleted());
+        Path dateDir = Files.list(Paths.get(TEST_DIR))
+                .filter(Files::isDirectory)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No date directory found"));
+        MethodSnapshot loaded = SnapshotReader.readSnapshot(
+                dateDir.resolve(snapshotId + ".snapshot").toString());
+        assertEquals("deferred", SnapshotSerializer.deserialize(loaded.getSerializedArgs()[0]));
+        assertEquals(7, SnapshotSerializer.deserialize(loaded.getSerializedArgs()[1]));
+    }
 }
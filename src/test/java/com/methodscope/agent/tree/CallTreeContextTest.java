@@ -27,6 +27,9 @@ public class CallTreeContextTest {
     @After
     public void tearDown() {
         CallTreeContext.clear();
+        AgentConfig.snapshotEnabled = false;
+        AgentConfig.treeSnapshotProbeAll = false;
+        AgentConfig.setTreeThresholdMs(0);
     }
 
     @Test
@@ -150,4 +153,38 @@ public class CallTreeContextTest {
         // Still in tree (entry method not exited)
         assertTrue(CallTreeContext.isInTree());
     }
+
+    @Test
+    public void testUntriggeredNodeReleasesArgsWithoutId() {
+        AgentConfig.snapshotEnabled = true;
+        AgentConfig.treeSnapshotProbeAll = true;
+        AgentConfig.setTreeThresholdMs(60_000);
+
+        CallTreeContext.onMethodEnter("com.example.Controller", "handleRequest", new Object[] { "req" });
+        CallTreeContext.onMethodEnter("com.example.Service", "doWork", new Object[] { new byte[1024] });
+        MethodCallNode child = CallTreeContext.getRootNode().getChildren().get(0);
+        assertNotNull("Args held while the method runs", child.getArgs());
+
+        CallTreeContext.onMethodExit("com.example.Service", "doWork", null);
+
+        assertNull("Args released on exit", child.getArgs());
+        assertEquals("No ID for a node that did not trigger", 0, child.getSnapshotId());
+    }
+
+    @Test
+    public void testTriggeredNodeGetsIdOnExit() {
+        AgentConfig.snapshotEnabled = true;
+        AgentConfig.treeSnapshotProbeAll = true;
+        AgentConfig.setTreeThresholdMs(0);
+
+        CallTreeContext.onMethodEnter("com.example.Controller", "handleRequest", new Object[0]);
+        CallTreeContext.onMethodEnter("com.example.Service", "doWork", new Object[] { "x" });
+        MethodCallNode child = CallTreeContext.getRootNode().getChildren().get(0);
+        assertEquals("No ID before the node triggers", 0, child.getSnapshotId());
+
+        CallTreeContext.onMethodExit("com.example.Service", "doWork", null);
+
+        assertNull(child.getArgs());
+        assertTrue("Triggered node gets an ID", child.getSnapshotId() != 0);
+    }
 }
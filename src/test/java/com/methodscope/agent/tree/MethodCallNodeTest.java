@@ -20,7 +20,7 @@ public class MethodCallNodeTest {
         assertNull(node.getParent());
         assertTrue(node.getChildren().isEmpty());
         assertNull(node.getArgs());
-        assertNull(node.getSnapshotId());
+        assertEquals(0, node.getSnapshotId());
     }
 
     @Test
@@ -113,8 +113,8 @@ public class MethodCallNodeTest {
     public void testSnapshotIdSetterGetter() {
         MethodCallNode node = new MethodCallNode("method", 0);
 
-        node.setSnapshotId("20260112-101010-001-00001");
-        assertEquals("20260112-101010-001-00001", node.getSnapshotId());
+        node.setSnapshotId(12345L);
+        assertEquals(12345L, node.getSnapshotId());
     }
 
     @Test